@@ -1,7 +1,16 @@
 package enigma;
 
+import java.util.Arrays;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
+ *
+ *  The symbols of an alphabet are Unicode code points, so an alphabet may
+ *  include supplementary characters, which take two chars in a String;
+ *  the char-based methods apply to the others.  Looking up the index of
+ *  a symbol takes constant time.  When the code points of the alphabet
+ *  lie in a compact range, the lookup is in an array covering the range;
+ *  otherwise, it is in an open-addressed hash table.
  *  @author
  */
 class Alphabet {
@@ -9,7 +18,49 @@ class Alphabet {
     /** A new alphabet containing CHARS. The K-th character has index
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
-        _alphabet = chars;
+        _codePoints = chars.codePoints().toArray();
+        int min = Integer.MAX_VALUE, max = -1;
+        for (int cp : _codePoints) {
+            min = Math.min(min, cp);
+            max = Math.max(max, cp);
+        }
+        _min = min;
+        long span = (long) max - min + 1;
+        if (_codePoints.length > 0 && span <= denseLimit(size())) {
+            _dense = new int[(int) span];
+            Arrays.fill(_dense, -1);
+            _keys = _values = null;
+            _mask = _shift = 0;
+            for (int k = 0; k < _codePoints.length; k += 1) {
+                int slot = _codePoints[k] - min;
+                if (_dense[slot] >= 0) {
+                    throw duplicate(_codePoints[k]);
+                }
+                _dense[slot] = k;
+            }
+        } else {
+            _dense = null;
+            int capacity = Integer.highestOneBit(Math.max(2, size()) * 2);
+            if (capacity < size() * 2) {
+                capacity *= 2;
+            }
+            _keys = new int[capacity];
+            _values = new int[capacity];
+            _mask = capacity - 1;
+            _shift = Integer.numberOfLeadingZeros(_mask);
+            Arrays.fill(_keys, -1);
+            for (int k = 0; k < _codePoints.length; k += 1) {
+                int slot = hash(_codePoints[k]);
+                while (_keys[slot] >= 0) {
+                    if (_keys[slot] == _codePoints[k]) {
+                        throw duplicate(_codePoints[k]);
+                    }
+                    slot = (slot + 1) & _mask;
+                }
+                _keys[slot] = _codePoints[k];
+                _values[slot] = k;
+            }
+        }
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -19,40 +70,107 @@ class Alphabet {
 
     /** Returns the size of the alphabet. */
     int size() {
-        return _alphabet.length();
+        return _codePoints.length;
     }
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        for (int index = 0; index < size(); index += 1){
-            if (_alphabet.charAt(index) == ch){
-                return true;
-            }
-        }
-        return false;
+        return indexOf(ch) >= 0;
+    }
+
+    /** Returns true if the character whose code point is CP is in this
+     *  alphabet. */
+    boolean containsCodePoint(int cp) {
+        return indexOf(cp) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). */
+     *  0 <= INDEX < size(), which must not be a supplementary
+     *  character. */
     char toChar(int index) {
-        if (!(0 <=index && index < size())){
+        int cp = toCodePoint(index);
+        if (cp > Character.MAX_VALUE) {
+            throw new EnigmaException("supplementary character at "
+                                      + index);
+        }
+        return (char) cp;
+    }
+
+    /** Returns the code point of character number INDEX in the alphabet,
+     *  where 0 <= INDEX < size(). */
+    int toCodePoint(int index) {
+        if (!(0 <= index && index < size())) {
             throw new EnigmaException("not in alphabet");
         }
-        return _alphabet.charAt(index);
+        return _codePoints[index];
     }
 
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        if (!(contains(ch))){
+        return codePointToInt(ch);
+    }
+
+    /** Returns the index of the character whose code point is CP, which
+     *  must be in the alphabet.  This is the inverse of toCodePoint(). */
+    int codePointToInt(int cp) {
+        int index = indexOf(cp);
+        if (index < 0) {
             throw new EnigmaException("not in alphabet");
         }
-        for (int index = 0; index < size(); index += 1) {
-            if (_alphabet.charAt(index) == ch) {
-                return index;
+        return index;
+    }
+
+    /** Returns the index of the code point CP, or -1 if it is not in this
+     *  alphabet. */
+    private int indexOf(int cp) {
+        if (_dense != null) {
+            int slot = cp - _min;
+            return slot >= 0 && slot < _dense.length ? _dense[slot] : -1;
+        }
+        for (int slot = hash(cp); _keys[slot] >= 0;
+             slot = (slot + 1) & _mask) {
+            if (_keys[slot] == cp) {
+                return _values[slot];
             }
         }
-        return 0;
+        return -1;
+    }
+
+    /** Returns the first slot of _keys to probe for code point CP. */
+    private int hash(int cp) {
+        return cp * 0x9E3779B9 >>> _shift;
     }
-    private String _alphabet;
+
+    /** Returns the largest span of code points for which an alphabet of
+     *  SIZE characters uses a direct array. */
+    private static long denseLimit(int size) {
+        return Math.max(DENSE_SPAN, 4L * size);
+    }
+
+    /** Returns the exception for a code point CP that appears twice. */
+    private static EnigmaException duplicate(int cp) {
+        return new EnigmaException("duplicate character "
+                                   + new String(Character.toChars(cp))
+                                   + " in alphabet");
+    }
+
+    /** Spans of code points up to this size always use a direct array. */
+    private static final int DENSE_SPAN = 1024;
+
+    /** The code point of each character, by index. */
+    private final int[] _codePoints;
+    /** Smallest code point in this alphabet. */
+    private final int _min;
+    /** If not null, _dense[cp - _min] is the index of code point cp, or
+     *  -1 if cp is not in this alphabet. */
+    private final int[] _dense;
+    /** Otherwise, an open-addressed hash table with linear probing, where
+     *  _keys holds code points, or -1 in empty slots, and _values the
+     *  corresponding indices. */
+    private final int[] _keys, _values;
+    /** Number of slots in _keys, a power of two, less one. */
+    private final int _mask;
+    /** Shift taking a 32-bit hash to its top bits, an index in _keys. */
+    private final int _shift;
 }
@@ -0,0 +1,89 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Check that ALPHA holds exactly the code points CODEPOINTS, in
+     *  order, and none of the code points in ABSENT. */
+    private void checkAlphabet(Alphabet alpha, int[] codePoints,
+                               int... absent) {
+        assertEquals(codePoints.length, alpha.size());
+        for (int i = 0; i < codePoints.length; i += 1) {
+            assertTrue(alpha.containsCodePoint(codePoints[i]));
+            assertEquals(i, alpha.codePointToInt(codePoints[i]));
+            assertEquals(codePoints[i], alpha.toCodePoint(i));
+        }
+        for (int cp : absent) {
+            assertFalse(alpha.containsCodePoint(cp));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testUpper() {
+        Alphabet alpha = new Alphabet(UPPER_STRING);
+        checkAlphabet(alpha, UPPER_STRING.codePoints().toArray(),
+                      'a', '@', '[', -1, 0x10041);
+        assertEquals('Q', alpha.toChar(alpha.toInt('Q')));
+        assertTrue(alpha.contains('Z'));
+        assertFalse(alpha.contains('z'));
+    }
+
+    @Test
+    public void testSparse() {
+        int[] codePoints = { 'A', 0x3B1, 0x4E2D, 0x1F600, 0x10FFFF, '0' };
+        Alphabet alpha = new Alphabet(new String(codePoints, 0, 6));
+        checkAlphabet(alpha, codePoints, 'B', 0x1F601, 0x10FFFE, 0);
+        assertEquals(0x3B1, alpha.toChar(1));
+    }
+
+    @Test
+    public void testLarge() {
+        int[] dense = new int[65536], sparse = new int[65536];
+        for (int i = 0; i < dense.length; i += 1) {
+            dense[i] = 0x10000 + i;
+            sparse[i] = 0x10000 + 15 * (dense.length - i);
+        }
+        checkAlphabet(new Alphabet(new String(dense, 0, dense.length)),
+                      dense, 0xFFFF, 0x20000);
+        checkAlphabet(new Alphabet(new String(sparse, 0, sparse.length)),
+                      sparse, 0x10000, 0x10001, 0x10000 + 15 * 65537);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicate() {
+        new Alphabet("ABCDA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSparseDuplicate() {
+        new Alphabet("A\u4E2D\uD83D\uDE00\u4E2D");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotInAlphabet() {
+        new Alphabet(UPPER_STRING).toInt('a');
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSupplementaryChar() {
+        new Alphabet("A\uD83D\uDE00").toChar(1);
+    }
+}
@@ -0,0 +1,156 @@
+package enigma;
+
+import java.util.ArrayList;
+
+/** Rough per-operation timings of the hot paths in the enigma package.
+ *  Run as "java enigma.Benchmark" and compare the figures before and
+ *  after an engine change on the same machine.
+ *  @author
+ */
+public final class Benchmark {
+
+    /** Number of operations timed for each case. */
+    private static final int OPS = 20_000_000;
+
+    /** Number of untimed warm-up rounds given to each case. */
+    private static final int WARMUP = 3;
+
+    /** Run every case, printing one line per case. ARGS is ignored. */
+    public static void main(String... args) {
+        Alphabet alpha = new Alphabet();
+        Permutation perm = new Permutation(ROTOR_I, alpha);
+        Rotor rotor = new MovingRotor("I", perm, "Q");
+
+        time("rotor forward, compact", new Case() {
+            int run(int n) {
+                int d = 0;
+                for (int i = 0; i < n; i += 1) {
+                    int s = i % 26;
+                    d = perm.wrap(perm.permute(d + s) - s);
+                }
+                return d;
+            }
+        });
+        time("rotor forward, tabled", new Case() {
+            int run(int n) {
+                int d = 0;
+                for (int i = 0; i < n; i += 1) {
+                    rotor.set(i % 26);
+                    d = rotor.convertForward(d);
+                }
+                return d;
+            }
+        });
+        time("rotor backward, compact", new Case() {
+            int run(int n) {
+                int d = 0;
+                for (int i = 0; i < n; i += 1) {
+                    int s = i % 26;
+                    d = perm.wrap(perm.invert(d + s) - s);
+                }
+                return d;
+            }
+        });
+        time("rotor backward, tabled", new Case() {
+            int run(int n) {
+                int d = 0;
+                for (int i = 0; i < n; i += 1) {
+                    rotor.set(i % 26);
+                    d = rotor.convertBackward(d);
+                }
+                return d;
+            }
+        });
+
+        Machine machine = navalMachine(alpha);
+        time("machine convert, no tracer", new Case() {
+            int run(int n) {
+                int d = 0;
+                for (int i = 0; i < n; i += 1) {
+                    d = machine.convert(d);
+                }
+                return d;
+            }
+        });
+        int[] passes = new int[1];
+        machine.setTracer(new Tracer() {
+            @Override
+            public void begin(Machine m, int c) {
+            }
+
+            @Override
+            public void pass(int c) {
+                passes[0] += c;
+            }
+
+            @Override
+            public void end(int c) {
+            }
+        });
+        time("machine convert, counting tracer", new Case() {
+            int run(int n) {
+                int d = 0;
+                for (int i = 0; i < n; i += 1) {
+                    d = machine.convert(d);
+                }
+                return d + passes[0];
+            }
+        });
+    }
+
+    /** Return a machine over ALPHA with naval rotors B, BETA, I, II, and
+     *  III, set to AAAA with an empty plugboard. */
+    static Machine navalMachine(Alphabet alpha) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(REFLECTOR_B, alpha)));
+        rotors.add(new FixedRotor("BETA", new Permutation(ROTOR_BETA, alpha)));
+        rotors.add(new MovingRotor("I", new Permutation(ROTOR_I, alpha), "Q"));
+        rotors.add(new MovingRotor("II", new Permutation(ROTOR_II, alpha),
+                                   "E"));
+        rotors.add(new MovingRotor("III", new Permutation(ROTOR_III, alpha),
+                                   "V"));
+        Machine machine = new Machine(alpha, 5, 3, rotors);
+        machine.insertRotors(new String[] {"B", "BETA", "I", "II", "III"});
+        machine.setRotors("AAAA");
+        machine.setPlugboard(new Permutation("", alpha));
+        return machine;
+    }
+
+    /** One timed loop. */
+    abstract static class Case {
+        /** Perform N operations, returning a value that depends on all of
+         *  them so that the work cannot be discarded. */
+        abstract int run(int n);
+    }
+
+    /** Warm up and then time C, reporting the result under NAME. */
+    static void time(String name, Case c) {
+        for (int k = 0; k < WARMUP; k += 1) {
+            _sink += c.run(OPS);
+        }
+        long start = System.nanoTime();
+        _sink += c.run(OPS);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-40s %8.2f ns/op%n", name,
+                          (double) elapsed / OPS);
+    }
+
+    /** Accumulates results so the JIT keeps every timed loop. */
+    private static int _sink;
+
+    /** Naval rotor I in cycle notation, used as a representative wiring. */
+    private static final String ROTOR_I =
+        "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)";
+    /** Naval rotor II. */
+    private static final String ROTOR_II =
+        "(FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)";
+    /** Naval rotor III. */
+    private static final String ROTOR_III =
+        "(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)";
+    /** Naval rotor Beta. */
+    private static final String ROTOR_BETA =
+        "(ALBEVFCYODJWUGNMQTZSKPR) (HIX)";
+    /** Naval reflector B. */
+    private static final String REFLECTOR_B =
+        "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) (SZ) (TV)";
+}
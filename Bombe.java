@@ -0,0 +1,511 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext search for the rotors and rotor settings of a
+ *  message, after the Turing-Welchman bombe.  Given a crib, a stretch of
+ *  plaintext believed to lie under a stretch of ciphertext of the same
+ *  length, the bombe builds the crib's menu: the graph whose nodes are
+ *  letters and which has an edge between the plaintext and ciphertext
+ *  letters at each position of the crib.  For each candidate rotor order
+ *  and each setting of the rotors at the start of the crib, it then
+ *  supposes in turn that the most connected letter of the menu, its test
+ *  letter, is steckered (plugged) to each letter of the alphabet, and
+ *  follows what that implies along the edges of the menu, through the
+ *  substitution the rotors make at each position, and through the
+ *  symmetry of the plugboard.  A supposition implying that some letter is
+ *  steckered to two others is impossible, as are all the others it
+ *  implies for the test letter.  A state for which some supposition
+ *  survives is a stop, reported to a StopListener as it is found.
+ *
+ *  Unlike the original machine, the bombe steps its rotors exactly as the
+ *  machine does, so a crib across a turnover is handled like any other.
+ *  The substitutions made by the rotors are computed once for each state
+ *  they can be in and shared by all the candidate settings that pass
+ *  through it: the search is divided into units of one rotor order and
+ *  one setting of all but the fast rotor, and each unit first tabulates
+ *  the rotors at each setting of the fast rotor.  Units are divided
+ *  among the threads of a ForkJoinPool.
+ *  @author
+ */
+class Bombe {
+
+    /** Receives the stops found by a search.  Stops may be reported from
+     *  any thread, but not from two at once. */
+    interface StopListener {
+        /** Record STOP. */
+        void stop(Stop stop);
+    }
+
+    /** A stop found by a search. */
+    static class Stop {
+
+        /** A stop with rotors ORDER at SETTINGS, with the test letter of
+         *  the menu steckered as in STECKERS. */
+        Stop(String[] order, String settings, String steckers) {
+            _order = order;
+            _settings = settings;
+            _steckers = steckers;
+        }
+
+        /** Return the names of my rotors, the reflector first. */
+        String[] order() {
+            return _order;
+        }
+
+        /** Return the settings of my rotors, not counting the reflector, at
+         *  the start of the crib. */
+        String settings() {
+            return _settings;
+        }
+
+        /** Return the plugboard pairs implied by my supposition, as
+         *  cycles: a partial plugboard, omitting letters the menu does not
+         *  reach and letters it finds unplugged. */
+        String steckers() {
+            return _steckers;
+        }
+
+        /** Return my rotors, settings, and steckers in the form of a
+         *  settings line, without the leading asterisk. */
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            for (String name : _order) {
+                result.append(name).append(' ');
+            }
+            result.append(_settings);
+            if (!_steckers.isEmpty()) {
+                result.append(' ').append(_steckers);
+            }
+            return result.toString();
+        }
+
+        /** Rotor names, reflector first. */
+        private final String[] _order;
+        /** Settings of the rotors at the start of the crib. */
+        private final String _settings;
+        /** Implied plugboard pairs. */
+        private final String _steckers;
+    }
+
+    /** A bombe for machines with NUMROTORS slots and PAWLS pawls using the
+     *  rotors in CATALOG, searching for settings at which CIPHER would
+     *  result from CRIB.  CRIB and CIPHER have the same length and are in
+     *  the catalog's alphabet, and no letter of CRIB may be the same as
+     *  the letter of CIPHER at the same position, since a machine never
+     *  converts a letter to itself. */
+    Bombe(RotorCatalog catalog, int numRotors, int pawls,
+          String crib, String cipher) {
+        Alphabet alpha = catalog.alphabet();
+        if (crib.length() != cipher.length() || crib.isEmpty()) {
+            throw error("crib and ciphertext differ in length");
+        }
+        if (numRotors < 2 || pawls < 1 || pawls >= numRotors) {
+            throw error("a bombe needs a reflector and a moving rotor");
+        }
+        _catalog = catalog;
+        _numRotors = numRotors;
+        _pawls = pawls;
+        _size = alpha.size();
+        _length = crib.length();
+        int[] plain = new int[_length];
+        int[] code = new int[_length];
+        for (int i = 0; i < _length; i += 1) {
+            plain[i] = alpha.toInt(crib.charAt(i));
+            code[i] = alpha.toInt(cipher.charAt(i));
+            if (plain[i] == code[i]) {
+                throw error("crib letter %c at %d encodes to itself",
+                            crib.charAt(i), i);
+            }
+        }
+        buildMenu(plain, code);
+    }
+
+    /** Return the offsets in CIPHER at which CRIB could lie, which are
+     *  those at which no letter of CRIB matches the letter above it. */
+    static List<Integer> cribOffsets(String cipher, String crib) {
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int k = 0; k + crib.length() <= cipher.length(); k += 1) {
+            int i;
+            for (i = 0; i < crib.length(); i += 1) {
+                if (crib.charAt(i) == cipher.charAt(k + i)) {
+                    break;
+                }
+            }
+            if (i == crib.length()) {
+                result.add(k);
+            }
+        }
+        return result;
+    }
+
+    /** Return the letter my menu tests, as an index in the alphabet. */
+    int testLetter() {
+        return _test;
+    }
+
+    /** Return the number of edges in the part of my menu connected to
+     *  my test letter. */
+    int menuEdges() {
+        return _adjStart[_size] / 2;
+    }
+
+    /** Return the number of independent closed loops in the part of my
+     *  menu connected to my test letter.  Each loop is a check that a
+     *  wrong supposition must pass to survive, so a menu with few loops
+     *  gives many false stops. */
+    int menuLoops() {
+        int letters = 0;
+        for (int c = 0; c < _size; c += 1) {
+            if (_adjStart[c + 1] > _adjStart[c]) {
+                letters += 1;
+            }
+        }
+        return menuEdges() - letters + 1;
+    }
+
+    /** Return the number of states that search(ORDERS, ...) tests. */
+    long states(List<String[]> orders) {
+        long result = orders.size();
+        for (int k = 1; k < _numRotors; k += 1) {
+            result *= _size;
+        }
+        return result;
+    }
+
+    /** Return the number of states tested so far by my searches. */
+    long tested() {
+        return _tested.get();
+    }
+
+    /** Return the number of stops found so far by my searches. */
+    long stops() {
+        return _stops.get();
+    }
+
+    /** Test every setting of the rotors in each of ORDERS, dividing the
+     *  work among the threads of POOL and reporting each stop to
+     *  LISTENER as it is found.  Returns once the search is complete. */
+    void search(List<String[]> orders, ForkJoinPool pool,
+                StopListener listener) {
+        for (String[] order : orders) {
+            _catalog.checkOrder(order, _numRotors, _pawls);
+        }
+        if (orders.isEmpty()) {
+            return;
+        }
+        long units = states(orders) / _size;
+        pool.invoke(new SearchChunk(orders, units / orders.size(),
+                                    0, units, listener));
+    }
+
+    /** Largest number of units searched by one task. */
+    static final int UNITS_PER_TASK = 16;
+
+    /** A task searching a range of units. */
+    private class SearchChunk extends RecursiveAction {
+
+        /** A task that searches units LO .. HI-1 of ORDERS, reporting to
+         *  LISTENER, where there are PERORDER units in each order. */
+        SearchChunk(List<String[]> orders, long perOrder, long lo, long hi,
+                    StopListener listener) {
+            _orders = orders;
+            _perOrder = perOrder;
+            _lo = lo;
+            _hi = hi;
+            _listener = listener;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= UNITS_PER_TASK) {
+                new Searcher(_listener).search(_orders, _perOrder, _lo, _hi);
+            } else {
+                long mid = (_lo + _hi) >>> 1;
+                invokeAll(new SearchChunk(_orders, _perOrder, _lo, mid,
+                                          _listener),
+                          new SearchChunk(_orders, _perOrder, mid, _hi,
+                                          _listener));
+            }
+        }
+
+        /** Rotor orders being searched. */
+        private final List<String[]> _orders;
+        /** Number of units in each order. */
+        private final long _perOrder;
+        /** Bounds of my units. */
+        private final long _lo, _hi;
+        /** Where stops go. */
+        private final StopListener _listener;
+    }
+
+    /** The state of one thread's search: its machine, its tables, and
+     *  the record of a supposition being followed through the menu. */
+    private class Searcher {
+
+        /** A searcher reporting to LISTENER. */
+        Searcher(StopListener listener) {
+            _listener = listener;
+            _fast = new int[_size][_size];
+            _stepped = new int[_length][_size];
+            _scramblers = new int[_length][];
+            _settings = new int[_numRotors];
+            _state = new int[_numRotors];
+            _lit = new boolean[_size * _size];
+            _row = new int[_size];
+            _queue = new int[_size * _size];
+            _rejected = new boolean[_size];
+        }
+
+        /** Search units LO .. HI-1 of ORDERS, where each order has
+         *  PERORDER units.  Unit U is order U / PERORDER with slots 1
+         *  through _numRotors-2 set to the digits of U % PERORDER. */
+        void search(List<String[]> orders, long perOrder, long lo,
+                    long hi) {
+            int last = _numRotors - 1;
+            int current = -1;
+            for (long u = lo; u < hi; u += 1) {
+                int order = (int) (u / perOrder);
+                if (order != current) {
+                    current = order;
+                    _order = orders.get(order);
+                    _machine = new Machine(_catalog, _numRotors, _pawls);
+                    _machine.insertRotors(_order);
+                }
+                long digits = u % perOrder;
+                for (int k = last - 1; k > 0; k -= 1) {
+                    _settings[k] = (int) (digits % _size);
+                    digits /= _size;
+                }
+                for (int f = 0; f < _size; f += 1) {
+                    _settings[last] = f;
+                    _machine.rotorSubstitution(_settings, _fast[f]);
+                }
+                for (int f = 0; f < _size; f += 1) {
+                    _settings[last] = f;
+                    testState();
+                }
+                _tested.addAndGet(_size);
+            }
+        }
+
+        /** Test the state in _settings, reporting it if it is a stop. */
+        private void testState() {
+            int last = _numRotors - 1;
+            System.arraycopy(_settings, 0, _state, 0, _numRotors);
+            for (int i = 0; i < _length; i += 1) {
+                _machine.stepSettings(_state);
+                int k;
+                for (k = 1; k < last && _state[k] == _settings[k]; k += 1) {
+                    continue;
+                }
+                if (k == last) {
+                    _scramblers[i] = _fast[_state[last]];
+                } else {
+                    _machine.rotorSubstitution(_state, _stepped[i]);
+                    _scramblers[i] = _stepped[i];
+                }
+            }
+            Arrays.fill(_rejected, false);
+            for (int a = 0; a < _size; a += 1) {
+                if (_rejected[a]) {
+                    continue;
+                }
+                if (follow(_test, a)) {
+                    report();
+                } else {
+                    for (int b = 0; b < _size; b += 1) {
+                        _rejected[b] |= _lit[_test * _size + b];
+                    }
+                }
+                clear();
+            }
+        }
+
+        /** Follow the supposition that letter X is steckered to letter A
+         *  through my menu, lighting each implied pair in _lit.  Returns
+         *  false, leaving the pairs lit so far, as soon as some letter is
+         *  implied to be steckered to two letters. */
+        private boolean follow(int x, int a) {
+            int size = _size;
+            _queued = 0;
+            if (!light(x, a)) {
+                return false;
+            }
+            for (int q = 0; q < _queued; q += 1) {
+                int p = _queue[q];
+                int from = p / size, to = p % size;
+                if (!light(to, from)) {
+                    return false;
+                }
+                for (int e = _adjStart[from]; e < _adjStart[from + 1];
+                     e += 1) {
+                    if (!light(_adjLetter[e], _scramblers[_adjPos[e]][to])) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Light the pair of letters X and Y, queueing it if it was
+         *  dark.  Returns false iff X is then steckered to two letters. */
+        private boolean light(int x, int y) {
+            int p = x * _size + y;
+            if (_lit[p]) {
+                return true;
+            }
+            _lit[p] = true;
+            _queue[_queued] = p;
+            _queued += 1;
+            _row[x] += 1;
+            return _row[x] == 1;
+        }
+
+        /** Darken all the pairs lit by the last call of follow. */
+        private void clear() {
+            for (int q = 0; q < _queued; q += 1) {
+                _lit[_queue[q]] = false;
+                _row[_queue[q] / _size] = 0;
+            }
+        }
+
+        /** Report a stop at _settings with the pairs lit in _lit. */
+        private void report() {
+            Alphabet alpha = _catalog.alphabet();
+            StringBuilder settings = new StringBuilder();
+            for (int k = 1; k < _numRotors; k += 1) {
+                settings.append(alpha.toChar(_settings[k]));
+            }
+            StringBuilder steckers = new StringBuilder();
+            for (int q = 0; q < _queued; q += 1) {
+                int from = _queue[q] / _size, to = _queue[q] % _size;
+                if (from < to) {
+                    if (steckers.length() > 0) {
+                        steckers.append(' ');
+                    }
+                    steckers.append('(').append(alpha.toChar(from))
+                        .append(alpha.toChar(to)).append(')');
+                }
+            }
+            Stop stop = new Stop(_order.clone(), settings.toString(),
+                                 steckers.toString());
+            _stops.incrementAndGet();
+            synchronized (Bombe.this) {
+                _listener.stop(stop);
+            }
+        }
+
+        /** Where stops go. */
+        private final StopListener _listener;
+        /** Rotor order of the unit being searched. */
+        private String[] _order;
+        /** Machine with the rotors of _order. */
+        private Machine _machine;
+        /** The substitution made by the rotors of _machine at each
+         *  setting of the fast rotor, the others being as in _settings. */
+        private final int[][] _fast;
+        /** Substitutions at positions of the crib where a rotor other
+         *  than the fast one has moved. */
+        private final int[][] _stepped;
+        /** The substitution at each position of the crib for the state
+         *  being tested, from _fast or _stepped. */
+        private final int[][] _scramblers;
+        /** The state being tested. */
+        private final int[] _settings;
+        /** The state at a position of the crib. */
+        private final int[] _state;
+        /** _lit[x * _size + y] is true iff a supposition implies that x is
+         *  steckered to y. */
+        private final boolean[] _lit;
+        /** Number of letters lit in each row of _lit. */
+        private final int[] _row;
+        /** Pairs lit by follow, as indices in _lit, in the order lit. */
+        private final int[] _queue;
+        /** Number of pairs in _queue. */
+        private int _queued;
+        /** _rejected[a] is true iff supposing that the test letter is
+         *  steckered to a has been found impossible for this state: a
+         *  wrong supposition implies every other it lights for the test
+         *  letter, since the implications of a menu run both ways. */
+        private final boolean[] _rejected;
+    }
+
+    /** Build my menu from the letters PLAIN of the crib and CODE of the
+     *  ciphertext, choosing the test letter and keeping only the edges
+     *  connected to it. */
+    private void buildMenu(int[] plain, int[] code) {
+        int[] degree = new int[_size];
+        for (int i = 0; i < _length; i += 1) {
+            degree[plain[i]] += 1;
+            degree[code[i]] += 1;
+        }
+        _test = 0;
+        for (int c = 1; c < _size; c += 1) {
+            if (degree[c] > degree[_test]) {
+                _test = c;
+            }
+        }
+        boolean[] connected = new boolean[_size];
+        connected[_test] = true;
+        for (boolean changed = true; changed;) {
+            changed = false;
+            for (int i = 0; i < _length; i += 1) {
+                if (connected[plain[i]] != connected[code[i]]) {
+                    connected[plain[i]] = connected[code[i]] = true;
+                    changed = true;
+                }
+            }
+        }
+        _adjStart = new int[_size + 1];
+        for (int c = 0; c < _size; c += 1) {
+            _adjStart[c + 1] = _adjStart[c]
+                + (connected[c] ? degree[c] : 0);
+        }
+        _adjLetter = new int[_adjStart[_size]];
+        _adjPos = new int[_adjStart[_size]];
+        int[] next = _adjStart.clone();
+        for (int i = 0; i < _length; i += 1) {
+            if (connected[plain[i]]) {
+                addEdge(next, plain[i], code[i], i);
+                addEdge(next, code[i], plain[i], i);
+            }
+        }
+    }
+
+    /** Add an edge from letter FROM to letter TO at position POS of the
+     *  crib, where NEXT[FROM] is the next free place in FROM's edges. */
+    private void addEdge(int[] next, int from, int to, int pos) {
+        _adjLetter[next[from]] = to;
+        _adjPos[next[from]] = pos;
+        next[from] += 1;
+    }
+
+    /** The rotors that may be used. */
+    private final RotorCatalog _catalog;
+    /** Number of slots and of pawls in the machines searched. */
+    private final int _numRotors, _pawls;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Length of the crib. */
+    private final int _length;
+    /** The test letter of my menu. */
+    private int _test;
+    /** The edges of my menu from letter c are at indices _adjStart[c]
+     *  through _adjStart[c + 1] - 1 of _adjLetter, which holds the other
+     *  letter of each, and _adjPos, which holds its position in the
+     *  crib. */
+    private int[] _adjStart, _adjLetter, _adjPos;
+    /** Number of states tested so far. */
+    private final AtomicLong _tested = new AtomicLong();
+    /** Number of stops found so far. */
+    private final AtomicLong _stops = new AtomicLong();
+}
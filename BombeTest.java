@@ -0,0 +1,126 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(120);
+
+    /* ***** TESTS ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    private static final RotorCatalog CATALOG;
+
+    static {
+        CATALOG = new RotorCatalog(AZ, TestUtils.navalRotors(
+            AZ, "B", "C", "Beta", "Gamma", "I", "III", "IV", "VI"));
+    }
+
+    private static final String[] ORDER = { "B", "Beta", "III", "IV", "I" };
+
+    private static final String MESSAGE =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOODMADEOFSLIDING"
+        + "FOLDINGROSEWOODNEATLYPUTITALLTOGETHER";
+
+    /** Return the conversion of MESSAGE by a machine with rotors ORDER at
+     *  SETTING and plugboard PLUGS, leaving MACHINE[0] at SETTING. */
+    private String encode(String setting, String plugs, Machine[] machine) {
+        Machine mach = new Machine(CATALOG, 5, 3);
+        mach.insertRotors(ORDER);
+        mach.setRotors(setting);
+        mach.setPlugboard(new Permutation(plugs, AZ));
+        machine[0] = mach.copy();
+        return mach.convert(MESSAGE);
+    }
+
+    @Test
+    public void testOrders() {
+        Bombe bombe = new Bombe(CATALOG, 5, 3, "AB", "BA");
+        List<String[]> orders = CATALOG.orders(5, 3);
+        assertEquals(2 * 2 * 4 * 3 * 2, orders.size());
+        for (String[] order : orders) {
+            assertTrue(CATALOG.get(order[0]).reflecting());
+            assertFalse(CATALOG.get(order[1]).rotates());
+            assertNotEquals(order[2], order[3]);
+            assertNotEquals(order[3], order[4]);
+            assertNotEquals(order[2], order[4]);
+        }
+        assertEquals(orders.size() * 26L * 26 * 26 * 26,
+                     bombe.states(orders));
+    }
+
+    @Test
+    public void testMenu() {
+        Bombe bombe = new Bombe(CATALOG, 5, 3, "ABCAXY", "BCAQYZ");
+        assertEquals(AZ.toInt('A'), bombe.testLetter());
+        assertEquals(4, bombe.menuEdges());
+        assertEquals(1, bombe.menuLoops());
+        assertEquals(Arrays.asList(0, 2),
+                     Bombe.cribOffsets("QABCDA", "ABCD"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSelfEncoding() {
+        new Bombe(CATALOG, 5, 3, "ABC", "XBZ");
+    }
+
+    @Test
+    public void testFindsKey() {
+        Machine[] start = new Machine[1];
+        String plugs = "(AQ) (EP) (HZ) (LT) (OW) (DV)";
+        String cipher = encode("AXLE", plugs, start);
+        int offset = 31;
+        String crib = MESSAGE.substring(offset, offset + 26);
+        int[] expected = start[0].settingsAfter(offset);
+        StringBuilder setting = new StringBuilder();
+        for (int k = 1; k < 5; k += 1) {
+            setting.append(AZ.toChar(expected[k]));
+        }
+
+        Bombe bombe =
+            new Bombe(CATALOG, 5, 3, crib,
+                      cipher.substring(offset, offset + crib.length()));
+        List<Bombe.Stop> stops =
+            Collections.synchronizedList(new ArrayList<Bombe.Stop>());
+        List<String[]> orders = Collections.singletonList(ORDER);
+        bombe.search(orders, ForkJoinPool.commonPool(),
+                     new Bombe.StopListener() {
+                         @Override
+                         public void stop(Bombe.Stop stop) {
+                             stops.add(stop);
+                         }
+                     });
+        assertEquals(bombe.states(orders), bombe.tested());
+        assertEquals(stops.size(), bombe.stops());
+
+        Permutation plugboard = new Permutation(plugs, AZ);
+        boolean found = false;
+        for (Bombe.Stop stop : stops) {
+            if (stop.settings().equals(setting.toString())) {
+                String pairs = stop.steckers();
+                boolean agrees = true;
+                for (int i = 1; i < pairs.length(); i += 5) {
+                    agrees &= plugboard.permute(pairs.charAt(i))
+                        == pairs.charAt(i + 1);
+                }
+                found |= agrees;
+            }
+        }
+        assertTrue("key not among " + stops.size() + " stops", found);
+        assertTrue(stops.size() < 100);
+    }
+}
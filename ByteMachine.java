@@ -0,0 +1,310 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static enigma.EnigmaException.*;
+
+/** An Enigma machine over bytes, for converting binary data.  It is
+ *  built from a Machine whose alphabet has exactly 256 characters, the
+ *  K-th of which stands for the byte whose unsigned value is K, and
+ *  converts bytes exactly as that machine would convert the
+ *  corresponding characters, with no characters, lines, or groups.
+ *
+ *  Each byte costs five lookups in tables that stay in the processor's
+ *  fastest cache.  The plugboard is folded into tables of the fast rotor
+ *  at each of its settings, one for each direction, and the rotor next
+ *  to it, the middle rotor, has similar tables without the plugboard.
+ *  All the rotors to the left of the middle one, which move only when
+ *  it reaches a notch, are composed with the reflector into a single
+ *  table, the core, computed again only when one of them moves.
+ *  Between the fast rotor's notches, stepping only advances it.
+ *  @author
+ */
+class ByteMachine {
+
+    /** Number of bytes, and so of characters in my alphabet. */
+    static final int SIZE = 256;
+
+    /** A byte machine with the rotors, settings, and plugboard that
+     *  MACHINE has now.  It thereafter converts independently of MACHINE,
+     *  which is unchanged. */
+    ByteMachine(Machine machine) {
+        if (machine.alphabet().size() != SIZE) {
+            throw error("binary conversion needs an alphabet of %d "
+                        + "characters", SIZE);
+        }
+        _machine = machine.copy();
+        _last = machine.numRotors() - 1;
+        _settings = machine.settingsAfter(0);
+        _scratch = new int[_settings.length];
+        _rotors = new Rotor[_settings.length];
+        for (int k = 0; k <= _last; k += 1) {
+            _rotors[k] = machine.getRotor(k);
+        }
+        Rotor fast = _rotors[_last];
+        _fastRotates = fast.rotates();
+
+        Permutation plugboard = machine.plugboard();
+        _in = new byte[SIZE * SIZE];
+        _out = new byte[SIZE * SIZE];
+        for (int s = 0; s < SIZE; s += 1) {
+            for (int c = 0; c < SIZE; c += 1) {
+                _in[s * SIZE + c] =
+                    (byte) fast.convertForward(plugboard.permute(c), s);
+                _out[s * SIZE + c] =
+                    (byte) plugboard.permute(fast.convertBackward(c, s));
+            }
+        }
+
+        _middle = _last >= 2 && _rotors[_last - 1].rotates() ? _last - 1 : -1;
+        _midForward = new byte[SIZE * SIZE];
+        _midBackward = new byte[SIZE * SIZE];
+        if (_middle >= 0) {
+            Rotor middle = _rotors[_middle];
+            for (int s = 0; s < SIZE; s += 1) {
+                for (int c = 0; c < SIZE; c += 1) {
+                    _midForward[s * SIZE + c] =
+                        (byte) middle.convertForward(c, s);
+                    _midBackward[s * SIZE + c] =
+                        (byte) middle.convertBackward(c, s);
+                }
+            }
+        } else {
+            for (int c = 0; c < SIZE; c += 1) {
+                _midForward[c] = _midBackward[c] = (byte) c;
+            }
+        }
+        _coreTop = _middle >= 0 ? _middle - 1 : _last - 1;
+        _coreSettings = new int[_coreTop + 1];
+        _core = new int[SIZE];
+        setCore();
+
+        _clearRun = new int[SIZE];
+        for (int s = 0; s < SIZE; s += 1) {
+            int run = 0;
+            while (run < SIZE && !fast.atNotch((s + run) % SIZE)) {
+                run += 1;
+            }
+            _clearRun[s] = run;
+        }
+    }
+
+    /** Return the setting of the rotor in slot K. */
+    int setting(int k) {
+        return _settings[k];
+    }
+
+    /** Convert the LEN bytes of IN starting at OFF, storing the results in
+     *  OUT starting at OUTOFF and updating the settings of my rotors
+     *  accordingly.  IN and OUT may be the same array at the same
+     *  offset, but otherwise their ranges must not overlap.  If either
+     *  range is out of bounds, throws an exception before converting
+     *  anything. */
+    void convert(byte[] in, int off, int len, byte[] out, int outOff) {
+        if (off < 0 || len < 0 || len > in.length - off
+            || outOff < 0 || len > out.length - outOff) {
+            throw new IndexOutOfBoundsException("range out of bounds");
+        }
+        byte[] inTable = _in, outTable = _out;
+        byte[] midForward = _midForward, midBackward = _midBackward;
+        int[] core = _core;
+        int fast = _settings[_last];
+        int midBase = middleBase();
+        int run = _run;
+        int i = 0;
+        while (i < len) {
+            if (run == 0) {
+                _settings[_last] = fast;
+                step();
+                fast = _settings[_last];
+                midBase = middleBase();
+                run = _run;
+                out[outOff + i] = convert(in[off + i], fast, midBase);
+                i += 1;
+                continue;
+            }
+            int end = i + Math.min(run, len - i);
+            run -= end - i;
+            for (; i < end; i += 1) {
+                fast = (fast + 1) & (SIZE - 1);
+                int base = fast * SIZE;
+                int c = inTable[base + (in[off + i] & 0xff)] & 0xff;
+                c = core[midForward[midBase + c] & 0xff];
+                c = midBackward[midBase + c] & 0xff;
+                out[outOff + i] = outTable[base + c];
+            }
+        }
+        _settings[_last] = fast;
+        _run = run;
+    }
+
+    /** Return the conversion of byte B with the fast rotor at setting
+     *  FAST and the middle rotor's tables at offset MIDBASE, as in the
+     *  inner loop of convert(byte[], int, int, byte[], int). */
+    private byte convert(byte b, int fast, int midBase) {
+        int base = fast * SIZE;
+        int c = _in[base + (b & 0xff)] & 0xff;
+        c = _core[_midForward[midBase + c] & 0xff];
+        c = _midBackward[midBase + c] & 0xff;
+        return _out[base + c];
+    }
+
+    /** Convert the bytes remaining in IN, putting the results into OUT,
+     *  which must have room for all of them.  Both buffers' positions
+     *  advance past the bytes read and written. */
+    void convert(ByteBuffer in, ByteBuffer out) {
+        int len = in.remaining();
+        if (out.remaining() < len) {
+            throw new BufferOverflowException();
+        }
+        if (in.hasArray() && out.hasArray() && !out.isReadOnly()) {
+            convert(in.array(), in.arrayOffset() + in.position(), len,
+                    out.array(), out.arrayOffset() + out.position());
+            in.position(in.position() + len);
+            out.position(out.position() + len);
+        } else {
+            byte[] block = new byte[Math.min(len, BLOCK)];
+            while (in.hasRemaining()) {
+                int n = Math.min(in.remaining(), block.length);
+                in.get(block, 0, n);
+                convert(block, 0, n, block, 0);
+                out.put(block, 0, n);
+            }
+        }
+    }
+
+    /** Convert all the bytes read from IN until its end, writing the
+     *  results to OUT, and return the number converted. */
+    long convert(ReadableByteChannel in, WritableByteChannel out) {
+        ByteBuffer block = ByteBuffer.allocate(BLOCK);
+        long total = 0;
+        while (true) {
+            int n;
+            try {
+                n = in.read(block);
+            } catch (IOException excp) {
+                throw error("could not read input: %s", excp.getMessage());
+            }
+            if (n < 0) {
+                break;
+            }
+            if (!block.hasRemaining()) {
+                total += drain(block, out);
+            }
+        }
+        return total + drain(block, out);
+    }
+
+    /** Convert the bytes read into BLOCK, write them to OUT, and make
+     *  BLOCK ready to read into again.  Returns the number of bytes
+     *  written. */
+    private int drain(ByteBuffer block, WritableByteChannel out) {
+        block.flip();
+        int n = block.remaining();
+        convert(block.array(), block.arrayOffset(), n,
+                block.array(), block.arrayOffset());
+        try {
+            while (block.hasRemaining()) {
+                out.write(block);
+            }
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+        block.clear();
+        return n;
+    }
+
+    /** Advance _settings by one keystroke when it may move more than the
+     *  fast rotor, and set _run to the number of keystrokes after it
+     *  that move only the fast rotor. */
+    private void step() {
+        _machine.stepSettings(_settings);
+        for (int k = 1; k <= _coreTop; k += 1) {
+            if (_coreSettings[k] != _settings[k]) {
+                setCore();
+                break;
+            }
+        }
+        _run = 0;
+        int fast = _settings[_last];
+        if (_fastRotates && _clearRun[fast] > 0) {
+            System.arraycopy(_settings, 0, _scratch, 0, _scratch.length);
+            _machine.stepSettings(_scratch);
+            for (int k = 1; k < _last; k += 1) {
+                if (_scratch[k] != _settings[k]) {
+                    return;
+                }
+            }
+            _run = _clearRun[fast];
+        }
+    }
+
+    /** Return the offset of the middle rotor's current setting in
+     *  _midForward and _midBackward. */
+    private int middleBase() {
+        return _middle >= 0 ? _settings[_middle] * SIZE : 0;
+    }
+
+    /** Compose the core for the current settings of slots 0 through
+     *  _coreTop. */
+    private void setCore() {
+        System.arraycopy(_settings, 0, _coreSettings, 0,
+                         _coreSettings.length);
+        for (int c = 0; c < SIZE; c += 1) {
+            int d = c;
+            for (int k = _coreTop; k >= 0; k -= 1) {
+                d = _rotors[k].convertForward(d, _settings[k]);
+            }
+            for (int k = 1; k <= _coreTop; k += 1) {
+                d = _rotors[k].convertBackward(d, _settings[k]);
+            }
+            _core[c] = d;
+        }
+    }
+
+    /** Number of bytes converted at a time from a channel or a buffer
+     *  without an accessible array. */
+    static final int BLOCK = 1 << 16;
+
+    /** Copy of the machine I was built from, which steps _settings. */
+    private final Machine _machine;
+    /** Index of the fast rotor's slot. */
+    private final int _last;
+    /** Current setting of the rotor in each slot.  While converting, the
+     *  fast rotor's is kept in a local variable. */
+    private final int[] _settings;
+    /** Space to step a copy of _settings. */
+    private final int[] _scratch;
+    /** The rotor in each slot. */
+    private final Rotor[] _rotors;
+    /** True iff the fast rotor moves at all. */
+    private final boolean _fastRotates;
+    /** _in[s * SIZE + c] is byte c after the plugboard and then the fast
+     *  rotor at setting s, and _out[s * SIZE + c] is c after the fast
+     *  rotor, going back, and then the plugboard. */
+    private final byte[] _in, _out;
+    /** Slot of the middle rotor, or -1 if the rotor to the left of the
+     *  fast one does not move. */
+    private final int _middle;
+    /** Tables of the middle rotor like _in and _out, without the
+     *  plugboard, or of the identity at setting 0 if there is none. */
+    private final byte[] _midForward, _midBackward;
+    /** Last slot whose rotor is part of the core. */
+    private final int _coreTop;
+    /** Settings of slots 0 through _coreTop for which _core was
+     *  composed. */
+    private final int[] _coreSettings;
+    /** Result of passing each byte forward through slots _coreTop down to
+     *  0, which holds the reflector, and back. */
+    private final int[] _core;
+    /** _clearRun[s] is the number of consecutive settings of the fast
+     *  rotor from s on, cyclically and up to SIZE, that are not at a
+     *  notch. */
+    private final int[] _clearRun;
+    /** Number of coming keystrokes that move only the fast rotor. */
+    private int _run;
+}
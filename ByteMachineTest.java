@@ -0,0 +1,206 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the ByteMachine class.
+ *  @author
+ */
+public class ByteMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** An alphabet of 256 characters, from U+0100 on. */
+    private static final Alphabet BYTES;
+
+    static {
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < ByteMachine.SIZE; i += 1) {
+            chars.append((char) (0x100 + i));
+        }
+        BYTES = new Alphabet(chars.toString());
+    }
+
+    /** Return a random permutation of BYTES from RANDOM, an involution
+     *  with no fixed points if REFLECTING. */
+    private static Permutation randomPerm(Random random, boolean reflecting) {
+        int n = ByteMachine.SIZE;
+        int[] shuffled = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            int j = random.nextInt(i + 1);
+            shuffled[i] = shuffled[j];
+            shuffled[j] = i;
+        }
+        int[] forward = new int[n], inverse = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            if (reflecting) {
+                forward[shuffled[i]] = shuffled[i ^ 1];
+            } else {
+                forward[i] = shuffled[i];
+            }
+        }
+        for (int i = 0; i < n; i += 1) {
+            inverse[forward[i]] = i;
+        }
+        return new Permutation(forward, inverse, BYTES);
+    }
+
+    /** Return NUM notches of BYTES chosen by RANDOM. */
+    private static String randomNotches(Random random, int num) {
+        StringBuilder notches = new StringBuilder();
+        for (int i = 0; i < num; i += 1) {
+            notches.append(BYTES.toChar(random.nextInt(ByteMachine.SIZE)));
+        }
+        return notches.toString();
+    }
+
+    /** Return a machine over BYTES with a reflector, a fixed rotor, and
+     *  PAWLS moving rotors with many notches, all wired at random from
+     *  SEED, at random settings and with a random plugboard. */
+    private static Machine machine(long seed, int pawls) {
+        Random random = new Random(seed);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", randomPerm(random, true)));
+        rotors.add(new FixedRotor("F", randomPerm(random, false)));
+        String[] order = new String[pawls + 2];
+        order[0] = "R";
+        order[1] = "F";
+        for (int k = 0; k < pawls; k += 1) {
+            order[k + 2] = "M" + k;
+            rotors.add(new MovingRotor(order[k + 2],
+                                       randomPerm(random, false),
+                                       randomNotches(random, 24)));
+        }
+        Machine mach = new Machine(BYTES, pawls + 2, pawls, rotors);
+        mach.insertRotors(order);
+        mach.setRotors(randomNotches(random, pawls + 1));
+        mach.setPlugboard(randomPerm(random, true));
+        return mach;
+    }
+
+    /** Return LEN random bytes from SEED. */
+    private static byte[] randomBytes(long seed, int len) {
+        byte[] result = new byte[len];
+        new Random(seed).nextBytes(result);
+        return result;
+    }
+
+    /** Return the conversion of DATA by MACH, one character at a time. */
+    private static byte[] expected(Machine mach, byte[] data) {
+        byte[] result = new byte[data.length];
+        for (int i = 0; i < data.length; i += 1) {
+            result[i] = (byte) mach.convert(data[i] & 0xff);
+        }
+        return result;
+    }
+
+    /** Check that BYTEMACH's rotors are at MACH's settings. */
+    private static void checkSettings(Machine mach, ByteMachine byteMach) {
+        for (int k = 0; k < mach.numRotors(); k += 1) {
+            assertEquals(mach.setting(k), byteMach.setting(k));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesMachine() {
+        for (int pawls = 1; pawls <= 3; pawls += 1) {
+            Machine mach = machine(pawls, pawls);
+            ByteMachine byteMach = new ByteMachine(mach);
+            byte[] data = randomBytes(pawls, 300000);
+            byte[] result = data.clone();
+            byteMach.convert(result, 0, 1000, result, 0);
+            byteMach.convert(result, 1000, result.length - 1000,
+                             result, 1000);
+            assertArrayEquals(expected(mach, data), result);
+            checkSettings(mach, byteMach);
+        }
+    }
+
+    @Test
+    public void testInvolution() {
+        Machine mach = machine(7, 3);
+        int[] settings = mach.settingsAfter(0);
+        byte[] data = randomBytes(7, 100000);
+        byte[] cipher = new byte[data.length], plain = new byte[data.length];
+        new ByteMachine(mach).convert(data, 0, data.length, cipher, 0);
+        new ByteMachine(mach).convert(cipher, 0, data.length, plain, 0);
+        assertArrayEquals(data, plain);
+        assertArrayEquals(settings, mach.settingsAfter(0));
+    }
+
+    @Test
+    public void testBuffers() {
+        Machine mach = machine(11, 3);
+        byte[] data = randomBytes(11, 200000);
+        ByteBuffer in = ByteBuffer.allocateDirect(data.length);
+        in.put(data).flip();
+        ByteBuffer out = ByteBuffer.allocateDirect(data.length + 10);
+        ByteMachine byteMach = new ByteMachine(mach);
+        in.limit(12345);
+        byteMach.convert(in, out);
+        in.limit(data.length);
+        byteMach.convert(in, out);
+        assertEquals(data.length, out.position());
+        assertFalse(in.hasRemaining());
+        byte[] result = new byte[data.length];
+        out.flip();
+        out.get(result);
+        assertArrayEquals(expected(mach, data), result);
+        checkSettings(mach, byteMach);
+    }
+
+    @Test
+    public void testChannels() {
+        Machine mach = machine(13, 2);
+        byte[] data = randomBytes(13, 3 * ByteMachine.BLOCK + 17);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteMachine byteMach = new ByteMachine(mach);
+        long n = byteMach.convert(
+            Channels.newChannel(new ByteArrayInputStream(data)),
+            Channels.newChannel(out));
+        assertEquals(data.length, n);
+        assertArrayEquals(expected(mach, data), out.toByteArray());
+        checkSettings(mach, byteMach);
+    }
+
+    @Test
+    public void testShortOutput() {
+        Machine mach = machine(17, 3);
+        ByteMachine byteMach = new ByteMachine(mach);
+        byte[] data = randomBytes(17, 1000);
+        try {
+            byteMach.convert(data, 0, data.length, new byte[999], 0);
+            fail("output overflow accepted");
+        } catch (IndexOutOfBoundsException excp) {
+            /* Nothing should have been converted. */
+        }
+        checkSettings(mach, byteMach);
+        byte[] result = new byte[data.length];
+        byteMach.convert(data, 0, data.length, result, 0);
+        assertArrayEquals(expected(mach, data), result);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testWrongAlphabet() {
+        Alphabet az = new Alphabet(TestUtils.UPPER_STRING);
+        Machine mach =
+            new Machine(az, 2, 1, TestUtils.navalRotors(az, "B", "I"));
+        mach.insertRotors(new String[] { "B", "I" });
+        mach.setPlugboard(new Permutation("", az));
+        new ByteMachine(mach);
+    }
+}
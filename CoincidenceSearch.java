@@ -0,0 +1,523 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only search for the rotors and rotor settings of a
+ *  message.  The ciphertext is decrypted at every setting of every
+ *  candidate rotor order, with no plugboard, and each decryption is
+ *  scored by its index of coincidence: the chance that two letters drawn
+ *  from it at random are the same.  Natural language scores well above
+ *  random text, and a plugboard of a few pairs leaves enough of that
+ *  excess that the right rotors and settings tend to be among the best
+ *  scores.  The best candidates are kept in a heap of bounded size.
+ *
+ *  The search is divided, like a Bombe's, into units of one rotor order
+ *  and one setting of all but the fast rotor, each of which tabulates its
+ *  rotors at every setting of the fast rotor before decrypting.  Units
+ *  are swept in batches on a ForkJoinPool.  Between batches, the search
+ *  may save a checkpoint, a text file holding the number of units swept
+ *  and the best candidates so far, from which a later search over the
+ *  same ciphertext and orders resumes.  A search whose thread is
+ *  interrupted saves a checkpoint after its current batch and stops.
+ *  @author
+ */
+class CoincidenceSearch {
+
+    /** A candidate key found by a search. */
+    static class Candidate {
+
+        /** A candidate with rotors ORDER at SETTINGS, which is state INDEX
+         *  of its search, whose decryption has PAIRS pairs of equal letters
+         *  out of TOTAL pairs. */
+        Candidate(String[] order, String settings, long index, long pairs,
+                  long total) {
+            _order = order;
+            _settings = settings;
+            _index = index;
+            _pairs = pairs;
+            _total = total;
+        }
+
+        /** Return the names of my rotors, the reflector first. */
+        String[] order() {
+            return _order;
+        }
+
+        /** Return the settings of my rotors, not counting the reflector, at
+         *  the start of the message. */
+        String settings() {
+            return _settings;
+        }
+
+        /** Return the index of coincidence of my decryption. */
+        double score() {
+            return (double) _pairs / _total;
+        }
+
+        /** Return my rotors and settings in the form of a settings line,
+         *  without the leading asterisk. */
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            for (String name : _order) {
+                result.append(name).append(' ');
+            }
+            return result.append(_settings).toString();
+        }
+
+        /** Rotor names, reflector first. */
+        private final String[] _order;
+        /** Settings of the rotors at the start of the message. */
+        private final String _settings;
+        /** My position in the order of states searched. */
+        private final long _index;
+        /** Number of pairs of equal letters in my decryption. */
+        private final long _pairs;
+        /** Number of pairs of letters in my decryption. */
+        private final long _total;
+    }
+
+    /** Orders candidates worst first: by fewer pairs of equal letters,
+     *  and among equals, by later index, so that the candidates kept do
+     *  not depend on the order in which they were found. */
+    static final Comparator<Candidate> WORST_FIRST =
+        new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate a, Candidate b) {
+                if (a._pairs != b._pairs) {
+                    return Long.compare(a._pairs, b._pairs);
+                }
+                return Long.compare(b._index, a._index);
+            }
+        };
+
+    /** A search for machines with NUMROTORS slots and PAWLS pawls using the
+     *  rotors in CATALOG, which keeps the BEST best-scoring decryptions of
+     *  CIPHER, a text in the catalog's alphabet of at least two letters. */
+    CoincidenceSearch(RotorCatalog catalog, int numRotors, int pawls,
+                      String cipher, int best) {
+        Alphabet alpha = catalog.alphabet();
+        if (cipher.length() < 2) {
+            throw error("ciphertext too short");
+        }
+        if (best < 1) {
+            throw error("must keep at least one candidate");
+        }
+        _catalog = catalog;
+        _numRotors = numRotors;
+        _pawls = pawls;
+        _size = alpha.size();
+        _keep = best;
+        _cipherText = cipher;
+        _cipher = new int[cipher.length()];
+        for (int i = 0; i < _cipher.length; i += 1) {
+            _cipher[i] = alpha.toInt(cipher.charAt(i));
+        }
+        _totalPairs = (long) _cipher.length * (_cipher.length - 1) / 2;
+        _best = new PriorityQueue<>(best, WORST_FIRST);
+    }
+
+    /** Return the number of states that search(ORDERS, ...) tests. */
+    long states(List<String[]> orders) {
+        long result = orders.size();
+        for (int k = 1; k < _numRotors; k += 1) {
+            result *= _size;
+        }
+        return result;
+    }
+
+    /** Return the number of states tested so far, including those swept
+     *  before the checkpoint a search resumed from. */
+    long tested() {
+        return _tested.get();
+    }
+
+    /** Return the number of states that the last search skipped because
+     *  its checkpoint showed them already tested. */
+    long resumed() {
+        return _resumed;
+    }
+
+    /** Return the best candidates found so far, best first. */
+    synchronized List<Candidate> best() {
+        ArrayList<Candidate> result = new ArrayList<>(_best);
+        Collections.sort(result, Collections.reverseOrder(WORST_FIRST));
+        return result;
+    }
+
+    /** Sweep BATCH units between opportunities to save a checkpoint, and
+     *  save one after a batch that ends INTERVAL nanoseconds or more
+     *  after the last save.  The defaults are BATCH_UNITS and
+     *  CHECKPOINT_INTERVAL. */
+    void setBatches(int batch, long interval) {
+        if (batch < 1) {
+            throw error("a batch needs at least one unit");
+        }
+        _batchUnits = batch;
+        _checkpointInterval = interval;
+    }
+
+    /** Decrypt my ciphertext at every setting of the rotors in each of
+     *  ORDERS, dividing the work among the threads of POOL, and keep the
+     *  best candidates.  If CHECKPOINT is not null, resume from the
+     *  checkpoint file it names if there is one, and save a checkpoint to
+     *  it after each batch of units that ends the checkpoint interval or
+     *  more after the last save, and at the end.  If the calling thread
+     *  is interrupted, stop after the current batch, saving a checkpoint
+     *  if CHECKPOINT is not null, and leave the thread interrupted. */
+    void search(List<String[]> orders, ForkJoinPool pool, Path checkpoint) {
+        for (String[] order : orders) {
+            _catalog.checkOrder(order, _numRotors, _pawls);
+        }
+        if (orders.isEmpty()) {
+            return;
+        }
+        long units = states(orders) / _size;
+        long perOrder = units / orders.size();
+        long next = 0;
+        if (checkpoint != null && Files.exists(checkpoint)) {
+            next = readCheckpoint(checkpoint, orders, units);
+        }
+        _resumed = next * _size;
+        _tested.set(_resumed);
+        long saved = System.nanoTime();
+        while (next < units) {
+            long hi = Math.min(units, next + _batchUnits);
+            pool.invoke(new SweepChunk(orders, perOrder, next, hi));
+            next = hi;
+            boolean stopping = Thread.currentThread().isInterrupted();
+            if (checkpoint != null
+                && (next == units || stopping
+                    || System.nanoTime() - saved >= _checkpointInterval)) {
+                writeCheckpoint(checkpoint, orders, next, units);
+                saved = System.nanoTime();
+            }
+            if (stopping) {
+                return;
+            }
+        }
+    }
+
+    /** Number of units swept between opportunities to save a
+     *  checkpoint. */
+    static final int BATCH_UNITS = 1 << 12;
+
+    /** Least time between checkpoints, in nanoseconds. */
+    static final long CHECKPOINT_INTERVAL = 10L * 1000 * 1000 * 1000;
+
+    /** Largest number of units swept by one task. */
+    static final int UNITS_PER_TASK = 16;
+
+    /** First line of a checkpoint file. */
+    private static final String CHECKPOINT_HEADER =
+        "enigma coincidence checkpoint 1";
+
+    /** Add CANDIDATE to HEAP, which holds at most _keep candidates, if it
+     *  is among the best. */
+    private void offer(PriorityQueue<Candidate> heap, Candidate candidate) {
+        if (heap.size() < _keep) {
+            heap.add(candidate);
+        } else if (WORST_FIRST.compare(candidate, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(candidate);
+        }
+    }
+
+    /** Return the candidate for state INDEX of a search of ORDERS, whose
+     *  decryption has PAIRS pairs of equal letters.  State INDEX is order
+     *  INDEX / _size ** (_numRotors - 1) of ORDERS, with the settings of
+     *  its slots from 1 on being the digits of the rest of INDEX. */
+    private Candidate candidate(List<String[]> orders, long index,
+                                long pairs) {
+        Alphabet alpha = _catalog.alphabet();
+        char[] settings = new char[_numRotors - 1];
+        long rest = index;
+        for (int k = settings.length - 1; k >= 0; k -= 1) {
+            settings[k] = alpha.toChar((int) (rest % _size));
+            rest /= _size;
+        }
+        return new Candidate(orders.get((int) rest), new String(settings),
+                             index, pairs, _totalPairs);
+    }
+
+    /** Add the candidates in HEAP to my best candidates. */
+    private synchronized void merge(PriorityQueue<Candidate> heap) {
+        for (Candidate candidate : heap) {
+            offer(_best, candidate);
+        }
+    }
+
+    /** A task sweeping a range of units. */
+    private class SweepChunk extends RecursiveAction {
+
+        /** A task that sweeps units LO .. HI-1 of ORDERS, where there are
+         *  PERORDER units in each order. */
+        SweepChunk(List<String[]> orders, long perOrder, long lo, long hi) {
+            _orders = orders;
+            _perOrder = perOrder;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= UNITS_PER_TASK) {
+                new Sweeper(_orders, _perOrder).sweep(_lo, _hi);
+            } else {
+                long mid = (_lo + _hi) >>> 1;
+                invokeAll(new SweepChunk(_orders, _perOrder, _lo, mid),
+                          new SweepChunk(_orders, _perOrder, mid, _hi));
+            }
+        }
+
+        /** Rotor orders being searched. */
+        private final List<String[]> _orders;
+        /** Number of units in each order. */
+        private final long _perOrder;
+        /** Bounds of my units. */
+        private final long _lo, _hi;
+    }
+
+    /** The state of one task's sweep: its machine, its tables, and its
+     *  best candidates. */
+    private class Sweeper {
+
+        /** A sweeper over ORDERS, each of which has PERORDER units. */
+        Sweeper(List<String[]> orders, long perOrder) {
+            _orders = orders;
+            _perOrder = perOrder;
+            _fast = new int[_size][_size];
+            _settings = new int[_numRotors];
+            _state = new int[_numRotors];
+            _counts = new int[_size];
+            _heap = new PriorityQueue<>(_keep, WORST_FIRST);
+        }
+
+        /** Sweep units LO .. HI-1, adding the best candidates found to
+         *  my search's best.  Unit U is order U / _perOrder with slots 1
+         *  through _numRotors-2 set to the digits of U % _perOrder. */
+        void sweep(long lo, long hi) {
+            int last = _numRotors - 1;
+            int current = -1;
+            for (long u = lo; u < hi; u += 1) {
+                int order = (int) (u / _perOrder);
+                if (order != current) {
+                    current = order;
+                    _machine = new Machine(_catalog, _numRotors, _pawls);
+                    _machine.insertRotors(_orders.get(order));
+                }
+                long digits = u % _perOrder;
+                for (int k = last - 1; k > 0; k -= 1) {
+                    _settings[k] = (int) (digits % _size);
+                    digits /= _size;
+                }
+                for (int f = 0; f < _size; f += 1) {
+                    _settings[last] = f;
+                    _machine.rotorSubstitution(_settings, _fast[f]);
+                }
+                for (int f = 0; f < _size; f += 1) {
+                    _settings[last] = f;
+                    long pairs = score();
+                    long index = u * _size + f;
+                    Candidate worst = _heap.peek();
+                    if (_heap.size() < _keep || pairs > worst._pairs
+                        || pairs == worst._pairs && index < worst._index) {
+                        offer(_heap, candidate(_orders, index, pairs));
+                    }
+                }
+                _tested.addAndGet(_size);
+            }
+            merge(_heap);
+        }
+
+        /** Return the number of pairs of equal letters in the decryption
+         *  of the ciphertext starting from the state in _settings, which
+         *  is computed in one pass without allocating. */
+        private long score() {
+            int last = _numRotors - 1;
+            int[] state = _state;
+            int[] counts = _counts;
+            int[] cipher = _cipher;
+            System.arraycopy(_settings, 0, state, 0, _numRotors);
+            long pairs = 0;
+            for (int i = 0; i < cipher.length; i += 1) {
+                _machine.stepSettings(state);
+                int k;
+                for (k = 1; k < last && state[k] == _settings[k]; k += 1) {
+                    continue;
+                }
+                int c = k == last ? _fast[state[last]][cipher[i]]
+                    : _machine.convertRotors(cipher[i], state);
+                pairs += counts[c];
+                counts[c] += 1;
+            }
+            for (int c = 0; c < counts.length; c += 1) {
+                counts[c] = 0;
+            }
+            return pairs;
+        }
+
+        /** Rotor orders being searched. */
+        private final List<String[]> _orders;
+        /** Number of units in each order. */
+        private final long _perOrder;
+        /** Machine with the rotors of the unit being swept. */
+        private Machine _machine;
+        /** The substitution made by the rotors of _machine at each
+         *  setting of the fast rotor, the others being as in _settings. */
+        private final int[][] _fast;
+        /** The state being scored. */
+        private final int[] _settings;
+        /** The state at a position of the message. */
+        private final int[] _state;
+        /** Number of times each letter has appeared in a decryption. */
+        private final int[] _counts;
+        /** The best candidates I have found. */
+        private final PriorityQueue<Candidate> _heap;
+    }
+
+    /** Return a digest of everything on which the result of a search of
+     *  ORDERS depends, so that a checkpoint is used only by the search
+     *  that saved it. */
+    private String fingerprint(List<String[]> orders) {
+        StringBuilder key = new StringBuilder();
+        Alphabet alpha = _catalog.alphabet();
+        for (int c = 0; c < _size; c += 1) {
+            key.append(alpha.toChar(c));
+        }
+        key.append(' ').append(_numRotors).append(' ').append(_pawls)
+            .append(' ').append(_keep).append(' ').append(_cipherText);
+        for (String[] order : orders) {
+            key.append('\n').append(String.join(" ", order));
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder result = new StringBuilder();
+            for (byte b : digest.digest(key.toString()
+                                        .getBytes(StandardCharsets.UTF_8))) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("no SHA-256 digest available");
+        }
+    }
+
+    /** Save a checkpoint of a search of ORDERS, of UNITS units, that has
+     *  swept the first NEXT of them, to the file CHECKPOINT.  The file is
+     *  replaced whole, so that it is never left half written. */
+    private void writeCheckpoint(Path checkpoint, List<String[]> orders,
+                                 long next, long units) {
+        StringBuilder text = new StringBuilder();
+        text.append(CHECKPOINT_HEADER).append('\n');
+        text.append(fingerprint(orders)).append('\n');
+        text.append(next).append(' ').append(units).append('\n');
+        for (Candidate candidate : best()) {
+            text.append(candidate._index).append(' ')
+                .append(candidate._pairs).append('\n');
+        }
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName()
+                                              + ".tmp");
+        try {
+            Files.write(temp, text.toString()
+                        .getBytes(StandardCharsets.US_ASCII));
+            try {
+                Files.move(temp, checkpoint,
+                           StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException excp) {
+                Files.move(temp, checkpoint,
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s: %s", checkpoint,
+                        excp.getMessage());
+        }
+    }
+
+    /** Restore the best candidates saved in the file CHECKPOINT by a
+     *  search of ORDERS, of UNITS units, and return the number of units
+     *  it had swept. */
+    private long readCheckpoint(Path checkpoint, List<String[]> orders,
+                                long units) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(checkpoint, StandardCharsets.US_ASCII);
+        } catch (IOException excp) {
+            throw error("could not read checkpoint %s: %s", checkpoint,
+                        excp.getMessage());
+        }
+        if (lines.size() < 3 || !lines.get(0).equals(CHECKPOINT_HEADER)) {
+            throw error("%s is not a checkpoint", checkpoint);
+        }
+        if (!lines.get(1).equals(fingerprint(orders))) {
+            throw error("checkpoint %s is for a different search",
+                        checkpoint);
+        }
+        try {
+            String[] progress = lines.get(2).split(" ");
+            long next = Long.parseLong(progress[0]);
+            if (progress.length != 2 || Long.parseLong(progress[1]) != units
+                || next < 0 || next > units) {
+                throw error("bad checkpoint %s", checkpoint);
+            }
+            for (String line : lines.subList(3, lines.size())) {
+                String[] fields = line.split(" ");
+                long index = Long.parseLong(fields[0]);
+                long pairs = Long.parseLong(fields[1]);
+                if (fields.length != 2 || index < 0
+                    || index >= next * _size || pairs < 0
+                    || pairs > _totalPairs) {
+                    throw error("bad checkpoint %s", checkpoint);
+                }
+                offer(_best, candidate(orders, index, pairs));
+            }
+            return next;
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw error("bad checkpoint %s", checkpoint);
+        }
+    }
+
+    /** The rotors that may be used. */
+    private final RotorCatalog _catalog;
+    /** Number of slots and of pawls in the machines searched. */
+    private final int _numRotors, _pawls;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Number of candidates kept. */
+    private final int _keep;
+    /** The ciphertext. */
+    private final String _cipherText;
+    /** The ciphertext, as indices in the alphabet. */
+    private final int[] _cipher;
+    /** Number of pairs of letters in the ciphertext. */
+    private final long _totalPairs;
+    /** My best candidates so far, worst first. */
+    private final PriorityQueue<Candidate> _best;
+    /** Number of states tested so far. */
+    private final AtomicLong _tested = new AtomicLong();
+    /** Number of states skipped on resuming from a checkpoint. */
+    private volatile long _resumed;
+    /** Number of units swept between opportunities to save a
+     *  checkpoint. */
+    private int _batchUnits = BATCH_UNITS;
+    /** Least time between checkpoints, in nanoseconds. */
+    private long _checkpointInterval = CHECKPOINT_INTERVAL;
+}
@@ -0,0 +1,148 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the CoincidenceSearch class.
+ *  @author
+ */
+public class CoincidenceSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(120);
+
+    /* ***** TESTS ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    private static final RotorCatalog CATALOG;
+
+    static {
+        CATALOG = new RotorCatalog(AZ, TestUtils.navalRotors(
+            AZ, "B", "I", "III", "IV", "VI"));
+    }
+
+    private static final String[] ORDER = { "B", "IV", "VI", "III" };
+
+    private static final String MESSAGE =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOODMADEOFSLIDING"
+        + "FOLDINGROSEWOODNEATLYPUTITALLTOGETHERINITSCASEITLAYCOMPACTLY"
+        + "FOLDEDINTONEARLYNOTHINGBUTHEOPENEDOUTTHEHINGESPUSHEDANDPULLED"
+        + "THEJOINTSANDHINGESTILLITLOOKEDALLSQUARESANDOBLONGSLIKEA"
+        + "COMPLICATEDFIGUREINTHESECONDBOOKOFEUCLID";
+
+    /** Return MESSAGE as encrypted by ORDER at SETTING, with the pairs
+     *  PLUGS on the plugboard. */
+    private String encrypt(String setting, String plugs) {
+        Machine mach = new Machine(CATALOG, 4, 3);
+        mach.insertRotors(ORDER);
+        mach.setRotors(setting);
+        mach.setPlugboard(new Permutation(plugs, AZ));
+        return mach.convert(MESSAGE);
+    }
+
+    @Test
+    public void testFindsRotors() {
+        String cipher = encrypt("QEV", "(AZ) (KX)");
+        CoincidenceSearch search =
+            new CoincidenceSearch(CATALOG, 4, 3, cipher, 5);
+        List<String[]> orders = CATALOG.orders(4, 3);
+        assertEquals(24, orders.size());
+        search.search(orders, ForkJoinPool.commonPool(), null);
+        assertEquals(search.states(orders), search.tested());
+        List<CoincidenceSearch.Candidate> best = search.best();
+        assertEquals(5, best.size());
+        assertArrayEquals(ORDER, best.get(0).order());
+        assertEquals("QEV", best.get(0).settings());
+        assertEquals("B IV VI III QEV", best.get(0).toString());
+        for (int i = 1; i < best.size(); i += 1) {
+            assertTrue(best.get(i - 1).score() >= best.get(i).score());
+        }
+        assertTrue(best.get(0).score() > 0.055);
+    }
+
+    @Test
+    public void testCheckpoint() throws IOException {
+        String cipher = encrypt("AAA", "");
+        List<String[]> orders = new ArrayList<>();
+        orders.add(ORDER);
+        orders.add(new String[] { "B", "I", "VI", "III" });
+        Path checkpoint = Files.createTempFile("enigma", ".ckpt");
+        Files.delete(checkpoint);
+        try {
+            CoincidenceSearch search =
+                new CoincidenceSearch(CATALOG, 4, 3, cipher, 3);
+            search.search(orders, ForkJoinPool.commonPool(), checkpoint);
+            assertTrue(Files.exists(checkpoint));
+
+            CoincidenceSearch resumed =
+                new CoincidenceSearch(CATALOG, 4, 3, cipher, 3);
+            resumed.search(orders, ForkJoinPool.commonPool(), checkpoint);
+            assertEquals(search.tested(), resumed.tested());
+            assertEquals(names(search.best()), names(resumed.best()));
+            assertEquals("B IV VI III AAA", resumed.best().get(0).toString());
+
+            CoincidenceSearch whole =
+                new CoincidenceSearch(CATALOG, 4, 3, cipher, 3);
+            whole.search(orders, ForkJoinPool.commonPool(), null);
+            assertEquals(names(whole.best()), names(resumed.best()));
+
+            Files.delete(checkpoint);
+            CoincidenceSearch first =
+                new CoincidenceSearch(CATALOG, 4, 3, cipher, 3);
+            first.setBatches(100, 0);
+            Thread.currentThread().interrupt();
+            try {
+                first.search(orders, ForkJoinPool.commonPool(), checkpoint);
+            } finally {
+                assertTrue(Thread.interrupted());
+            }
+            assertEquals(100 * 26, first.tested());
+            assertTrue(Files.exists(checkpoint));
+            CoincidenceSearch rest =
+                new CoincidenceSearch(CATALOG, 4, 3, cipher, 3);
+            rest.setBatches(100, 0);
+            rest.search(orders, ForkJoinPool.commonPool(), checkpoint);
+            assertEquals(100 * 26, rest.resumed());
+            assertEquals(whole.tested(), rest.tested());
+            assertEquals(names(whole.best()), names(rest.best()));
+
+            try {
+                new CoincidenceSearch(CATALOG, 4, 3, cipher, 4)
+                    .search(orders, ForkJoinPool.commonPool(), checkpoint);
+                fail("checkpoint of another search was used");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        } finally {
+            Files.deleteIfExists(checkpoint);
+        }
+    }
+
+    /** Return the settings lines of CANDIDATES. */
+    private static List<String> names(
+        List<CoincidenceSearch.Candidate> candidates) {
+        String[] result = new String[candidates.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = candidates.get(i).toString();
+        }
+        return Arrays.asList(result);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testMisplacedRotor() {
+        new CoincidenceSearch(CATALOG, 4, 3, "ABCDEF", 1)
+            .search(Arrays.asList(new String[][] {{ "I", "B", "IV", "VI" }}),
+                    ForkJoinPool.commonPool(), null);
+    }
+}
@@ -11,13 +11,5 @@ class FixedRotor extends Rotor {
      * is given by PERM. */
     FixedRotor(String name, Permutation perm) {
         super(name, perm);
-        _setting = 0;
-        _name = name;
-        _perm = perm;
     }
-
-    // FIXME ?
-    private int _setting;
-    private Permutation _perm;
-    private String _name;
 }
@@ -0,0 +1,368 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Searches for the key of a message.  Prints each candidate key to the
+ *  standard output as it is found, and the progress and throughput of the
+ *  search to the standard error.
+ *  @author
+ */
+public final class KeySearch {
+
+    /** Search for a key.  Usage:
+     *
+     *     java enigma.KeySearch --crib=TEXT [--offset=N] [--order=ROTORS]
+     *                           [--threads=N] CONFIG [CIPHERTEXT]
+     *     java enigma.KeySearch --ioc [--best=K] [--checkpoint=FILE]
+     *                           [--order=ROTORS] [--threads=N]
+     *                           CONFIG [CIPHERTEXT]
+     *     java enigma.KeySearch --plugboard --order=ROTORS --setting=SET
+     *                           --quadgrams=FILE [--restarts=N] [--seed=N]
+     *                           [--pairs=N] [--threads=N]
+     *                           CONFIG [CIPHERTEXT]
+     *
+     *  CONFIG is a configuration file or snapshot, and CIPHERTEXT a file
+     *  holding the message (by default, the standard input), in which
+     *  white space is ignored.  With --crib, runs a Bombe for the
+     *  plaintext TEXT lying under the ciphertext starting at offset N
+     *  (by default, 0), printing the stops it finds: each is the rotors,
+     *  their settings at the start of the crib, and the plugboard pairs
+     *  found.  With --ioc, runs a CoincidenceSearch, printing the K (by
+     *  default, 10) best rotors and settings at the start of the message,
+     *  with their scores; with --checkpoint, the search saves its progress
+     *  to FILE as it goes, and resumes from FILE if it exists.  With
+     *  --plugboard, runs a PlugboardClimb for the rotors ROTORS at the
+     *  settings SET, scoring with the quadgram counts in FILE, making
+     *  --restarts climbs (by default, 100) seeded from --seed, with at
+     *  most --pairs pairs (by default, 10), and prints the best plugboard
+     *  found and its decryption.  ROTORS, names separated by commas,
+     *  limits a search to one rotor order; otherwise, all orders are
+     *  tried.  The search uses N threads, by default one for each
+     *  processor. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--crib=(.+) --offset=(\\d+) --ioc "
+                                + "--best=(\\d+) --checkpoint=(.+) "
+                                + "--plugboard --setting=(.+) "
+                                + "--quadgrams=(.+) --restarts=(\\d+) "
+                                + "--seed=(\\d+) --pairs=(\\d+) "
+                                + "--order=(.+) --threads=(\\d+) "
+                                + "--=(.*){1,2}", args);
+            int modes = 0;
+            for (String mode : new String[] { "--crib", "--ioc",
+                                              "--plugboard" }) {
+                modes += options.contains(mode) ? 1 : 0;
+            }
+            if (!options.ok() || modes != 1
+                || options.contains("--plugboard")
+                   && !(options.contains("--order")
+                        && options.contains("--setting")
+                        && options.contains("--quadgrams"))) {
+                throw error("Usage: java enigma.KeySearch "
+                            + "(--crib=TEXT [--offset=N] | --ioc [--best=K] "
+                            + "[--checkpoint=FILE] | --plugboard "
+                            + "--setting=SET --quadgrams=FILE "
+                            + "[--restarts=N] [--seed=N] [--pairs=N]) "
+                            + "[--order=ROTORS] [--threads=N] "
+                            + "CONFIG [CIPHERTEXT]");
+            }
+            List<String> files = options.get("--");
+            Machine machine = Main.readConfig(files.get(0));
+            String cipher =
+                readCiphertext(files.size() > 1 ? files.get(1) : null);
+            int threads = options.contains("--threads")
+                ? Integer.parseInt(options.getFirst("--threads"))
+                : Runtime.getRuntime().availableProcessors();
+            KeySearch search =
+                new KeySearch(machine, cipher, options.getFirst("--order"),
+                              new ForkJoinPool(threads));
+            if (options.contains("--crib")) {
+                search.bombe(options.getFirst("--crib"),
+                             options.contains("--offset")
+                             ? Integer.parseInt(options.getFirst("--offset"))
+                             : 0);
+            } else if (options.contains("--ioc")) {
+                int best = options.contains("--best")
+                    ? Integer.parseInt(options.getFirst("--best")) : 10;
+                search.coincidence(best, options.getFirst("--checkpoint"));
+            } else {
+                search.plugboard(options.getFirst("--setting"),
+                                 options.getFirst("--quadgrams"),
+                                 intOption(options, "--restarts", 100),
+                                 intOption(options, "--seed", 0),
+                                 intOption(options, "--pairs", 10));
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the value of the numeric option NAME in OPTIONS, or DFLT if
+     *  it is absent. */
+    private static int intOption(CommandArgs options, String name,
+                                 int dflt) {
+        if (!options.contains(name)) {
+            return dflt;
+        }
+        try {
+            return Integer.parseInt(options.getFirst(name));
+        } catch (NumberFormatException excp) {
+            throw error("bad value for %s", name);
+        }
+    }
+
+    /** Return the contents of the file named NAME, or of the standard
+     *  input if NAME is null, without white space. */
+    private static String readCiphertext(String name) {
+        byte[] bytes;
+        try {
+            if (name == null) {
+                bytes = System.in.readAllBytes();
+            } else {
+                bytes = Files.readAllBytes(Paths.get(name));
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s",
+                        name == null ? "standard input" : name);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII)
+            .replaceAll("\\s", "");
+    }
+
+    /** A search for the key of CIPHER among the settings of MACHINE,
+     *  whose rotors need not be inserted, using the threads of POOL.  The
+     *  search tries the rotors named in ORDER, separated by commas, or
+     *  all orders of MACHINE's rotors if ORDER is null. */
+    KeySearch(Machine machine, String cipher, String order,
+              ForkJoinPool pool) {
+        _machine = machine;
+        _cipher = cipher;
+        _pool = pool;
+        if (order == null) {
+            _orders = machine.catalog().orders(machine.numRotors(),
+                                               machine.numPawls());
+        } else {
+            _orders = Collections.singletonList(order.split(","));
+        }
+        for (int i = 0; i < cipher.length(); i += 1) {
+            if (!machine.alphabet().contains(cipher.charAt(i))) {
+                throw error("ciphertext character %c not in alphabet",
+                            cipher.charAt(i));
+            }
+        }
+    }
+
+    /** Run a Bombe for CRIB lying under my ciphertext at OFFSET. */
+    void bombe(String crib, int offset) {
+        if (offset + crib.length() > _cipher.length()) {
+            throw error("crib runs past the end of the ciphertext");
+        }
+        Bombe bombe =
+            new Bombe(_machine.catalog(), _machine.numRotors(),
+                      _machine.numPawls(), crib,
+                      _cipher.substring(offset, offset + crib.length()));
+        System.err.printf("menu: test letter %c, %d edges, %d loops; "
+                          + "%d orders, %d states%n",
+                          _machine.alphabet().toChar(bombe.testLetter()),
+                          bombe.menuEdges(), bombe.menuLoops(),
+                          _orders.size(), bombe.states(_orders));
+        Progress progress = new Progress(bombe.states(_orders), "states") {
+                @Override
+                long tested() {
+                    return bombe.tested();
+                }
+
+                @Override
+                String found() {
+                    return bombe.stops() + " stops";
+                }
+            };
+        progress.start();
+        try {
+            bombe.search(_orders, _pool, new Bombe.StopListener() {
+                    @Override
+                    public void stop(Bombe.Stop stop) {
+                        System.out.printf("* %s%n", stop);
+                        System.out.flush();
+                    }
+                });
+        } finally {
+            progress.interrupt();
+        }
+        progress.report();
+    }
+
+    /** Run a CoincidenceSearch keeping the BEST best candidates, saving
+     *  its progress to the file named CHECKPOINT unless it is null. */
+    void coincidence(int best, String checkpoint) {
+        CoincidenceSearch search =
+            new CoincidenceSearch(_machine.catalog(), _machine.numRotors(),
+                                  _machine.numPawls(), _cipher, best);
+        System.err.printf("%d orders, %d states%n", _orders.size(),
+                          search.states(_orders));
+        Progress progress =
+            new Progress(search.states(_orders), "states") {
+                @Override
+                long tested() {
+                    return search.tested();
+                }
+
+                @Override
+                long skipped() {
+                    return search.resumed();
+                }
+
+                @Override
+                String found() {
+                    List<CoincidenceSearch.Candidate> found = search.best();
+                    return found.isEmpty() ? "no candidates"
+                        : String.format("best %.4f",
+                                        found.get(0).score());
+                }
+            };
+        progress.start();
+        try {
+            search.search(_orders, _pool,
+                          checkpoint == null ? null : Paths.get(checkpoint));
+        } finally {
+            progress.interrupt();
+        }
+        progress.report();
+        for (CoincidenceSearch.Candidate candidate : search.best()) {
+            System.out.printf("%.5f * %s%n", candidate.score(), candidate);
+        }
+    }
+
+    /** Run a PlugboardClimb for my one rotor order at SETTING, scoring
+     *  with the quadgram counts in the file QUADGRAMS, making RESTARTS
+     *  climbs seeded from SEED for plugboards of at most PAIRS pairs. */
+    void plugboard(String setting, String quadgrams, int restarts,
+                   long seed, int pairs) {
+        if (_orders.size() != 1) {
+            throw error("a plugboard search needs one rotor order");
+        }
+        String[] order = _orders.get(0);
+        _machine.catalog().checkOrder(order, _machine.numRotors(),
+                                      _machine.numPawls());
+        Machine machine = new Machine(_machine.catalog(),
+                                      _machine.numRotors(),
+                                      _machine.numPawls());
+        machine.insertRotors(order);
+        if (setting.length() != machine.numRotors() - 1) {
+            throw error("wrong number of settings");
+        }
+        machine.setRotors(setting);
+        PlugboardClimb climb =
+            new PlugboardClimb(machine, _cipher,
+                               Quadgrams.read(machine.alphabet(),
+                                              Paths.get(quadgrams)),
+                               pairs);
+        long start = System.nanoTime();
+        Progress progress = new Progress(restarts, "climbs") {
+                @Override
+                long tested() {
+                    return climb.restarts();
+                }
+
+                @Override
+                String found() {
+                    return climb.evaluations() + " evaluations";
+                }
+            };
+        progress.start();
+        PlugboardClimb.Result result;
+        try {
+            result = climb.climb(restarts, seed, _pool);
+        } finally {
+            progress.interrupt();
+        }
+        progress.report();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%.0f evaluations/s%n",
+                          climb.evaluations() / seconds);
+        System.out.printf("%.2f * %s %s %s%n%s%n", result.score(),
+                          String.join(" ", order), setting,
+                          result.plugboard(), result.plaintext());
+    }
+
+    /** Interval between progress reports, in milliseconds. */
+    static final long PROGRESS_INTERVAL = 1000;
+
+    /** A thread reporting the progress of a search to the standard
+     *  error every PROGRESS_INTERVAL milliseconds until interrupted. */
+    private abstract static class Progress extends Thread {
+
+        /** A reporter for a search of TOTAL items, called UNITS. */
+        Progress(long total, String units) {
+            _total = total;
+            _units = units;
+            _start = System.nanoTime();
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Thread.sleep(PROGRESS_INTERVAL);
+                    report();
+                }
+            } catch (InterruptedException excp) {
+                return;
+            }
+        }
+
+        /** Return the number of items the search has finished. */
+        abstract long tested();
+
+        /** Return a summary of what the search has found. */
+        abstract String found();
+
+        /** Return the number of items counted by tested() that were
+         *  finished before this search began. */
+        long skipped() {
+            return 0;
+        }
+
+        /** Print the items finished so far, the rate of finishing them,
+         *  and what has been found. */
+        void report() {
+            long tested = tested();
+            double seconds = (System.nanoTime() - _start) / 1e9;
+            System.err.printf("%d/%d %s (%.1f%%) in %.1f s, "
+                              + "%.0f %s/s, %s%n",
+                              tested, _total, _units, 100.0 * tested / _total,
+                              seconds, (tested - skipped()) / seconds,
+                              _units, found());
+        }
+
+        /** Name of the items counted. */
+        private final String _units;
+        /** Number of items to be finished. */
+        private final long _total;
+        /** Time at which the search started, in nanoseconds. */
+        private final long _start;
+    }
+
+    /** The machine whose settings are searched. */
+    private final Machine _machine;
+    /** The ciphertext, without white space. */
+    private final String _cipher;
+    /** Where the search runs. */
+    private final ForkJoinPool _pool;
+    /** The rotor orders searched. */
+    private final List<String[]> _orders;
+}
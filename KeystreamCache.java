@@ -0,0 +1,358 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded cache of keystreams.  Many messages are often sent under the
+ *  same key: the same rotors in the same slots at the same settings, with
+ *  the same plugboard.  A keystream holds, for each position from the
+ *  start of a message under its key, the table taking each input index
+ *  straight through the machine at that position.  Converting a later
+ *  message under the key is then one table lookup per character, with
+ *  no stepping and no rotor work.
+ *
+ *  The settings of the rotors, and so the tables, repeat: after a lead
+ *  of a few positions (a setting the double step never returns to), the
+ *  positions from LEAD on repeat with some period, 16900 for the naval
+ *  machine.  A keystream holds the tables of the lead and one period,
+ *  found by Machine.cycle when it is made, and looks up any later
+ *  position at its offset in the period, so that messages of any length
+ *  are converted from the same tables.  Tables are computed lazily, up
+ *  to the furthest position any message under the key has reached,
+ *  stepping a copy of the machine from there.  That costs as much rotor
+ *  work per position as converting every character of the alphabet,
+ *  which later messages under the key then save.  Tables are
+ *  stored as bytes, so keystreams are kept only for alphabets of at most
+ *  MAX_ALPHABET characters.
+ *
+ *  The cache is bounded by the bytes its keystreams occupy.  A key whose
+ *  lead and period need more than that has no keystream; the most
+ *  recently used MAX_UNFIT such keys are remembered, so that later
+ *  messages under one of them do not search for its cycle again.  When a
+ *  keystream grows past the bound, the least recently used others are
+ *  evicted.
+ *  @author
+ */
+class KeystreamCache {
+
+    /** Largest alphabet whose keystreams can be held. */
+    static final int MAX_ALPHABET = 256;
+
+    /** Largest number of keys too long for keystreams remembered. */
+    static final int MAX_UNFIT = 1 << 10;
+
+    /** An empty cache whose keystreams occupy at most CAPACITY bytes. */
+    KeystreamCache(long capacity) {
+        if (capacity <= 0) {
+            throw error("cache capacity must be positive");
+        }
+        _capacity = capacity;
+    }
+
+    /** Return the keystream for MACHINE's current key, creating an empty
+     *  one if there is none, or null if MACHINE's alphabet is too large
+     *  for keystreams or the lead and period of the key would not fit in
+     *  my capacity.  Counts as a hit or a miss accordingly, except that
+     *  a lookup of a key already found too long counts as unfit.  MACHINE
+     *  is unchanged. */
+    Keystream get(Machine machine) {
+        int size = machine.alphabet().size();
+        if (size > MAX_ALPHABET) {
+            return null;
+        }
+        String key = key(machine);
+        Keystream result = _keystreams.get(key);
+        if (result == null) {
+            if (_unfit.get(key) != null) {
+                _unfitLookups += 1;
+                return null;
+            }
+            _misses += 1;
+            long[] cycle =
+                machine.cycle(machine.settingsAfter(1),
+                              Math.min(_capacity, Integer.MAX_VALUE) / size);
+            if (cycle == null) {
+                _unfit.put(key, Boolean.TRUE);
+                return null;
+            }
+            result = new Keystream(this, machine, (int) cycle[0],
+                                   (int) cycle[1]);
+            _keystreams.put(key, result);
+            _bytes += result.bytes();
+            trim(result);
+        } else {
+            _hits += 1;
+        }
+        return result;
+    }
+
+    /** Return the key of MACHINE: the names of the rotors in its slots,
+     *  their settings, and the image of each index under its plugboard. */
+    private static String key(Machine machine) {
+        StringBuilder key = new StringBuilder();
+        for (int k = 0; k < machine.numRotors(); k += 1) {
+            key.append(machine.getRotor(k).name()).append(' ');
+        }
+        for (int k = 0; k < machine.numRotors(); k += 1) {
+            key.append((char) machine.setting(k));
+        }
+        Permutation plugboard = machine.plugboard();
+        for (int c = 0; c < machine.alphabet().size(); c += 1) {
+            key.append((char) plugboard.permute(c));
+        }
+        return key.toString();
+    }
+
+    /** Evict the least recently used keystreams other than KEEP until my
+     *  keystreams fit in my capacity, or only KEEP is left. */
+    private void trim(Keystream keep) {
+        Iterator<Keystream> eldest = _keystreams.values().iterator();
+        while (_bytes > _capacity && eldest.hasNext()) {
+            Keystream victim = eldest.next();
+            if (victim != keep) {
+                eldest.remove();
+                _bytes -= victim.bytes();
+                victim._evicted = true;
+                _evictions += 1;
+            }
+        }
+    }
+
+    /** Discard all keystreams.  The counters and the keys found too long
+     *  are not reset. */
+    void clear() {
+        for (Keystream keystream : _keystreams.values()) {
+            keystream._evicted = true;
+        }
+        _keystreams.clear();
+        _bytes = 0;
+    }
+
+    /** Return the maximum number of bytes my keystreams occupy. */
+    long capacity() {
+        return _capacity;
+    }
+
+    /** Return the number of bytes my keystreams currently occupy. */
+    long bytes() {
+        return _bytes;
+    }
+
+    /** Return the number of keystreams I currently hold. */
+    int size() {
+        return _keystreams.size();
+    }
+
+    /** Return the number of lookups that found a keystream. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that found nothing. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Return the number of lookups of keys already found too long for
+     *  a keystream, which are counted neither as hits nor as misses. */
+    long unfit() {
+        return _unfitLookups;
+    }
+
+    /** Return the fraction of lookups that found a keystream, or 0 if
+     *  there have been none. */
+    double hitRate() {
+        long lookups = _hits + _misses;
+        return lookups == 0 ? 0 : (double) _hits / lookups;
+    }
+
+    /** Return the number of keystreams discarded to make room. */
+    long evictions() {
+        return _evictions;
+    }
+
+    /** Return the number of characters converted. */
+    long converted() {
+        return _converted;
+    }
+
+    /** Return the number of positions whose tables have been computed. */
+    long computed() {
+        return _computed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses, %d evictions "
+                             + "(%.1f%% hit rate); %d tables computed for "
+                             + "%d characters; %d lookups of keys too long",
+                             _hits, _misses, _evictions, 100 * hitRate(),
+                             _computed, _converted, _unfitLookups);
+    }
+
+    /** The tables for the messages under one key. */
+    static class Keystream {
+
+        /** An empty keystream in CACHE for the current key of MACHINE,
+         *  whose positions repeat with PERIOD from LEAD on. */
+        private Keystream(KeystreamCache cache, Machine machine, int lead,
+                          int period) {
+            _cache = cache;
+            _machine = machine.copy();
+            _alphabet = machine.alphabet();
+            _size = _alphabet.size();
+            _current = machine.settingsAfter(0);
+            int[] plugboard = new int[_size];
+            for (int c = 0; c < _size; c += 1) {
+                plugboard[c] = machine.plugboard().permute(c);
+            }
+            _plugboard = plugboard;
+            _rotorTable = new int[_size];
+            _lead = lead;
+            _period = period;
+            int initial = Math.min(INITIAL_POSITIONS, lead + period);
+            _tables = new byte[initial * _size];
+        }
+
+        /** Convert the LEN characters of IN starting at OFF, storing the
+         *  results in OUT starting at OUTOFF, as a machine set to my key
+         *  and then used to convert POSITION characters would.  IN and OUT
+         *  may be the same array at the same offset, but otherwise their
+         *  ranges must not overlap.  If any of the characters is not in
+         *  my alphabet, throws an exception before converting anything.
+         *  Returns false, converting nothing, if I have been evicted from
+         *  my cache. */
+        boolean convert(char[] in, int off, int len, char[] out, int outOff,
+                        long position) {
+            for (int i = off; i < off + len; i += 1) {
+                if (!_alphabet.contains(in[i])) {
+                    throw error("character %c is not in the alphabet",
+                                in[i]);
+                }
+            }
+            if (_evicted) {
+                return false;
+            }
+            long end = _lead + _period;
+            reach((int) Math.min(position + len, end));
+            Alphabet alpha = _alphabet;
+            byte[] tables = _tables;
+            int size = _size;
+            int base = (int) (position < end ? position
+                              : _lead + (position - _lead) % _period) * size;
+            int endBase = (int) end * size, leadBase = _lead * size;
+            for (int i = 0; i < len; i += 1) {
+                out[outOff + i] = alpha.toChar(
+                    tables[base + alpha.toInt(in[off + i])] & 0xff);
+                base += size;
+                if (base == endBase) {
+                    base = leadBase;
+                }
+            }
+            _cache._converted += len;
+            return true;
+        }
+
+        /** Return the number of positions whose tables I hold. */
+        int length() {
+            return _length;
+        }
+
+        /** Return the number of positions before those that repeat. */
+        int lead() {
+            return _lead;
+        }
+
+        /** Return the period with which my positions repeat. */
+        int period() {
+            return _period;
+        }
+
+        /** Return the number of bytes my tables occupy. */
+        long bytes() {
+            return _tables.length;
+        }
+
+        /** Make sure I hold the tables of the first END positions, where
+         *  END is at most _lead + _period, computing them and growing my
+         *  storage if need be. */
+        private void reach(int end) {
+            if (end <= _length) {
+                return;
+            }
+            int capacity = _tables.length / _size;
+            if (end > capacity) {
+                int grown = (int) Math.min(Math.max(end, 2L * capacity),
+                                           _lead + _period);
+                long before = bytes();
+                _tables = Arrays.copyOf(_tables, grown * _size);
+                _cache._bytes += bytes() - before;
+                _cache.trim(this);
+            }
+            int[] plugboard = _plugboard, rotorTable = _rotorTable;
+            for (; _length < end; _length += 1) {
+                _machine.stepSettings(_current);
+                _machine.rotorSubstitution(_current, rotorTable);
+                int base = _length * _size;
+                for (int c = 0; c < _size; c += 1) {
+                    _tables[base + c] =
+                        (byte) plugboard[rotorTable[plugboard[c]]];
+                }
+                _cache._computed += 1;
+            }
+        }
+
+        /** Number of positions my tables first have room for. */
+        private static final int INITIAL_POSITIONS = 1 << 10;
+
+        /** The cache I belong to. */
+        private final KeystreamCache _cache;
+        /** Copy of the machine whose key I hold, which steps _current and
+         *  computes tables. */
+        private final Machine _machine;
+        /** Alphabet of _machine, and its size. */
+        private final Alphabet _alphabet;
+        private final int _size;
+        /** Image of each index under the plugboard of _machine. */
+        private final int[] _plugboard;
+        /** Settings after the last position recorded. */
+        private final int[] _current;
+        /** Space for the substitution of the rotors at one position. */
+        private final int[] _rotorTable;
+        /** Number of positions before those that repeat, and the period
+         *  with which they do. */
+        private final int _lead, _period;
+        /** The result of converting index c at position p is
+         *  _tables[p * _size + c]. */
+        private byte[] _tables;
+        /** Number of positions whose tables are computed. */
+        private int _length;
+        /** True once my cache has discarded me. */
+        private boolean _evicted;
+    }
+
+    /** Maximum number of bytes my keystreams occupy. */
+    private final long _capacity;
+    /** Keystreams by key, in order of last use, oldest first. */
+    private final LinkedHashMap<String, Keystream> _keystreams =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** The keys found too long for a keystream, in order of last use,
+     *  oldest first, and at most MAX_UNFIT of them. */
+    private final LinkedHashMap<String, Boolean> _unfit =
+        new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_UNFIT;
+            }
+        };
+    /** Number of bytes my keystreams occupy. */
+    private long _bytes;
+    /** Lookup, eviction, and conversion counters. */
+    private long _hits, _misses, _unfitLookups, _evictions, _converted,
+        _computed;
+}
@@ -0,0 +1,163 @@
+package enigma;
+
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the KeystreamCache class.
+ *  @author
+ */
+public class KeystreamCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    /** Return the naval machine at SETTING with plugboard PLUGS. */
+    private static Machine machine(String setting, String plugs) {
+        Machine mach = new Machine(AZ, 5, 3, TestUtils.navalRotors(
+            AZ, "B", "Beta", "III", "IV", "I"));
+        mach.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        mach.setRotors(setting);
+        mach.setPlugboard(new Permutation(plugs, AZ));
+        return mach;
+    }
+
+    /** Return a machine with the rotors B IV I, the last two moving, at
+     *  SETTING, with no plugboard.  Its positions repeat every 676. */
+    private static Machine smallMachine(String setting) {
+        Machine mach = new Machine(AZ, 3, 2, TestUtils.navalRotors(
+            AZ, "B", "IV", "I"));
+        mach.insertRotors(new String[] { "B", "IV", "I" });
+        mach.setRotors(setting);
+        mach.setPlugboard(new Permutation("", AZ));
+        return mach;
+    }
+
+    /** Return LEN random letters from SEED. */
+    private static String randomText(long seed, int len) {
+        Random random = new Random(seed);
+        char[] text = new char[len];
+        for (int i = 0; i < len; i += 1) {
+            text[i] = (char) ('A' + random.nextInt(26));
+        }
+        return new String(text);
+    }
+
+    /** Return the conversion of MSG by KEYSTREAM, in pieces of at most
+     *  PIECE characters, starting at position 0. */
+    private static String convert(KeystreamCache.Keystream keystream,
+                                  String msg, int piece) {
+        char[] chars = msg.toCharArray();
+        for (int off = 0; off < chars.length; off += piece) {
+            int len = Math.min(piece, chars.length - off);
+            assertTrue(keystream.convert(chars, off, len, chars, off, off));
+        }
+        return new String(chars);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesMachine() {
+        KeystreamCache cache = new KeystreamCache(1 << 20);
+        String plugs = "(HQ) (EX) (IP) (TR) (BY)";
+        KeystreamCache.Keystream keystream =
+            cache.get(machine("AXLE", plugs));
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     convert(keystream, "FROMHISSHOULDERHIAWATHA", 5));
+        assertEquals(23, cache.computed());
+        assertEquals(23, cache.converted());
+
+        String msg = randomText(1, 40000);
+        assertEquals(machine("AXLE", plugs).convert(msg),
+                     convert(keystream, msg, 777));
+        assertEquals(26 * 25 * 26, keystream.period());
+        assertEquals(keystream.lead() + keystream.period(),
+                     keystream.length());
+        assertEquals(keystream.length() * 26, keystream.bytes());
+        String other = randomText(2, 50000);
+        assertEquals(machine("AXLE", plugs).convert(other),
+                     convert(cache.get(machine("AXLE", plugs)), other,
+                             4096));
+        assertEquals(keystream.length(), cache.computed());
+        assertEquals(90023, cache.converted());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(0.5, cache.hitRate(), 0);
+    }
+
+    @Test
+    public void testDoubleStepStart() {
+        KeystreamCache cache = new KeystreamCache(1 << 20);
+        KeystreamCache.Keystream keystream =
+            cache.get(machine("AXJE", ""));
+        assertEquals(26 * 25 * 26, keystream.period());
+        String msg = randomText(6, 40000);
+        char[] chars = msg.toCharArray();
+        assertTrue(keystream.convert(chars, 20000, 20000, chars, 20000,
+                                     20000));
+        assertTrue(keystream.convert(chars, 0, 20000, chars, 0, 0));
+        assertEquals(machine("AXJE", "").convert(msg), new String(chars));
+    }
+
+    @Test
+    public void testKeys() {
+        KeystreamCache cache = new KeystreamCache(1 << 20);
+        Machine mach = machine("AXLE", "(AB)");
+        KeystreamCache.Keystream keystream = cache.get(mach);
+        assertSame(keystream, cache.get(machine("AXLE", "(AB)")));
+        assertNotSame(keystream, cache.get(machine("AXLF", "(AB)")));
+        assertNotSame(keystream, cache.get(machine("AXLE", "(AC)")));
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.hits());
+        assertEquals(3, cache.misses());
+    }
+
+    @Test
+    public void testEviction() {
+        KeystreamCache cache = new KeystreamCache(30000);
+        KeystreamCache.Keystream first = cache.get(smallMachine("AA"));
+        assertEquals(676, first.period());
+        convert(first, randomText(3, 1000), 1000);
+        KeystreamCache.Keystream second = cache.get(smallMachine("BB"));
+        String msg = randomText(4, 1500);
+        assertEquals(smallMachine("BB").convert(msg),
+                     convert(second, msg, 1500));
+        assertTrue(cache.bytes() <= cache.capacity());
+        assertEquals(1, cache.evictions());
+        assertEquals(1, cache.size());
+        char[] chars = "HELLO".toCharArray();
+        assertFalse(first.convert(chars, 0, 5, chars, 0, 0));
+        assertEquals("HELLO", new String(chars));
+        assertSame(second, cache.get(smallMachine("BB")));
+    }
+
+    @Test
+    public void testTooLong() {
+        KeystreamCache cache = new KeystreamCache(60000);
+        assertNull(cache.get(machine("AXLE", "")));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+        assertEquals(1, cache.misses());
+        for (int k = 0; k < 3; k += 1) {
+            assertNull(cache.get(machine("AXLE", "")));
+        }
+        assertEquals(1, cache.misses());
+        assertEquals(3, cache.unfit());
+        assertEquals(0, cache.hits());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadCharacter() {
+        KeystreamCache cache = new KeystreamCache(1 << 20);
+        char[] chars = "AB1".toCharArray();
+        cache.get(machine("AXLE", "")).convert(chars, 0, 3, chars, 0, 0);
+    }
+}
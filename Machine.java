@@ -1,7 +1,14 @@
 package enigma;
 
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.util.HashMap;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static enigma.EnigmaException.*;
 
@@ -17,17 +24,51 @@ class Machine {
      */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
-        _alphabet = alpha;
+        this(new RotorCatalog(alpha, allRotors), numRotors, pawls);
+    }
+
+    /**
+     * A new Enigma machine using the rotors in CATALOG, with 1 < NUMROTORS
+     * rotor slots and 0 <= PAWLS < NUMROTORS pawls.  CATALOG may be shared
+     * with any number of other machines.
+     */
+    Machine(RotorCatalog catalog, int numRotors, int pawls) {
+        _catalog = catalog;
+        _alphabet = catalog.alphabet();
         _numRotors = numRotors;
         _pawls = pawls;
-        _allRotors = allRotors;
-        _rotors = _allRotors.toArray(new Rotor[_allRotors.size()]);
         _rotorSlots = new Rotor[_numRotors];
+        _odometer = new Odometer(_numRotors, _alphabet.size());
+    }
+
+    /**
+     * A machine with the same rotors, settings, and plugboard as OTHER,
+     * which thereafter converts independently of it.  The two share
+     * their rotors and plugboard, which neither modifies, but not any
+     * substitution cache or tracer.
+     */
+    private Machine(Machine other) {
+        _alphabet = other._alphabet;
+        _numRotors = other._numRotors;
+        _pawls = other._pawls;
+        _catalog = other._catalog;
+        _rotorSlots = other._rotorSlots.clone();
+        _odometer = new Odometer(other._odometer);
+        _plugboard = other._plugboard;
+        _plugTable = other._plugTable;
     }
 
+    /** Return a machine with the same rotors, settings, and plugboard as
+     *  me, which thereafter converts independently of me, as for
+     *  Machine(Machine). */
+    Machine copy() {
+        return new Machine(this);
+    }
+
+    /** Set all of my rotors to their 0 setting. */
     void setAllZero() {
-        for (int i = 0; i < _rotors.length; i += 1) {
-            _rotors[i].set(0);
+        for (int k = 0; k < numRotors(); k += 1) {
+            _odometer.set(k, 0);
         }
     }
 
@@ -54,24 +95,52 @@ class Machine {
         return _rotorSlots[k];
     }
 
+    /**
+     * Return the current setting of Rotor #K.  The machine keeps the
+     * settings of its rotors itself, so this need not agree with
+     * getRotor(K).setting().
+     */
+    int setting(int k) {
+        return _odometer.position(k);
+    }
+
     Alphabet alphabet() {
         return _alphabet;
     }
 
+    /** Return all the rotors available to me. */
+    Collection<Rotor> allRotors() {
+        return _catalog.rotors();
+    }
+
+    /** Return the catalog of rotors available to me. */
+    RotorCatalog catalog() {
+        return _catalog;
+    }
+
     /**
      * Set my rotor slots to the rotors named ROTORS from my set of
      * available rotors (ROTORS[0] names the reflector).
-     * Initially, all rotors are set at their 0 setting.
+     * Initially, all rotors are set at their 0 setting.  A slot that
+     * already holds the rotor named is only reset, and cached
+     * substitutions survive if no slot changes.
      */
     void insertRotors(String[] rotors) {
+        boolean changed = false;
         for (int i = 0; i < _rotorSlots.length; i += 1) {
-            for (int j = 0; j < _rotors.length; j += 1) {
-                if (_rotors[j].name().equals(rotors[i])) {
-                    _rotorSlots[i] = _rotors[j];
-                    break;
-                }
+            Rotor rotor = _catalog.get(rotors[i]);
+            if (rotor == null) {
+                continue;
+            } else if (rotor == _rotorSlots[i]) {
+                _odometer.set(i, 0);
+            } else {
+                _rotorSlots[i] = rotor;
+                _odometer.insert(i, rotor);
+                changed = true;
             }
-
+        }
+        if (changed && _substitutions != null) {
+            _substitutions.clear();
         }
     }
 
@@ -85,10 +154,29 @@ class Machine {
         int _num;
         for (int slot = 1; slot < numRotors(); slot += 1) {
             _num = _alphabet.toInt(_letterSetting[slot - 1]);
-            _rotorSlots[slot].set(_num);
+            _odometer.set(slot, _num);
         }
     }
 
+    /**
+     * Advance my rotors to where N more calls of convert would leave them,
+     * in time that does not depend on N for ordinary notch layouts, and
+     * that is bounded by the period of the settings otherwise.
+     */
+    void seek(long n) {
+        _odometer.seek(n);
+    }
+
+    /**
+     * Return the settings that Rotors #0 through #(numRotors()-1) will
+     * have after N more characters are converted, without changing mine.
+     */
+    int[] settingsAfter(long n) {
+        int[] result = new int[numRotors()];
+        _odometer.positionsAfter(n, result);
+        return result;
+    }
+
     /**
      * Return the current plugboard's permutation.
      */
@@ -100,7 +188,58 @@ class Machine {
      * Set the plugboard to PLUGBOARD.
      */
     void setPlugboard(Permutation plugboard) {
+        if (plugboard == _plugboard) {
+            return;
+        }
         _plugboard = plugboard;
+        _plugTable = plugboard == null
+            || plugboard.kind() == Permutation.IDENTITY
+            ? null : plugboard.table();
+        if (_substitutions != null) {
+            _substitutions.clear();
+        }
+    }
+
+    /**
+     * Set the plugboard to the permutation of my alphabet given by CYCLES,
+     * reusing the one I made for the same CYCLES if it is among the last
+     * PLUGBOARDS used.
+     */
+    void setPlugboard(String cycles) {
+        Permutation plugboard = _plugboards.get(cycles);
+        if (plugboard == null) {
+            plugboard = new Permutation(cycles, _alphabet);
+            _plugboards.put(cycles, plugboard);
+        }
+        setPlugboard(plugboard);
+    }
+
+    /**
+     * Return the cache of whole-machine substitutions I use, or null if
+     * I convert each character through the rotors individually.
+     */
+    SubstitutionCache substitutionCache() {
+        return _substitutions;
+    }
+
+    /**
+     * Convert characters through CACHE, which must be empty and is used by
+     * no other machine, composing the plugboard and rotors into a single
+     * table the first time each combination of rotor settings is seen.  A
+     * null CACHE turns this off.  The settings of my rotors must fit in a
+     * long when packed as digits in my alphabet.
+     */
+    void setSubstitutionCache(SubstitutionCache cache) {
+        if (cache != null) {
+            long states = 1;
+            for (int i = 1; i < numRotors(); i += 1) {
+                if (states > Long.MAX_VALUE / _alphabet.size()) {
+                    throw error("too many rotor settings to cache");
+                }
+                states *= _alphabet.size();
+            }
+        }
+        _substitutions = cache;
     }
 
     /**
@@ -110,139 +249,306 @@ class Machine {
      */
     int convert(int c) {
         advanceRotors();
-        if (Main.verbose()) {
-            System.err.printf("[");
-            for (int r = 1; r < numRotors(); r += 1) {
-                System.err.printf("%c",
-                        alphabet().toChar(getRotor(r).setting()));
-            }
-            System.err.printf("] %c -> ", alphabet().toChar(c));
+        Tracer tracer = _tracer;
+        if (_substitutions != null && tracer == Tracer.NONE) {
+            return substitution()[c];
         }
-        c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(c));
+        tracer.begin(this, c);
+        int[] plug = _plugTable;
+        if (plug != null) {
+            c = plug[c];
         }
-        c = applyRotors(c);
-        c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c%n", alphabet().toChar(c));
+        tracer.pass(c);
+        c = applyRotors(c, tracer);
+        if (plug != null) {
+            c = plug[c];
         }
+        tracer.end(c);
         return c;
     }
 
+    /** Report each step of subsequent conversions to TRACER. */
+    void setTracer(Tracer tracer) {
+        _tracer = tracer;
+    }
+
+    /** Return the tracer to which I report conversions. */
+    Tracer tracer() {
+        return _tracer;
+    }
+
     /**
      * Advance all rotors to their next position.
      */
     private void advanceRotors() {
-        Rotor _fastRotor = _rotorSlots[numRotors()-1];
-        boolean[] trackNotch = new boolean[numRotors()];
-        for (int i = numRotors() - 1; i > -1; i -= 1) {
-                if (_rotorSlots[i].atNotch()) {
-                    trackNotch[i] = true;}}
-        _fastRotor.advance();
-        _fastRotor._alreadyMoved = true;
-
-        for (int i = numRotors() - 1; i > -1; i -= 1) {
-            if (trackNotch[i] && !(_rotorSlots[i]._alreadyMoved)) {
-                _rotorSlots[i].advance();
-                _rotorSlots[i-1].advance();
-                _rotorSlots[i]._alreadyMoved = true;
-                _rotorSlots[i-1]._alreadyMoved = true;
-            }
-            else {
-                if (trackNotch[i] && (_rotorSlots[i]._alreadyMoved)){
-                    _rotorSlots[i-1].advance();
-                    _rotorSlots[i-1]._alreadyMoved = true;
-                }
-            }
-        }
-        for (int i = numRotors() - 1; i > -1; i -= 1) {
-            _rotorSlots[i]._alreadyMoved = false;
+        _odometer.step();
     }
 
-        /* for (int i = numRotors() - 1; i > -1; i -= 1) {
-            _rotorSlots[i].advance();
-            boolean[] trackNotch = new boolean[numRotors()];
-            for (int i = numRotors(); i > 0; i -= 1) {
-                if (_rotorSlots[i - 1].atNotch()) {
-                    trackNotch[i - 1] = true;
-                }
-            }
-            for (int i = numRotors() - 1; i > -1; i -= 1) {
-                if (_rotorSlots[i].rotates() && !(_rotorSlots[i].is_alreadyMoved())) {
-                    if (trackNotch[i]) {
-                        _rotorSlots[i].advance();
-                        _rotorSlots[i - 1].advance();
-                        if (_rotorSlots[i - 1].rotates()) {
-                            _rotorSlots[i - 1]._alreadyMoved = true;
-                        }
-                    } else {
-                        _rotorSlots[i].advance();
-                    }
-                } else {
-                    if (!_rotorSlots[i].rotates()) {
-                        _rotorSlots[i].advance();
-                    } else {
-                        if (trackNotch[i] && _rotorSlots[i]._alreadyMoved) {
-                            _rotorSlots[i - 1].advance();
-                            if (_rotorSlots[i - 1].rotates()) {
-                                _rotorSlots[i - 1]._alreadyMoved = true;
-                            }
-                        }
-                    }
-                }
-            }
-            for (int i = numRotors() - 1; i > -1; i -= 1) {
-                if (_rotorSlots[i].rotates()) {
-                    _rotorSlots[i]._alreadyMoved = false;
-                }
+    /** Return the table mapping each input index to its output at the
+     *  current rotor settings, taking it from _substitutions if possible
+     *  and composing and storing it otherwise. */
+    private int[] substitution() {
+        long key = 0;
+        for (int i = 1; i < numRotors(); i += 1) {
+            key = key * _alphabet.size() + _odometer.position(i);
+        }
+        int[] table = _substitutions.get(key);
+        if (table == null) {
+            table = _substitutions.put(key, _alphabet.size());
+            int[] plug = _plugTable;
+            for (int c = 0; c < table.length; c += 1) {
+                int d = applyRotors(plug == null ? c : plug[c], Tracer.NONE);
+                table[c] = plug == null ? d : plug[d];
             }
-        }*/
-
-}
-
+        }
+        return table;
+    }
 
     /** Return the result of applying the rotors to the character C (as an
-     *  index in the range 0..alphabet size - 1). */
-    private int applyRotors(int c) {
+     *  index in the range 0..alphabet size - 1), reporting the result of
+     *  each rotor to TRACER. */
+    private int applyRotors(int c, Tracer tracer) {
         int d = c;
         for (int i = numRotors()-1; i > -1; i -= 1) {
-            d = _rotorSlots[i].convertForward(d);
+            d = _rotorSlots[i].convertForward(d, _odometer.position(i));
+            tracer.pass(d);
         }
         for (int i = 1; i < _rotorSlots.length; i += 1) {
-            d = _rotorSlots[i].convertBackward(d);
+            d = _rotorSlots[i].convertBackward(d, _odometer.position(i));
+            tracer.pass(d);
         }
         return d;
     }
 
+    /** Store in RESULT, for each index C of my alphabet, the result of
+     *  passing C through my rotors alone when they are at SETTINGS (one
+     *  per slot, with SETTINGS[0] ignored): no plugboard and no stepping.
+     *  My own settings are unchanged. */
+    void rotorSubstitution(int[] settings, int[] result) {
+        for (int c = 0; c < result.length; c += 1) {
+            result[c] = convertRotors(c, settings);
+        }
+    }
+
+    /** Return the result of passing C (as an index in my alphabet)
+     *  through my rotors alone when they are at SETTINGS, as for
+     *  rotorSubstitution. */
+    int convertRotors(int c, int[] settings) {
+        int last = numRotors() - 1;
+        int d = c;
+        for (int i = last; i > 0; i -= 1) {
+            d = _rotorSlots[i].convertForward(d, settings[i]);
+        }
+        d = _rotorSlots[0].convertForward(d, 0);
+        for (int i = 1; i <= last; i += 1) {
+            d = _rotorSlots[i].convertBackward(d, settings[i]);
+        }
+        return d;
+    }
+
+    /** Advance SETTINGS, settings for my slots, by one keystroke as my
+     *  rotors would advance.  My own settings are unchanged. */
+    void stepSettings(int[] settings) {
+        _odometer.step(settings);
+    }
+
+    /** Return { LEAD, PERIOD } for SETTINGS, as returned by
+     *  settingsAfter(): the settings after P keystrokes from SETTINGS,
+     *  for any P at least LEAD, are those after P + PERIOD, and PERIOD is
+     *  the least such.  Returns null if LEAD + PERIOD would be LIMIT or
+     *  more.  SETTINGS and my own settings are unchanged. */
+    long[] cycle(int[] settings, long limit) {
+        return _odometer.cycle(settings, limit);
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
         char[] chars = msg.toCharArray();
-        String output = "";
-        char a;
-        int b;
-        int translate;
+        convert(chars, 0, chars.length, chars, 0);
+        return new String(chars);
+    }
 
-        for (int i = 0; i < chars.length; i += 1) {
-            a = chars[i];
-            b = _alphabet.toInt(a);
-            translate = convert(b);
-            output += _alphabet.toChar(translate);
+    /** Convert the LEN characters of IN starting at OFF, storing the
+     *  results in OUT starting at OUTOFF and updating the state of the
+     *  rotors accordingly.  IN and OUT may be the same array at the
+     *  same offset, but otherwise their ranges must not overlap.  If any
+     *  of the characters is not in my alphabet, or OUT has no room for
+     *  the results, throws an exception before converting anything. */
+    void convert(char[] in, int off, int len, char[] out, int outOff) {
+        check(in, off, len);
+        if (outOff < 0 || len > out.length - outOff) {
+            throw new IndexOutOfBoundsException("no room for output");
         }
+        convertChecked(in, off, len, out, outOff);
+    }
 
-        return output;
+    /** Convert the characters remaining in IN, putting the results into
+     *  OUT, as for convert(char[], int, int, char[], int).  OUT must be
+     *  writable and have room for all of them, or an exception is thrown
+     *  before anything is converted.  Both buffers' positions advance past
+     *  the characters read and written. */
+    void convert(CharBuffer in, CharBuffer out) {
+        int len = in.remaining();
+        if (out.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        if (out.remaining() < len) {
+            throw new BufferOverflowException();
+        }
+        if (in.hasArray() && out.hasArray()) {
+            convert(in.array(), in.arrayOffset() + in.position(), len,
+                    out.array(), out.arrayOffset() + out.position());
+        } else {
+            int start = in.position(), outStart = out.position();
+            for (int i = 0; i < len; i += 1) {
+                char c = in.get(start + i);
+                if (!_alphabet.contains(c)) {
+                    throw error("character %c is not in the alphabet", c);
+                }
+            }
+            for (int i = 0; i < len; i += 1) {
+                out.put(outStart + i, _alphabet.toChar(
+                    convert(_alphabet.toInt(in.get(start + i)))));
+            }
+        }
+        in.position(in.position() + len);
+        out.position(out.position() + len);
+    }
+
+    /** Returns the result of converting MSG into a new buffer, as for
+     *  convert(CharBuffer, CharBuffer).  The position of MSG advances to
+     *  its limit. */
+    CharBuffer convert(CharBuffer msg) {
+        CharBuffer result = CharBuffer.allocate(msg.remaining());
+        convert(msg, result);
+        result.flip();
+        return result;
+    }
+
+    /** Throw an exception if any of the LEN characters of IN starting at
+     *  OFF is not in my alphabet. */
+    private void check(char[] in, int off, int len) {
+        for (int i = off; i < off + len; i += 1) {
+            if (!_alphabet.contains(in[i])) {
+                throw error("character %c is not in the alphabet", in[i]);
+            }
+        }
+    }
+
+    /** Convert as for convert(IN, OFF, LEN, OUT, OUTOFF), where all the
+     *  characters are known to be in my alphabet. */
+    private void convertChecked(char[] in, int off, int len,
+                                char[] out, int outOff) {
+        Alphabet alpha = _alphabet;
+        for (int i = 0; i < len; i += 1) {
+            out[outOff + i] =
+                alpha.toChar(convert(alpha.toInt(in[off + i])));
+        }
+    }
+
+    /** Returns the encoding/decoding of MSG, exactly as convert(MSG)
+     *  would, but converting pieces of it simultaneously on POOL as for
+     *  convertParallel(char[], int, int, ForkJoinPool). */
+    String convertParallel(String msg, ForkJoinPool pool) {
+        char[] chars = msg.toCharArray();
+        convertParallel(chars, 0, chars.length, pool);
+        return new String(chars);
+    }
+
+    /** Convert the LEN characters of CHARS starting at OFF in place,
+     *  exactly as convert(CHARS, OFF, LEN, CHARS, OFF) would, but
+     *  converting pieces of at most PARALLEL_CHUNK characters
+     *  simultaneously on POOL.  Each piece is converted by its own copy of
+     *  this machine, advanced with seek() to the offset of the piece.
+     *  While I have a tracer, the characters are converted in order
+     *  instead, so that the trace reads as it would for convert. */
+    void convertParallel(char[] chars, int off, int len, ForkJoinPool pool) {
+        if (_tracer != Tracer.NONE) {
+            convert(chars, off, len, chars, off);
+            return;
+        }
+        check(chars, off, len);
+        pool.invoke(new ConvertChunk(this, chars, off, off, off + len));
+        seek(len);
+    }
+
+    /** Largest number of characters converted by one task in
+     *  convertParallel. */
+    static final int PARALLEL_CHUNK = 1 << 16;
+
+    /** Number of recently used plugboards kept by setPlugboard(String). */
+    static final int PLUGBOARDS = 64;
+
+    /** A task converting part of a message for convertParallel. */
+    private static class ConvertChunk extends RecursiveAction {
+
+        /** A task that converts CHARS[LO .. HI-1] in place, where CHARS
+         *  holds, from START on, a message, known to be in the alphabet,
+         *  that MACHINE would start converting at CHARS[START]. */
+        ConvertChunk(Machine machine, char[] chars, int start,
+                     int lo, int hi) {
+            _machine = machine;
+            _chars = chars;
+            _start = start;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= PARALLEL_CHUNK) {
+                Machine cursor = new Machine(_machine);
+                cursor.seek(_lo - _start);
+                cursor.convertChecked(_chars, _lo, _hi - _lo, _chars, _lo);
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new ConvertChunk(_machine, _chars, _start,
+                                           _lo, mid),
+                          new ConvertChunk(_machine, _chars, _start,
+                                           mid, _hi));
+            }
+        }
+
+        /** Machine whose settings apply at _chars[_start]. */
+        private final Machine _machine;
+        /** Message being converted, from _start on. */
+        private final char[] _chars;
+        /** Index of the start of the message in _chars. */
+        private final int _start;
+        /** Bounds of my part of the message. */
+        private final int _lo, _hi;
     }
 
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
     private final int _numRotors;
     private final int _pawls;
-    private final Collection<Rotor> _allRotors;
-    public final Rotor[] _rotors;
+    /** The rotors available to me, shared with other machines. */
+    private final RotorCatalog _catalog;
+    /** The rotor in each slot, taken from _catalog. */
     private Rotor[] _rotorSlots;
+    /** The settings of the rotors in _rotorSlots and their stepping. */
+    private final Odometer _odometer;
     private char[] _letterSetting;
     private Permutation _plugboard;
+    /** The table of _plugboard, or null if it is the identity, so that
+     *  conversion skips it.  Chosen once, when the plugboard is set. */
+    private int[] _plugTable;
+    /** Plugboards made by setPlugboard(String), by their cycles, in order
+     *  of last use, holding at most PLUGBOARDS.  Not shared by copies. */
+    private final LinkedHashMap<String, Permutation> _plugboards =
+        new LinkedHashMap<String, Permutation>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Permutation> eldest) {
+                return size() > PLUGBOARDS;
+            }
+        };
+    /** Composed substitutions by rotor settings, or null if not caching. */
+    private SubstitutionCache _substitutions;
+    /** Receives each step of each conversion. */
+    private Tracer _tracer = Tracer.NONE;
 
     // FIXME: ADDITIONAL FIELDS HERE, IF NEEDED.
 }
@@ -1,6 +1,14 @@
 package enigma;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
@@ -22,20 +30,14 @@ public class MachineTest {
     private static final HashMap<String, Rotor> ROTORS = new HashMap<>();
 
     static {
-        HashMap<String, String> nav = TestUtils.NAVALA;
-        ROTORS.put("B", new Reflector("B", new Permutation(nav.get("B"), AZ)));
-        ROTORS.put("Beta",
-                new FixedRotor("Beta",
-                        new Permutation(nav.get("Beta"), AZ)));
-        ROTORS.put("III",
-                new MovingRotor("III",
-                        new Permutation(nav.get("III"), AZ), "V"));
-        ROTORS.put("IV",
-                new MovingRotor("IV", new Permutation(nav.get("IV"), AZ),
-                        "J"));
-        ROTORS.put("I",
-                new MovingRotor("I", new Permutation(nav.get("I"), AZ),
-                        "Q"));
+        for (Rotor rotor : TestUtils.navalRotors(
+                 AZ, "B", "Beta", "III", "IV", "I", "VI", "VIII")) {
+            ROTORS.put(rotor.name(), rotor);
+        }
+        ROTORS.put("RUNS",
+                new MovingRotor("RUNS",
+                        new Permutation(TestUtils.NAVALA.get("II"), AZ),
+                        "ABCMN"));
     }
 
     private static final String[] ROTORS1 = { "B", "Beta", "III", "IV", "I" };
@@ -84,4 +86,310 @@ public class MachineTest {
         assertEquals("QVPQSOKOILPUBKJZPISFXDW",
                 mach.convert("FROMHISSHOULDERHIAWATHA"));
     }
+
+    @Test
+    public void testSubstitutionCache() {
+        Machine mach = mach1();
+        SubstitutionCache cache = new SubstitutionCache(10);
+        mach.setSubstitutionCache(cache);
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                mach.convert("FROMHISSHOULDERHIAWATHA"));
+        assertEquals(23, cache.misses());
+        assertEquals(13, cache.evictions());
+        mach.setRotors("AXLQ");
+        String first = mach.convert("BB");
+        mach.setRotors("AXLQ");
+        assertEquals(first, mach.convert("BB"));
+        assertEquals(2, cache.hits());
+        assertEquals(10, cache.size());
+    }
+
+    @Test
+    public void testReconfigure() {
+        Machine mach = mach1();
+        SubstitutionCache cache = new SubstitutionCache(100);
+        mach.setSubstitutionCache(cache);
+        mach.setPlugboard("(HQ)(EX)(IP)(TR)(BY)");
+        Permutation plugboard = mach.plugboard();
+        String first = mach.convert("FROMHISSHOULDER");
+        mach.insertRotors(ROTORS1);
+        assertEquals(0, mach.setting(2));
+        mach.setRotors(SETTING1);
+        mach.setPlugboard("(HQ)(EX)(IP)(TR)(BY)");
+        assertSame(plugboard, mach.plugboard());
+        assertEquals(15, cache.size());
+        assertEquals(first, mach.convert("FROMHISSHOULDER"));
+        assertEquals(15, cache.hits());
+        mach.insertRotors(new String[] { "B", "Beta", "III", "I", "IV" });
+        assertEquals(0, cache.size());
+        mach.setPlugboard("(HQ)");
+        assertNotSame(plugboard, mach.plugboard());
+    }
+
+    /** Return the number of bytes allocated so far by this thread. */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void testConvertAllocatesNothing() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        final int chars = 1_000_000;
+        int c = 0;
+        for (int i = 0; i < chars; i += 1) {
+            c = mach.convert(c);
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < chars; i += 1) {
+            c = mach.convert(c);
+        }
+        long after = allocatedBytes();
+        assertEquals("bytes allocated per character", 0,
+                     (after - before) / chars);
+
+        char[] msg = new char[chars];
+        java.util.Arrays.fill(msg, 'A');
+        mach.convert(msg, 0, chars, msg, 0);
+        before = allocatedBytes();
+        mach.convert(msg, 0, chars, msg, 0);
+        after = allocatedBytes();
+        assertEquals("bytes allocated per character in bulk", 0,
+                     (after - before) / chars);
+    }
+
+    @Test
+    public void testConvertBulk() {
+        String expected = "QVPQSOKOILPUBKJZPISFXDW";
+        Permutation plugboard =
+            new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ);
+        Machine mach = mach1();
+        mach.setPlugboard(plugboard);
+        char[] in = "--FROMHISSHOULDERHIAWATHA".toCharArray();
+        char[] out = new char[24];
+        mach.convert(in, 2, 23, out, 1);
+        assertEquals(expected, new String(out, 1, 23));
+
+        mach = mach1();
+        mach.setPlugboard(plugboard);
+        CharBuffer msg = CharBuffer.wrap("FROMHISSHOULDERHIAWATHA");
+        assertEquals(expected, mach.convert(msg).toString());
+        assertEquals(0, msg.remaining());
+
+        mach = mach1();
+        mach.setPlugboard(plugboard);
+        msg = CharBuffer.wrap("FROMHISSHOULDERHIAWATHA");
+        try {
+            mach.convert(msg, CharBuffer.allocate(23).asReadOnlyBuffer());
+            fail("read-only output accepted");
+        } catch (ReadOnlyBufferException excp) {
+            /* Nothing should have been converted. */
+        }
+        assertEquals(23, msg.remaining());
+        assertEquals(expected, mach.convert("FROMHISSHOULDERHIAWATHA"));
+
+        mach = mach1();
+        mach.setPlugboard(plugboard);
+        try {
+            mach.convert("FROMHISsHOULDER");
+            fail("lower-case letter accepted");
+        } catch (EnigmaException excp) {
+            /* Nothing should have been converted. */
+        }
+        assertEquals(expected, mach.convert("FROMHISSHOULDERHIAWATHA"));
+
+        mach = mach1();
+        mach.setPlugboard(plugboard);
+        try {
+            mach.convert(in, 2, 23, out, 2);
+            fail("output overflow accepted");
+        } catch (IndexOutOfBoundsException excp) {
+            /* Nothing should have been converted. */
+        }
+        assertEquals(expected, mach.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    /** Return the settings of the rotors of MACH other than the
+     *  reflector, as letters. */
+    private String settings(Machine mach) {
+        String result = "";
+        for (int k = 1; k < mach.numRotors(); k += 1) {
+            result += AZ.toChar(mach.setting(k));
+        }
+        return result;
+    }
+
+    @Test
+    public void testDoubleStep() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("", AZ));
+        mach.setRotors("AAIQ");
+        mach.convert("A");
+        assertEquals("AAJR", settings(mach));
+        mach.convert("A");
+        assertEquals("ABKS", settings(mach));
+        mach.convert("A");
+        assertEquals("ABKT", settings(mach));
+        mach.setRotors("AVAA");
+        mach.convert("A");
+        assertEquals("AVAB", settings(mach));
+    }
+
+    /** Check that seeking a machine with rotors ORDER at SETTING agrees
+     *  with stepping it one character at a time. */
+    private void checkSeek(String[] order, String setting) {
+        Machine stepped = new Machine(AZ, 5, 3, ROTORS.values());
+        Machine sought = new Machine(AZ, 5, 3, ROTORS.values());
+        for (Machine mach : new Machine[] { stepped, sought }) {
+            mach.insertRotors(order);
+            mach.setRotors(setting);
+            mach.setPlugboard(new Permutation("", AZ));
+        }
+        for (int n = 0; n < 20000; n += 1) {
+            if (n % 7 == 0) {
+                assertArrayEquals("settings after " + n,
+                        stepped.settingsAfter(0), sought.settingsAfter(n));
+            }
+            stepped.convert(0);
+        }
+        sought.seek(20000);
+        assertEquals(stepped.convert("HIAWATHA"), sought.convert("HIAWATHA"));
+    }
+
+    @Test
+    public void testSeek() {
+        checkSeek(ROTORS1, "AXLE");
+        checkSeek(ROTORS1, "AAVP");
+        checkSeek(new String[] { "B", "Beta", "VI", "VIII", "III" }, "QMZV");
+        checkSeek(new String[] { "B", "Beta", "I", "VIII", "VI" }, "AZMM");
+        checkSeek(new String[] { "B", "Beta", "RUNS", "RUNS", "I" }, "BAZL");
+        checkSeek(new String[] { "B", "Beta", "I", "RUNS", "RUNS" }, "ALCA");
+    }
+
+    @Test
+    public void testSeekFarWithRuns() {
+        for (String[] order : new String[][] {
+                { "B", "Beta", "RUNS", "RUNS", "I" },
+                { "B", "Beta", "I", "RUNS", "RUNS" },
+                { "B", "Beta", "RUNS", "RUNS", "RUNS" } }) {
+            Machine mach = new Machine(AZ, 5, 3, ROTORS.values());
+            mach.insertRotors(order);
+            mach.setRotors("BMZA");
+            HashMap<String, Integer> seen = new HashMap<>();
+            ArrayList<String> states = new ArrayList<>();
+            Integer lead;
+            while ((lead = seen.get(settings(mach))) == null) {
+                seen.put(settings(mach), states.size());
+                states.add(settings(mach));
+                mach.convert(0);
+            }
+            long period = states.size() - lead;
+            long far = 1_000_000_000_007L;
+            mach.setRotors("BMZA");
+            mach.seek(far);
+            assertEquals(states.get((int) (lead + (far - lead) % period)),
+                         settings(mach));
+        }
+    }
+
+    @Test
+    public void testConvertParallel() {
+        Random random = new Random(61);
+        char[] msg = new char[5 * Machine.PARALLEL_CHUNK + 17];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = TestUtils.UPPER_STRING.charAt(random.nextInt(26));
+        }
+        Machine serial = mach1(), parallel = mach1();
+        Permutation plugboard = new Permutation("(HQ) (EX) (IP)", AZ);
+        serial.setPlugboard(plugboard);
+        parallel.setPlugboard(plugboard);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(serial.convert(new String(msg)),
+                         parallel.convertParallel(new String(msg), pool));
+        } finally {
+            pool.shutdown();
+        }
+        assertArrayEquals(serial.settingsAfter(0), parallel.settingsAfter(0));
+    }
+
+    @Test
+    public void testVerboseTracer() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        VerboseTracer tracer = new VerboseTracer(new PrintStream(bytes));
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        mach.setTracer(tracer);
+        assertEquals("QV", mach.convert("FR"));
+        tracer.flush();
+        String nl = System.lineSeparator();
+        assertEquals("[AXLF] F -> F -> I -> V -> J -> W -> H -> X -> Z -> J "
+                     + "-> H -> Q" + nl
+                     + "[AXLG] R -> T -> D -> M -> W -> U -> F -> V -> A -> E "
+                     + "-> V -> V" + nl, bytes.toString());
+
+        mach.setTracer(Tracer.NONE);
+        mach.setSubstitutionCache(new SubstitutionCache(16));
+        assertEquals("PQ", mach.convert("OM"));
+        tracer.flush();
+        assertEquals(2, bytes.toString().split(nl).length);
+    }
+
+    @Test
+    public void testSharedCatalog() throws InterruptedException {
+        RotorCatalog catalog = new RotorCatalog(AZ, ROTORS.values());
+        Permutation plugboard = new Permutation("(HQ) (EX) (IP)", AZ);
+        String[][] orders = {
+            { "B", "Beta", "III", "IV", "I" },
+            { "B", "Beta", "VI", "VIII", "I" },
+            { "B", "Beta", "I", "IV", "III" },
+            { "B", "Beta", "VIII", "III", "VI" },
+        };
+        Random random = new Random(17);
+        char[] msg = new char[50000];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = (char) ('A' + random.nextInt(26));
+        }
+        String text = new String(msg);
+        String[] expected = new String[orders.length];
+        for (int k = 0; k < orders.length; k += 1) {
+            Machine alone = new Machine(AZ, 5, 3, ROTORS.values());
+            alone.insertRotors(orders[k]);
+            alone.setRotors("AXLE");
+            alone.setPlugboard(plugboard);
+            expected[k] = alone.convert(text);
+        }
+        assertSame(ROTORS.get("I"), catalog.get("I"));
+        assertNull(catalog.get("II"));
+
+        String[] results = new String[4 * orders.length];
+        Thread[] threads = new Thread[results.length];
+        for (int t = 0; t < threads.length; t += 1) {
+            final int k = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Machine mach = new Machine(catalog, 5, 3);
+                    mach.insertRotors(orders[k % orders.length]);
+                    mach.setRotors("AXLE");
+                    mach.setPlugboard(plugboard);
+                    StringBuilder out = new StringBuilder();
+                    for (int i = 0; i < text.length(); i += 1000) {
+                        out.append(mach.convert(text.substring(i, i + 1000)));
+                        Thread.yield();
+                    }
+                    results[k] = out.toString();
+                }
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t += 1) {
+            threads[t].join();
+            assertEquals(expected[t % orders.length], results[t]);
+        }
+    }
 }
@@ -0,0 +1,372 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Runs Main end to end over a fixed set of generated workloads and
+ *  reports, for each, the wall time, characters converted per second,
+ *  peak resident set size, and time spent in garbage collection.  Each
+ *  run is a fresh JVM, so the figures include start-up, as a real job's
+ *  would; the best of several runs is reported.  Results may be recorded
+ *  as baselines in a file, and later runs checked against them.
+ *  @author
+ */
+public final class MacroBenchmark {
+
+    /** The standard workloads, by name: the seed, number of message
+     *  characters, moving rotors in the catalog, mean section length,
+     *  and longest message line of each. */
+    private static final Object[][] WORKLOADS = {
+        { "tiny", 1L, 64L << 10, 8, 200, 60 },
+        { "sections", 2L, 16L << 20, 100, 1000, 60 },
+        { "messages", 3L, 64L << 20, 8, 1 << 20, 60 },
+        { "long-lines", 4L, 64L << 20, 8, 16 << 20, 4 << 20 },
+        { "large", 5L, 1L << 30, 20, 1 << 16, 80 },
+    };
+
+    /** Default number of runs of each workload. */
+    private static final int RUNS = 3;
+
+    /** Default tolerance, as a percentage, before a result counts as a
+     *  regression. */
+    private static final int TOLERANCE = 10;
+
+    /** Run the benchmarks.  Usage:
+     *
+     *     java enigma.MacroBenchmark [--workload=NAME,...] [--chars=SIZE]
+     *          [--flags=FLAGS] [--runs=N] [--dir=DIR] [--baseline=FILE]
+     *          [--record] [--tolerance=PERCENT] [--jvm=OPTIONS]
+     *
+     *  runs the named workloads (default: all), passing Main the options
+     *  FLAGS, separated by commas.  With --chars, each workload has SIZE
+     *  message characters (see Workload.size) in place of its usual
+     *  number, so that the same mix can be run at any scale.  Workload
+     *  files are generated into DIR (default: a temporary directory,
+     *  removed afterwards) unless already there.  With --baseline, each
+     *  result is compared with the one in FILE for the same workload and
+     *  flags, and the exit code is 1 if any throughput fell, or peak
+     *  memory rose, by more than PERCENT.  With --record as well, FILE is
+     *  updated with the new results instead.
+     *  OPTIONS, separated by commas, are given to each JVM. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--workload=(.+) --chars=(\\d+[KMG]?) "
+                                + "--flags=(.*) --runs=(\\d+) "
+                                + "--dir=(.+) --baseline=(.+) --record "
+                                + "--tolerance=(\\d+) --jvm=(.+) "
+                                + "--child --=(.*){0,4}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.MacroBenchmark "
+                            + "[--workload=NAME,...] [--chars=SIZE] "
+                            + "[--flags=FLAGS] "
+                            + "[--runs=N] [--dir=DIR] [--baseline=FILE] "
+                            + "[--record] [--tolerance=PERCENT] "
+                            + "[--jvm=OPTIONS]");
+            }
+            if (options.contains("--child")) {
+                child(options.get("--"), options.getFirst("--flags"));
+                return;
+            }
+            MacroBenchmark bench = new MacroBenchmark(
+                split(options.getFirst("--flags")),
+                split(options.getFirst("--jvm")),
+                (int) Workload.size(options.getFirst("--runs"), RUNS),
+                Workload.size(options.getFirst("--chars"), -1));
+            String names = options.getFirst("--workload");
+            if (!bench.run(names == null ? null : split(names),
+                           options.getFirst("--dir"),
+                           options.getFirst("--baseline"),
+                           options.contains("--record"),
+                           (int) Workload.size(
+                               options.getFirst("--tolerance"),
+                               TOLERANCE))) {
+                System.exit(1);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A benchmark passing FLAGS to Main and OPTIONS to the JVM, running
+     *  each workload RUNS times, with CHARS message characters if that is
+     *  not negative. */
+    MacroBenchmark(List<String> flags, List<String> options, int runs,
+                   long chars) {
+        _flags = flags;
+        _options = options;
+        _runs = Math.max(1, runs);
+        _chars = chars;
+    }
+
+    /** Run the workloads named in NAMES, or all of them if NAMES is null,
+     *  keeping their files in DIR if it is not null, and print the
+     *  results.  Compare them with the baselines in the file BASELINE, if
+     *  it is not null, or record them there if RECORD.  Return false iff
+     *  any result regressed by more than TOLERANCE percent. */
+    boolean run(List<String> names, String dir, String baseline,
+                boolean record, int tolerance) {
+        Map<String, long[]> baselines = new LinkedHashMap<>();
+        if (baseline != null && Files.exists(Paths.get(baseline))) {
+            readBaselines(baseline, baselines);
+        }
+        Path home = dir == null ? tempDir() : Paths.get(dir);
+        boolean ok = true;
+        System.out.printf("%-12s %-12s %12s %9s %12s %9s %8s%n",
+                          "workload", "flags", "chars", "wall (s)",
+                          "chars/s", "RSS (MB)", "GC (ms)");
+        try {
+            for (Object[] spec : WORKLOADS) {
+                String name = (String) spec[0];
+                if (names != null && !names.contains(name)) {
+                    continue;
+                }
+                Workload workload =
+                    new Workload((Long) spec[1],
+                                 _chars < 0 ? (Long) spec[2] : _chars,
+                                 (Integer) spec[3], (Integer) spec[4],
+                                 (Integer) spec[5]);
+                String file = _chars < 0 ? name : name + "-" + _chars;
+                Path config = home.resolve(file + ".conf");
+                Path input = home.resolve(file + ".in");
+                if (!Files.exists(config) || !Files.exists(input)) {
+                    workload.write(config.toString(), input.toString());
+                }
+                long[] result =
+                    best(config, input, home.resolve(file + ".out"));
+                String key = file + " " + flagsKey();
+                long charsPerSec =
+                    Math.round(workload.chars() * 1e9 / result[0]);
+                System.out.printf("%-12s %-12s %12d %9.2f %12d %9.1f %8d",
+                                  file, flagsKey(), workload.chars(),
+                                  result[0] / 1e9, charsPerSec,
+                                  result[1] / 1024.0, result[2]);
+                long[] base = baselines.get(key);
+                if (record) {
+                    baselines.put(key, new long[] { charsPerSec, result[1] });
+                } else if (base != null) {
+                    boolean slower =
+                        charsPerSec * 100 < base[0] * (100 - tolerance);
+                    boolean bigger =
+                        result[1] >= 0 && base[1] >= 0
+                        && result[1] * 100 > base[1] * (100 + tolerance);
+                    if (slower || bigger) {
+                        ok = false;
+                        System.out.printf("  REGRESSION (baseline %d chars/s,"
+                                          + " %.1f MB)", base[0],
+                                          base[1] / 1024.0);
+                    }
+                }
+                System.out.println();
+                if (dir == null) {
+                    delete(config, input);
+                }
+            }
+        } finally {
+            if (dir == null) {
+                delete(home);
+            }
+        }
+        if (record && baseline != null) {
+            writeBaselines(baseline, baselines);
+        }
+        return ok;
+    }
+
+    /** Run Main _runs times on CONFIG and INPUT, writing to OUTPUT, and
+     *  return the figures for the fastest run: its wall time in
+     *  nanoseconds, peak RSS in kilobytes (-1 if unknown), and GC time in
+     *  milliseconds. */
+    private long[] best(Path config, Path input, Path output) {
+        long[] best = null;
+        try {
+            for (int k = 0; k < _runs; k += 1) {
+                long[] result = runOnce(config, input, output);
+                if (best == null || result[0] < best[0]) {
+                    best = result;
+                }
+            }
+        } finally {
+            delete(output);
+        }
+        return best;
+    }
+
+    /** Run Main once in a new JVM on CONFIG and INPUT, writing to OUTPUT,
+     *  and return its wall time, peak RSS, and GC time as for best. */
+    private long[] runOnce(Path config, Path input, Path output) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+                    .toString());
+        command.addAll(_options);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MacroBenchmark.class.getName());
+        command.add("--child");
+        command.add("--flags=" + String.join(",", _flags));
+        command.add(config.toString());
+        command.add(input.toString());
+        command.add(output.toString());
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        try {
+            long start = System.nanoTime();
+            Process process = builder.start();
+            String report;
+            try (BufferedReader out = new BufferedReader(
+                     new InputStreamReader(process.getInputStream(),
+                                           StandardCharsets.US_ASCII))) {
+                report = out.readLine();
+            }
+            int status = process.waitFor();
+            long wall = System.nanoTime() - start;
+            if (status != 0 || report == null) {
+                throw error("Main failed on %s", input);
+            }
+            String[] fields = report.trim().split("\\s+");
+            return new long[] { wall, Long.parseLong(fields[0]),
+                                Long.parseLong(fields[1]) };
+        } catch (IOException excp) {
+            throw error("could not run Main: %s", excp.getMessage());
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        }
+    }
+
+    /** Run Main with the options in FLAGS, separated by commas, and the
+     *  file names in FILES, then print the peak RSS of this process in
+     *  kilobytes (-1 if unknown) and its total GC time in milliseconds. */
+    private static void child(List<String> files, String flags) {
+        List<String> args = new ArrayList<>(split(flags));
+        args.addAll(files);
+        Main.main(args.toArray(new String[args.size()]));
+        long gc = 0;
+        for (GarbageCollectorMXBean bean
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gc += Math.max(0, bean.getCollectionTime());
+        }
+        System.out.printf("%d %d%n", peakRSS(), gc);
+    }
+
+    /** Return the peak resident set size of this process in kilobytes, as
+     *  reported by Linux, or -1 if that is unavailable. */
+    private static long peakRSS() {
+        try {
+            for (String line
+                     : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("\\D", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException excp) {
+            return -1;
+        }
+        return -1;
+    }
+
+    /** Add the baselines in the file named NAME to BASELINES. Each line
+     *  has a workload name, Main's options as for flagsKey, the throughput
+     *  in characters per second, and the peak RSS in kilobytes.  Lines
+     *  starting with '#' are comments. */
+    private static void readBaselines(String name,
+                                      Map<String, long[]> baselines) {
+        try {
+            for (String line : Files.readAllLines(Paths.get(name))) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length != 4 || fields[0].startsWith("#")) {
+                    continue;
+                }
+                baselines.put(fields[0] + " " + fields[1],
+                              new long[] { Long.parseLong(fields[2]),
+                                           Long.parseLong(fields[3]) });
+            }
+        } catch (IOException | NumberFormatException excp) {
+            throw error("bad baseline file %s", name);
+        }
+    }
+
+    /** Write BASELINES to the file named NAME in the form read by
+     *  readBaselines. */
+    private static void writeBaselines(String name,
+                                       Map<String, long[]> baselines) {
+        List<String> lines = new ArrayList<>();
+        lines.add("# workload flags chars/s peak-RSS-KB");
+        for (Map.Entry<String, long[]> entry : baselines.entrySet()) {
+            lines.add(String.format("%s %d %d", entry.getKey(),
+                                    entry.getValue()[0],
+                                    entry.getValue()[1]));
+        }
+        try {
+            Files.write(Paths.get(name), lines);
+        } catch (IOException excp) {
+            throw error("could not write %s", name);
+        }
+    }
+
+    /** Return Main's options as they appear in results and baselines:
+     *  joined with commas, or "-" if there are none. */
+    private String flagsKey() {
+        return _flags.isEmpty() ? "-" : String.join(",", _flags);
+    }
+
+    /** Return the non-empty items of LIST, separated by commas, or an
+     *  empty list if LIST is null. */
+    private static List<String> split(String list) {
+        List<String> result = new ArrayList<>();
+        if (list != null) {
+            for (String item : list.split(",")) {
+                if (!item.isEmpty()) {
+                    result.add(item);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return a new temporary directory. */
+    private static Path tempDir() {
+        try {
+            return Files.createTempDirectory("enigma-macro");
+        } catch (IOException excp) {
+            throw error("could not create a temporary directory");
+        }
+    }
+
+    /** Delete the files PATHS, if they exist. */
+    private static void delete(Path... paths) {
+        for (Path path : paths) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException excp) {
+                System.err.printf("Warning: could not delete %s%n", path);
+            }
+        }
+    }
+
+    /** Options for Main. */
+    private final List<String> _flags;
+    /** Options for the JVM. */
+    private final List<String> _options;
+    /** Number of runs of each workload. */
+    private final int _runs;
+    /** Number of message characters in each workload, or -1 for the
+     *  usual number. */
+    private final long _chars;
+}
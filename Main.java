@@ -1,13 +1,22 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 import ucb.util.CommandArgs;
 
@@ -27,18 +36,56 @@ public final class Main {
      * input.  ARGS[2] is optional; when present, it names an output
      * file for processed messages.  Otherwise, output goes to the
      * standard output. Exits normally if there are no errors in the input;
-     * otherwise with code 1.
+     * otherwise with code 1.  With --mmap, an input file is mapped into
+     * memory rather than read.  With --sections, the sections of input
+     * that follow each settings line are converted concurrently.  With
+     * --pipeline, reading, converting, and writing proceed on separate
+     * threads.  With --snapshot=FILE, the configuration is compiled into
+     * the binary snapshot FILE, and no messages are processed, so
+     * ARGS[1] and ARGS[2] may not be given; ARGS[0] may be such a
+     * snapshot in place of a configuration file.  With --binary=SETTINGS,
+     * the input is raw bytes, converted by a machine set up by the
+     * settings line SETTINGS, whose alphabet must have 256 characters, the
+     * K-th standing for the byte K; the output is the converted bytes.
+     * With --keystreams=MB, the tables of the keystream of each settings
+     * line are kept, in at most MB megabytes, and reused for later
+     * messages with the same settings; this applies only when none of
+     * --verbose, --sections, and --pipeline is given.  With
+     * --substitutions=N, the table taking each character through the
+     * whole machine at each rotor setting is kept for the N settings most
+     * recently used; this applies only when none of --verbose, --sections,
+     * and --parallel is given.
      */
     public static void main(String... args) {
         try {
             CommandArgs options =
-                    new CommandArgs("--verbose --=(.*){1,3}", args);
+                    new CommandArgs("--verbose --parallel --mmap --sections "
+                                    + "--pipeline --snapshot=(.+) "
+                                    + "--binary=(.+) --keystreams=(\\d+) "
+                                    + "--substitutions=(\\d+) "
+                                    + "--=(.*){1,3}", args);
             if (!options.ok()) {
                 throw error("Usage: java enigma.Main [--verbose] "
-                        + "[INPUT [OUTPUT]]");
+                        + "[--parallel] [--mmap] [--sections] [--pipeline] "
+                        + "[--snapshot=FILE] [--binary=SETTINGS] "
+                        + "[--keystreams=MB] [--substitutions=N] "
+                        + "CONFIG [INPUT [OUTPUT]]");
             }
 
             _verbose = options.contains("--verbose");
+            _parallel = options.contains("--parallel");
+            _mmap = options.contains("--mmap");
+            _sections = options.contains("--sections");
+            _pipeline = options.contains("--pipeline");
+            _snapshotFile = options.getFirst("--snapshot");
+            _binarySettings = options.getFirst("--binary");
+            _keystreams = options.contains("--keystreams")
+                ? new KeystreamCache(
+                    megabytes(options.getFirst("--keystreams")))
+                : null;
+            _substitutions = options.contains("--substitutions")
+                ? count(options.getFirst("--substitutions"))
+                : 0;
             new Main(options.get("--")).process();
             return;
         } catch (EnigmaException excp) {
@@ -47,31 +94,69 @@ public final class Main {
         System.exit(1);
     }
 
+    /** Return the number of bytes in MB megabytes. */
+    private static long megabytes(String mb) {
+        try {
+            long result = Long.parseLong(mb);
+            if (result > Long.MAX_VALUE >> 20) {
+                throw new NumberFormatException();
+            }
+            return result << 20;
+        } catch (NumberFormatException excp) {
+            throw error("bad number of megabytes: %s", mb);
+        }
+    }
+
+    /** Return the number N, which must fit in an int. */
+    private static int count(String n) {
+        try {
+            return Integer.parseInt(n);
+        } catch (NumberFormatException excp) {
+            throw error("bad number: %s", n);
+        }
+    }
+
     /**
      * Open the necessary files for non-option arguments ARGS (see comment
      * on main).
      */
     Main(List<String> args) {
-        _config = getInput(args.get(0));
+        if (_snapshotFile != null && args.size() > 1) {
+            throw error("--snapshot takes no input or output file");
+        }
+        _machine = readConfig(args.get(0));
 
+        ReadableByteChannel in;
         if (args.size() > 1) {
-            _input = getInput(args.get(1));
-            _input2 = getInput2(args.get(1));
+            in = getChannel(args.get(1));
         } else {
-            _input = new Scanner(System.in);
-            _input2 = new Scanner(System.in);
+            in = Channels.newChannel(System.in);
         }
-
+        WritableByteChannel out;
         if (args.size() > 2) {
-            _output = getOutput(args.get(2));
+            out = getOutput(args.get(2));
+        } else {
+            out = new FileOutputStream(FileDescriptor.out).getChannel();
+        }
 
-        } else _output = System.out;
+        if (_binarySettings != null) {
+            _input = null;
+            _output = null;
+        } else if (args.size() > 1 && _mmap) {
+            _input = new MappedMessageReader((FileChannel) in);
+            _output = new MessageWriter(out);
+        } else {
+            _input = new MessageReader(in);
+            _output = new MessageWriter(out);
+        }
+        _inChannel = in;
+        _outChannel = out;
     }
 
     /**
      * Return a Scanner reading from the file named NAME.
      */
-    private Scanner getInput(String name) {
+    private static Scanner getInput(String name) {
         try {
             return new Scanner(new File(name));
         } catch (IOException excp) {
@@ -79,101 +164,135 @@ public final class Main {
         }
     }
 
-    private Scanner getInput2(String name) {
+    /**
+     * Return a channel reading from the file named NAME.
+     */
+    private static FileChannel getChannel(String name) {
         try {
-            return new Scanner(new File(name));
+            return FileChannel.open(Paths.get(name));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
     /**
-     * Return a PrintStream writing to the file named NAME.
+     * Return a channel writing to the file named NAME, which is created
+     * or emptied first.
      */
-    private PrintStream getOutput(String name) {
+    private WritableByteChannel getOutput(String name) {
         try {
-            return new PrintStream(name);
+            return FileChannel.open(Paths.get(name),
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                    StandardOpenOption.WRITE);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
     /**
-     * Configure an Enigma machine from the contents of configuration
-     * file _config and apply it to the messages in _input, sending the
-     * results to _output.
+     * Apply the machine read from the configuration to the messages in
+     * _input, sending the results to _output.
      */
 
     private void process() {
-        Machine machine = readConfig();
-        String plugboardConfiguration = "";
-        String incomingString = "";
-        String outputString = "";
-        String rotorSettings = "";
-        int _numRotors = machine.numRotors();
-        String line;
-            if (!(_input.hasNext("\\*"))) {
-                throw new EnigmaException("no configuration");
+        Machine machine = _machine;
+        if (_snapshotFile != null) {
+            Snapshot.write(machine, getOutput(_snapshotFile));
+            return;
+        }
+        if (_binarySettings != null) {
+            String[] settings = _binarySettings.trim().split("\\s+");
+            if (!settings[0].equals("*")) {
+                throw error("binary settings must start with *");
+            }
+            setUp(machine, settings);
+            new ByteMachine(machine).convert(_inChannel, _outChannel);
+            return;
+        }
+        if (_substitutions > 0) {
+            machine.setSubstitutionCache(
+                new SubstitutionCache(_substitutions));
+        }
+        VerboseTracer tracer = null;
+        if (_verbose) {
+            tracer = new VerboseTracer(System.err);
+            machine.setTracer(tracer);
+        }
+        try {
+            if (_sections && !_verbose) {
+                new SectionRunner(machine, SECTION_THREADS)
+                    .run(_input, _output);
+            } else if (_pipeline && !_verbose) {
+                new PipelineRunner(machine).run(_input, _output);
+            } else {
+                process(machine);
             }
+        } finally {
+            _output.flush();
+            if (tracer != null) {
+                tracer.flush();
+            }
+        }
+        if (_keystreams != null) {
+            System.err.printf("Keystream cache: %s%n", _keystreams);
+        }
+        if (machine.substitutionCache() != null) {
+            System.err.printf("Substitution cache: %s%n",
+                              machine.substitutionCache());
+        }
+    }
 
-            while (_input.hasNextLine()) {
-                line = _input.nextLine();
-                incomingString = "";
-                outputString = "";
-                if (line.isEmpty()) {
-                    _output.println();
-                } else {
-                    if (line.charAt(0) == '*') {
-                        plugboardConfiguration = "";
-                        incomingString = "";
-                        String[] configurationInput = line.split("\\s");
-                        String[] rotorSlots = new String[_numRotors];
-                        for (int i = 1; i < _numRotors+1; i += 1){
-                            rotorSlots[i-1] = configurationInput[i];
-                            try {
-                                machine.insertRotors(rotorSlots);
-                            }
-                            catch (EnigmaException e) {
-                            }
-                        }
-                        for(int i = 0; i < _numRotors; i +=1){
-                            if(i!=0 && machine.getRotor(i).reflecting()){
-                                throw error("reflector wrong");
-                            }
-                            if(1==2){
-                                throw error("reflector wrong");
-                            }
-                        }
-                        if (configurationInput[_numRotors+1].length() != _numRotors-1){
-                            throw error("short");
-                        }
-                        rotorSettings = configurationInput[_numRotors+1];
-                        char[] testSet = rotorSettings.toCharArray();
-                        for (int i=0;i<testSet.length;i+=1){
-                            if (Character.isDigit(testSet[i])){
-                                throw error("bad char");
-                            }
-                        }
-                        setUp(machine, rotorSettings);
-                        for (int i = _numRotors+2; i < configurationInput.length; i = i + 1 ) {
-                            plugboardConfiguration += configurationInput[i];
+    /** Apply MACHINE to the messages in _input, sending the results to
+     *  _output.  Message lines are read, converted, and printed a block
+     *  at a time. */
+    private void process(Machine machine) {
+        boolean configured = false;
+        char[] block = new char[_parallel ? PARALLEL_BLOCK : BLOCK];
+        KeystreamCache.Keystream keystream = null;
+        long position = 0;
+        while (true) {
+            int kind = _input.nextLine();
+            if (kind == MessageReader.END) {
+                break;
+            } else if (kind == MessageReader.SETTINGS) {
+                setUp(machine, _input.tokens());
+                configured = true;
+                if (_keystreams != null && !_verbose) {
+                    keystream = _keystreams.get(machine);
+                }
+                position = 0;
+            } else {
+                int len;
+                while ((len = _input.read(block, 0, block.length)) > 0) {
+                    if (!configured) {
+                        throw error("no configuration");
+                    }
+                    if (keystream != null) {
+                        if (keystream.convert(block, 0, len, block, 0,
+                                              position)) {
+                            position += len;
+                            _output.write(block, 0, len);
+                            continue;
                         }
-                        machine.setPlugboard(new Permutation(plugboardConfiguration, _alphabet));
+                        machine.seek(position);
+                        keystream = null;
+                    }
+                    if (_parallel) {
+                        machine.convertParallel(block, 0, len,
+                                                ForkJoinPool.commonPool());
                     } else {
-                        String[] letterInputs;
-                        letterInputs = line.split("\\s");
-                        int i = 0;
-                        while(i< letterInputs.length) {
-                            incomingString += letterInputs[i];
-                            i += 1;
-                        }
-                        outputString = machine.convert(incomingString);
-                        printMessageLine(outputString);
+                        machine.convert(block, 0, len, block, 0);
                     }
+                    _output.write(block, 0, len);
                 }
+                _output.endLine();
             }
-}
-
+        }
+        if (!configured) {
+            throw error("no configuration");
+        }
+    }
 
     //String[] rotorOrder2 = rotorOrder.toArray(new String[enigmaMachine.numRotors()]);
     //enigmaMachine.insertRotors(rotorOrder2);
@@ -185,20 +304,41 @@ public final class Main {
 
 
     /**
-     * Return an Enigma machine configured from the contents of configuration
-     * file _config.
+     * Return an Enigma machine configured from the configuration file or
+     * snapshot named NAME, with no rotors inserted.
      */
-    private Machine readConfig() {
+    static Machine readConfig(String name) {
+        FileChannel channel = getChannel(name);
+        Machine snapshot =
+            Snapshot.isSnapshot(channel) ? Snapshot.read(channel) : null;
         try {
-            String alphabetLine = _config.next();
-            _alphabet = new Alphabet(alphabetLine);
-            int numRotors = _config.nextInt();
-            int pawls = _config.nextInt();
+            channel.close();
+        } catch (IOException excp) {
+            throw error("could not close %s", name);
+        }
+        if (snapshot != null) {
+            return snapshot;
+        }
+        try (Scanner config = getInput(name)) {
+            return readConfig(config);
+        }
+    }
+
+    /**
+     * Return an Enigma machine configured from the contents of the
+     * configuration file read by CONFIG.
+     */
+    private static Machine readConfig(Scanner config) {
+        try {
+            String alphabetLine = config.next();
+            Alphabet alphabet = new Alphabet(alphabetLine);
+            int numRotors = config.nextInt();
+            int pawls = config.nextInt();
             ArrayList<Rotor> allRotors = new ArrayList<>();
-            while (_config.hasNextLine() && _config.hasNext()) {
-                allRotors.add(readRotor());
+            while (config.hasNextLine() && config.hasNext()) {
+                allRotors.add(readRotor(config, alphabet));
             }
-            return new Machine(_alphabet, numRotors, pawls, allRotors);
+            return new Machine(alphabet, numRotors, pawls, allRotors);
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
         }
@@ -206,18 +346,19 @@ public final class Main {
     }
 
     /**
-     * Return a rotor, reading its description from _config.
+     * Return a rotor over ALPHABET, reading its description from CONFIG.
      */
-    private Rotor readRotor() {
+    private static Rotor readRotor(Scanner config, Alphabet alphabet) {
         try {
-            String rotorName = _config.next();
-            String rotorType = _config.next();
+            String rotorName = config.next();
+            String rotorType = config.next();
             String notches = rotorType.substring(1);
             StringBuilder rotorCycles = new StringBuilder();
-            while (_config.hasNext("\\(([^)]+)\\)")) {
-                rotorCycles.append(_config.next());
+            while (config.hasNext("\\(([^)]+)\\)")) {
+                rotorCycles.append(config.next());
             }
-            Permutation rotorPerm = new Permutation(rotorCycles.toString(), _alphabet);
+            Permutation rotorPerm =
+                new Permutation(rotorCycles.toString(), alphabet);
             if (rotorType.charAt(0) == 'M') {
                 return new MovingRotor(rotorName, rotorPerm, notches);
             }
@@ -234,39 +375,45 @@ public final class Main {
     }
 
     /**
-     * Set M according to the specification given on SETTINGS,
-     * which must have the format specified in the assignment.
+     * Set M according to the specification given on SETTINGS, the tokens
+     * of a settings line, which must have the format specified in the
+     * assignment.
      */
-    private void setUp(Machine M, String settings) {
-        M.setRotors(settings);
-    }
-
-    /**
-     * Return true iff verbose option specified.
-     */
-    static boolean verbose() {
-        return _verbose;
-    }
-
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-
-    private void printMessageLine(String msg) {
-        for (int index = 0; index < msg.length(); index += 1) {
-            _output.print(msg.charAt(index));
-            if (((index + 1) % 5) == 0) {
-                _output.print(" ");
+    static void setUp(Machine M, String[] settings) {
+        int numRotors = M.numRotors();
+        if (settings.length < numRotors + 2) {
+            throw error("short");
+        }
+        String[] rotorSlots = new String[numRotors];
+        System.arraycopy(settings, 1, rotorSlots, 0, numRotors);
+        M.insertRotors(rotorSlots);
+        for (int i = 0; i < numRotors; i += 1) {
+            if (M.getRotor(i) == null) {
+                throw error("unknown rotor: %s", rotorSlots[i]);
+            }
+        }
+        for (int i = 1; i < numRotors; i += 1) {
+            if (M.getRotor(i).reflecting()) {
+                throw error("reflector wrong");
+            }
+        }
+        String rotorSettings = settings[numRotors + 1];
+        if (rotorSettings.length() != numRotors - 1) {
+            throw error("short");
+        }
+        for (int i = 0; i < rotorSettings.length(); i += 1) {
+            if (Character.isDigit(rotorSettings.charAt(i))) {
+                throw error("bad char");
             }
         }
-        _output.println();
-        //_output.print(_input.tokens());
+        M.setRotors(rotorSettings);
+        StringBuilder plugboard = new StringBuilder();
+        for (int i = numRotors + 2; i < settings.length; i += 1) {
+            plugboard.append(settings[i]);
+        }
+        M.setPlugboard(plugboard.toString());
     }
 
-
-
-
-
-
        /* int lineLength;
         int startIndex = 0;
         String s;
@@ -311,18 +458,53 @@ public final class Main {
         }
         _output.print(counter);*/
 
-    /** Alphabet used in this machine. */
-    private Alphabet _alphabet;
+    /** Number of characters in a block of a message line. */
+    private static final int BLOCK = 1 << 13;
+    /** Number of characters in a block of a message line when blocks are
+     *  converted in parallel. */
+    private static final int PARALLEL_BLOCK = 1 << 22;
+
+    /** Number of threads converting sections with --sections. */
+    private static final int SECTION_THREADS =
+        Runtime.getRuntime().availableProcessors();
 
     /** Source of input messages. */
-    private final Scanner _input;
-    private final Scanner _input2;
+    private final MessageReader _input;
 
-    /** Source of machine configuration. */
-    private final Scanner _config;
+    /** The machine read from the configuration file or snapshot, with no
+     *  rotors inserted. */
+    private final Machine _machine;
 
     /** File for encoded/decoded messages. */
-    private static PrintStream _output;
+    private final MessageWriter _output;
+
+    /** Channels underlying _input and _output, which are null when
+     *  converting bytes with --binary. */
+    private final ReadableByteChannel _inChannel;
+    private final WritableByteChannel _outChannel;
     /** True if --verbose specified. */
     private static boolean _verbose;
+    /** True if --parallel specified: long message lines are converted
+     *  in pieces on all available processors. */
+    private static boolean _parallel;
+    /** True if --mmap specified: an input file is mapped into memory. */
+    private static boolean _mmap;
+    /** True if --sections specified: sections of input are converted
+     *  concurrently. */
+    private static boolean _sections;
+    /** True if --pipeline specified: reading, converting, and writing
+     *  are done on separate threads. */
+    private static boolean _pipeline;
+    /** File to write a snapshot of the configuration to, or null if
+     *  --snapshot was not specified. */
+    private static String _snapshotFile;
+    /** Settings line for converting raw bytes, or null if --binary was
+     *  not specified. */
+    private static String _binarySettings;
+    /** Keystreams kept with --keystreams, or null if it was not
+     *  specified. */
+    private static KeystreamCache _keystreams;
+    /** Number of substitutions kept with --substitutions, or 0 if it was
+     *  not specified. */
+    private static int _substitutions;
 }
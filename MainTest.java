@@ -22,20 +22,10 @@ public class MainTest {
     private static final HashMap<String, Rotor> ROTORS = new HashMap<>();
 
     static {
-        HashMap<String, String> nav = TestUtils.NAVALA;
-        ROTORS.put("B", new Reflector("B", new Permutation(nav.get("B"), AZ)));
-        ROTORS.put("Beta",
-                new FixedRotor("Beta",
-                        new Permutation(nav.get("Beta"), AZ)));
-        ROTORS.put("III",
-                new MovingRotor("III",
-                        new Permutation(nav.get("III"), AZ), "V"));
-        ROTORS.put("IV",
-                new MovingRotor("IV", new Permutation(nav.get("IV"), AZ),
-                        "J"));
-        ROTORS.put("I",
-                new MovingRotor("I", new Permutation(nav.get("I"), AZ),
-                        "Q"));
+        for (Rotor rotor : TestUtils.navalRotors(
+                 AZ, "B", "Beta", "III", "IV", "I")) {
+            ROTORS.put(rotor.name(), rotor);
+        }
     }
 
     private static final String[] ROTORS1 = { "B", "Beta", "III", "IV", "I" };
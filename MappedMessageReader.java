@@ -0,0 +1,58 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static enigma.EnigmaException.*;
+
+/** A MessageReader that walks a file mapped into memory, rather than
+ *  copying it through a buffer.  The file is mapped a window at a time,
+ *  so that it may be of any size; each window starts where reading of
+ *  the last one left off, and the last is released to the garbage
+ *  collector along with its mapping.
+ *  @author
+ */
+class MappedMessageReader extends MessageReader {
+
+    /** Size of the windows in which the file is mapped. */
+    static final int WINDOW = 1 << 28;
+
+    /** A reader of FILE, from its start. */
+    MappedMessageReader(FileChannel file) {
+        this(file, WINDOW);
+    }
+
+    /** A reader of FILE, from its start, mapping windows of WINDOW
+     *  bytes, which must be at least 4. */
+    MappedMessageReader(FileChannel file, int window) {
+        super(null, map(file, 0, window));
+        _file = file;
+        _window = window;
+    }
+
+    @Override
+    ByteBuffer more(ByteBuffer buffer, int start, int end, int n) {
+        _offset += start;
+        return map(_file, _offset, _window);
+    }
+
+    /** Return a read-only mapping of the window of at most WINDOW bytes
+     *  of FILE starting at OFFSET. */
+    private static ByteBuffer map(FileChannel file, long offset,
+                                  int window) {
+        try {
+            long size = Math.min(window, file.size() - offset);
+            return file.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        } catch (IOException excp) {
+            throw error("could not map input: %s", excp.getMessage());
+        }
+    }
+
+    /** The file being read. */
+    private final FileChannel _file;
+    /** Size of my windows. */
+    private final int _window;
+    /** Position in _file of the start of the current window. */
+    private long _offset;
+}
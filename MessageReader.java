@@ -0,0 +1,391 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A reader of the input to Main, taken a line at a time from a channel
+ *  of UTF-8 bytes.  A line starting with '*' is a settings line, which is
+ *  read whole and split at whitespace into tokens.  Any other line is a
+ *  message line, whose characters are handed out in blocks with the
+ *  whitespace removed, so that lines of any length are read in constant
+ *  space.  Bytes below 0x80 are taken as characters directly; only
+ *  other bytes go through the decoder.  Lines end at "\n", "\r\n", or
+ *  "\r", and whitespace is any of " \t\n\u000B\f\r", as for \s in a
+ *  regular expression.
+ *  @author
+ */
+class MessageReader {
+
+    /** Value of nextLine() for a settings line. */
+    static final int SETTINGS = 0;
+    /** Value of nextLine() for a message line. */
+    static final int MESSAGE = 1;
+    /** Value of nextLine() at the end of the input. */
+    static final int END = 2;
+
+    /** Size of my byte buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** A reader of the bytes from IN. */
+    MessageReader(ReadableByteChannel in) {
+        this(in, ByteBuffer.allocate(BUFFER_SIZE).limit(0));
+    }
+
+    /** A reader of the bytes from IN, or of whatever more() supplies if IN
+     *  is null, starting with the remaining bytes of BUFFER. */
+    MessageReader(ReadableByteChannel in, ByteBuffer buffer) {
+        _in = in;
+        setBuffer(buffer);
+        _line = new char[128];
+        _tokenStarts = new int[16];
+        _tokenEnds = new int[16];
+        _lineDone = true;
+    }
+
+    /** Skip whatever remains of the current line and start the next,
+     *  returning SETTINGS, MESSAGE, or END according to what it is. */
+    int nextLine() {
+        while (!_lineDone) {
+            skipLine();
+        }
+        if (_afterCR) {
+            _afterCR = false;
+            if (available(1) && _buffer.get(_pos) == '\n') {
+                _pos += 1;
+            }
+        }
+        _numTokens = 0;
+        if (!available(1)) {
+            return END;
+        }
+        _lineDone = false;
+        if (_buffer.get(_pos) == '*') {
+            readSettings();
+            return SETTINGS;
+        }
+        return MESSAGE;
+    }
+
+    /** Store up to LEN characters of the current message line, leaving out
+     *  whitespace, into BUF starting at OFF, and return how many were
+     *  stored.  Returns 0 only once the line is exhausted.  LEN must be at
+     *  least 2, leaving room for a surrogate pair. */
+    int read(char[] buf, int off, int len) {
+        int n = 0;
+        while (n < len && !_lineDone) {
+            if (_pos == _limit && !available(1)) {
+                _lineDone = true;
+                break;
+            }
+            int end = Math.min(_limit, _pos + len - n);
+            if (_array != null) {
+                n = copy(_array, _arrayOffset, end, buf, off, n);
+            } else {
+                n = copy(_buffer, end, buf, off, n);
+            }
+            if (!_lineDone && n < len && _pos < _limit
+                && _buffer.get(_pos) < 0) {
+                int c = decode();
+                if (Character.isBmpCodePoint(c)) {
+                    buf[off + n] = (char) c;
+                    n += 1;
+                } else if (n + 2 <= len) {
+                    buf[off + n] = Character.highSurrogate(c);
+                    buf[off + n + 1] = Character.lowSurrogate(c);
+                    n += 2;
+                } else {
+                    _pos = _undecoded;
+                    break;
+                }
+            }
+        }
+        return n;
+    }
+
+    /** Copy the characters of the current message line encoded by bytes
+     *  _pos .. END-1 of _buffer, which is backed by BYTES starting at
+     *  BASE, into BUF, starting at index OFF + N, and return the new
+     *  value of N.  Whitespace is left out.  Stops at the end of the line
+     *  or before a byte of 0x80 or more, leaving _pos after the bytes
+     *  read. */
+    private int copy(byte[] bytes, int base, int end, char[] buf,
+                     int off, int n) {
+        int pos = _pos;
+        while (pos < end) {
+            int b = bytes[base + pos];
+            if (b > ' ') {
+                buf[off + n] = (char) b;
+                n += 1;
+                pos += 1;
+            } else if (b < 0) {
+                break;
+            } else {
+                pos += 1;
+                if (b == '\n' || b == '\r') {
+                    _afterCR = b == '\r';
+                    _lineDone = true;
+                    break;
+                } else if (!isSpace(b)) {
+                    buf[off + n] = (char) b;
+                    n += 1;
+                }
+            }
+        }
+        _pos = pos;
+        return n;
+    }
+
+    /** As for copy(byte[], int, int, char[], int, int), for a buffer that
+     *  has no accessible array, such as a mapped file.  This is the same
+     *  loop, reading the buffer directly. */
+    private int copy(ByteBuffer bytes, int end, char[] buf, int off, int n) {
+        int pos = _pos;
+        while (pos < end) {
+            int b = bytes.get(pos);
+            if (b > ' ') {
+                buf[off + n] = (char) b;
+                n += 1;
+                pos += 1;
+            } else if (b < 0) {
+                break;
+            } else {
+                pos += 1;
+                if (b == '\n' || b == '\r') {
+                    _afterCR = b == '\r';
+                    _lineDone = true;
+                    break;
+                } else if (!isSpace(b)) {
+                    buf[off + n] = (char) b;
+                    n += 1;
+                }
+            }
+        }
+        _pos = pos;
+        return n;
+    }
+
+    /** Return the number of tokens on the current settings line,
+     *  including the initial one starting with '*'. */
+    int numTokens() {
+        return _numTokens;
+    }
+
+    /** Return the length of token K of the current settings line. */
+    int tokenLength(int k) {
+        return _tokenEnds[k] - _tokenStarts[k];
+    }
+
+    /** Return character I of token K of the current settings line. */
+    char tokenChar(int k, int i) {
+        return _line[_tokenStarts[k] + i];
+    }
+
+    /** Return token K of the current settings line. */
+    String token(int k) {
+        return new String(_line, _tokenStarts[k], tokenLength(k));
+    }
+
+    /** Return the tokens of the current settings line. */
+    String[] tokens() {
+        String[] result = new String[_numTokens];
+        for (int k = 0; k < _numTokens; k += 1) {
+            result[k] = token(k);
+        }
+        return result;
+    }
+
+    /** Return the text of the current settings line from the start of
+     *  token K to the end of the line, or "" if there are only K
+     *  tokens. */
+    String rest(int k) {
+        if (k >= _numTokens) {
+            return "";
+        }
+        return new String(_line, _tokenStarts[k],
+                          _tokenEnds[_numTokens - 1] - _tokenStarts[k]);
+    }
+
+    /** Read the current line, a settings line, into _line, recording the
+     *  bounds of its tokens. */
+    private void readSettings() {
+        int len = 0;
+        while (true) {
+            int c = nextChar();
+            if (c < 0) {
+                break;
+            }
+            if (len + 2 > _line.length) {
+                _line = Arrays.copyOf(_line, 2 * _line.length);
+            }
+            len += Character.toChars(c, _line, len);
+        }
+        _numTokens = 0;
+        int i = 0;
+        while (i < len) {
+            if (_line[i] < 0x80 && isSpace(_line[i])) {
+                i += 1;
+                continue;
+            }
+            if (_numTokens == _tokenStarts.length) {
+                _tokenStarts = Arrays.copyOf(_tokenStarts, 2 * _numTokens);
+                _tokenEnds = Arrays.copyOf(_tokenEnds, 2 * _numTokens);
+            }
+            _tokenStarts[_numTokens] = i;
+            while (i < len && !(_line[i] < 0x80 && isSpace(_line[i]))) {
+                i += 1;
+            }
+            _tokenEnds[_numTokens] = i;
+            _numTokens += 1;
+        }
+    }
+
+    /** Return the next code point of the current line, or -1 (having
+     *  ended the line) if there is none. */
+    private int nextChar() {
+        if (_lineDone) {
+            return -1;
+        }
+        if (!available(1)) {
+            _lineDone = true;
+            return -1;
+        }
+        int b = _buffer.get(_pos);
+        if (b < 0) {
+            return decode();
+        }
+        _pos += 1;
+        if (b == '\n' || b == '\r') {
+            _afterCR = b == '\r';
+            _lineDone = true;
+            return -1;
+        }
+        return b;
+    }
+
+    /** Discard characters up to the end of the current line. */
+    private void skipLine() {
+        while (nextChar() >= 0) {
+            continue;
+        }
+    }
+
+    /** Decode and return the code point whose UTF-8 encoding starts at
+     *  _pos, which holds a byte of 0x80 or more, leaving _pos after it and
+     *  _undecoded where it started.  A malformed sequence yields U+FFFD in
+     *  place of its first byte. */
+    private int decode() {
+        int b = _buffer.get(_pos) & 0xff;
+        int len = b >= 0xf0 ? 4 : b >= 0xe0 ? 3 : b >= 0xc0 ? 2 : 1;
+        if (len == 1 || b >= 0xf8 || !available(len)) {
+            _pos += 1;
+            return REPLACEMENT;
+        }
+        int c = b & (0x7f >> len);
+        for (int i = 1; i < len; i += 1) {
+            int cont = _buffer.get(_pos + i) & 0xff;
+            if ((cont & 0xc0) != 0x80) {
+                _pos += 1;
+                return REPLACEMENT;
+            }
+            c = (c << 6) | (cont & 0x3f);
+        }
+        _undecoded = _pos;
+        _pos += len;
+        if (!Character.isValidCodePoint(c)) {
+            return REPLACEMENT;
+        }
+        return c;
+    }
+
+    /** Return true iff at least N unread bytes are buffered, getting
+     *  more from more() if need be.  Returns false only at the end of the
+     *  input. */
+    private boolean available(int n) {
+        if (_limit - _pos >= n) {
+            return true;
+        }
+        if (_eof) {
+            return false;
+        }
+        _undecoded -= _pos;
+        setBuffer(more(_buffer, _pos, _limit, n));
+        _undecoded += _pos;
+        if (_limit - _pos < n) {
+            _eof = true;
+            return false;
+        }
+        return true;
+    }
+
+    /** Take my input from the remaining bytes of BUFFER. */
+    private void setBuffer(ByteBuffer buffer) {
+        _buffer = buffer;
+        _pos = buffer.position();
+        _limit = buffer.limit();
+        if (buffer.hasArray()) {
+            _array = buffer.array();
+            _arrayOffset = buffer.arrayOffset();
+        } else {
+            _array = null;
+        }
+    }
+
+    /** Return a buffer whose remaining bytes are the unread bytes of
+     *  BUFFER, those from START to END, followed by as many of the bytes
+     *  after them as are available, up to at least N in all unless the
+     *  input ends first.  This implementation moves the unread bytes to the
+     *  start of BUFFER and fills it from the channel. */
+    ByteBuffer more(ByteBuffer buffer, int start, int end, int n) {
+        buffer.limit(end).position(start);
+        buffer.compact();
+        try {
+            while (buffer.position() < n) {
+                if (_in.read(buffer) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+        return buffer.flip();
+    }
+
+    /** Return true iff C, a character below 0x80, is whitespace other
+     *  than a line terminator. */
+    private static boolean isSpace(int c) {
+        return c == ' ' || c == '\t' || c == '\u000B' || c == '\f';
+    }
+
+    /** Substitute for undecodable bytes. */
+    private static final int REPLACEMENT = 0xfffd;
+
+    /** Source of input, if any. */
+    private final ReadableByteChannel _in;
+    /** Buffered input: bytes _pos .. _limit-1 are unread. */
+    private ByteBuffer _buffer;
+    /** Bounds of the unread bytes in _buffer. */
+    private int _pos, _limit;
+    /** The array backing _buffer, if it has one, or null. */
+    private byte[] _array;
+    /** Index in _array of the start of _buffer. */
+    private int _arrayOffset;
+    /** Start of the sequence most recently decoded. */
+    private int _undecoded;
+    /** True once the input is exhausted. */
+    private boolean _eof;
+    /** True when the current line has been read to its end. */
+    private boolean _lineDone;
+    /** True if the last line ended with '\r', so that a following '\n'
+     *  belongs to it. */
+    private boolean _afterCR;
+    /** Characters of the current settings line. */
+    private char[] _line;
+    /** Bounds of the tokens of the current settings line in _line. */
+    private int[] _tokenStarts, _tokenEnds;
+    /** Number of tokens on the current settings line. */
+    private int _numTokens;
+}
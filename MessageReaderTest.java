@@ -0,0 +1,157 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the MessageReader class.
+ *  @author
+ */
+public class MessageReaderTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** If positive, the size of the windows in which reader() maps its
+     *  text from a file; otherwise reader() uses a channel. */
+    private int _window;
+
+    /** Return a reader of the UTF-8 encoding of TEXT.  If TRICKLE, the
+     *  channel it reads from yields one byte per read. */
+    private MessageReader reader(String text, boolean trickle) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (_window > 0) {
+            try {
+                Path file = Files.createTempFile("enigma", ".in");
+                file.toFile().deleteOnExit();
+                Files.write(file, bytes);
+                return new MappedMessageReader(FileChannel.open(file),
+                                               trickle ? 4 : _window);
+            } catch (IOException excp) {
+                throw new AssertionError(excp);
+            }
+        }
+        ReadableByteChannel in =
+            Channels.newChannel(new ByteArrayInputStream(bytes));
+        if (!trickle) {
+            return new MessageReader(in);
+        }
+        return new MessageReader(new ReadableByteChannel() {
+            public int read(ByteBuffer dst) throws java.io.IOException {
+                ByteBuffer one = ByteBuffer.allocate(1);
+                int n = in.read(one);
+                if (n > 0) {
+                    dst.put(one.array()[0]);
+                }
+                return n;
+            }
+
+            public boolean isOpen() {
+                return true;
+            }
+
+            public void close() {
+            }
+        });
+    }
+
+    /** Return the rest of the current message line of INPUT, read in
+     *  blocks of at most BLOCK characters. */
+    private String message(MessageReader input, int block) {
+        StringBuilder result = new StringBuilder();
+        char[] buf = new char[block];
+        int n;
+        while ((n = input.read(buf, 0, block)) > 0) {
+            result.append(buf, 0, n);
+        }
+        return result.toString();
+    }
+
+    /** Check that TEXT reads as the lines in EXPECTED, each a message
+     *  line with its whitespace removed or a settings line starting with
+     *  "*" and given as its tokens separated by "|". */
+    private void checkLines(String text, String... expected) {
+        for (boolean trickle : new boolean[] { false, true }) {
+            for (int block : new int[] { 2, 3, 64 }) {
+                MessageReader input = reader(text, trickle);
+                for (String line : expected) {
+                    String msg = text + " (block " + block + ")";
+                    int kind = input.nextLine();
+                    if (line.startsWith("*")) {
+                        assertEquals(msg, MessageReader.SETTINGS, kind);
+                        StringBuilder tokens = new StringBuilder();
+                        for (int k = 0; k < input.numTokens(); k += 1) {
+                            tokens.append(k == 0 ? "" : "|");
+                            tokens.append(input.token(k));
+                        }
+                        assertEquals(msg, line, tokens.toString());
+                    } else {
+                        assertEquals(msg, MessageReader.MESSAGE, kind);
+                        assertEquals(msg, line, message(input, block));
+                    }
+                }
+                assertEquals(MessageReader.END, input.nextLine());
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testLines() {
+        checkLines("* B Beta III\nFROM HIS\nSHOULDER\n",
+                   "*|B|Beta|III", "FROMHIS", "SHOULDER");
+        checkLines("\n\t \nA B\u000BC\fD", "", "", "ABCD");
+        checkLines("AB\r\nCD\rEF\r\r\nGH", "AB", "CD", "EF", "", "GH");
+        checkLines("*  X\t\tY (AB) (CD)  \r\n", "*|X|Y|(AB)|(CD)");
+        checkLines("\u0001A\u007f\n", "\u0001A\u007f");
+    }
+
+    @Test
+    public void testUnicode() {
+        checkLines("\u0391\u0392 \u0393\n* \u0394\u0395 \u0396\n\u20ac",
+                   "\u0391\u0392\u0393", "*|\u0394\u0395|\u0396", "\u20ac");
+        checkLines("A\ud835\udc00B\n", "A\ud835\udc00B");
+        checkLines("", new String[0]);
+    }
+
+    @Test
+    public void testMapped() {
+        _window = 5;
+        testLines();
+        testUnicode();
+        _window = 0;
+    }
+
+    @Test
+    public void testSkipsUnreadLines() {
+        MessageReader input = reader("ABCDEFG\n*  X  YZ (AB)\nQ", false);
+        assertEquals(MessageReader.MESSAGE, input.nextLine());
+        assertEquals(MessageReader.SETTINGS, input.nextLine());
+        assertEquals(4, input.numTokens());
+        assertEquals(2, input.tokenLength(2));
+        assertEquals('Z', input.tokenChar(2, 1));
+        assertEquals("YZ (AB)", input.rest(2));
+        assertEquals("", input.rest(4));
+        assertEquals(MessageReader.MESSAGE, input.nextLine());
+        assertEquals("Q", message(input, 8));
+        assertEquals(MessageReader.END, input.nextLine());
+    }
+}
@@ -0,0 +1,184 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import static enigma.EnigmaException.*;
+
+/** A writer of Main's output to a channel, as UTF-8.  The characters of
+ *  each message line are laid out in groups of five, each complete group
+ *  followed by a space, directly into a byte buffer that is written out
+ *  only when full and on flush().  Characters below 0x80 are stored as
+ *  bytes directly; only others go through the encoder.
+ *  @author
+ */
+class MessageWriter {
+
+    /** Size of my byte buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Room enough for a group of five characters, each taking at most
+     *  four bytes, and the space after it. */
+    private static final int GROUP_ROOM = 21;
+
+    /** A writer to OUT. */
+    MessageWriter(WritableByteChannel out) {
+        this(out, BUFFER_SIZE);
+    }
+
+    /** A writer to OUT that buffers about SIZE bytes. */
+    MessageWriter(WritableByteChannel out, int size) {
+        _out = out;
+        _bytes = new byte[Math.max(size, 2 * GROUP_ROOM)];
+        _buffer = ByteBuffer.wrap(_bytes);
+    }
+
+    /** Continue a message line of which GROUPED characters, modulo 5,
+     *  have already been written elsewhere. */
+    void continueLine(int grouped) {
+        _grouped = grouped % 5;
+    }
+
+    /** Write the LEN characters of MSG starting at OFF as the continuation
+     *  of the current message line. */
+    void write(char[] msg, int off, int len) {
+        byte[] bytes = _bytes;
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            if (_pos + GROUP_ROOM > bytes.length) {
+                flush();
+            }
+            int pos = _pos;
+            int stop = i + Math.min(5 - _grouped, end - i);
+            _grouped += stop - i;
+            while (i < stop) {
+                char c = msg[i];
+                i += 1;
+                if (c < 0x80 && _high == 0) {
+                    bytes[pos] = (byte) c;
+                    pos += 1;
+                } else {
+                    pos = encode(c, pos);
+                }
+            }
+            if (_grouped == 5) {
+                if (_high != 0) {
+                    bytes[pos] = '?';
+                    pos += 1;
+                    _high = 0;
+                }
+                bytes[pos] = ' ';
+                pos += 1;
+                _grouped = 0;
+            }
+            _pos = pos;
+        }
+    }
+
+    /** End the current message line. */
+    void endLine() {
+        if (_pos + 1 + LINE_SEPARATOR.length > _bytes.length) {
+            flush();
+        }
+        if (_high != 0) {
+            _bytes[_pos] = '?';
+            _pos += 1;
+            _high = 0;
+        }
+        System.arraycopy(LINE_SEPARATOR, 0, _bytes, _pos,
+                         LINE_SEPARATOR.length);
+        _pos += LINE_SEPARATOR.length;
+        _grouped = 0;
+    }
+
+    /** Write the LEN bytes of BYTES starting at OFF, already formatted
+     *  by another MessageWriter, as they are. */
+    void writeFormatted(byte[] bytes, int off, int len) {
+        if (_pos + len > _bytes.length) {
+            flush();
+        }
+        if (len > _bytes.length) {
+            drain(ByteBuffer.wrap(bytes, off, len));
+        } else {
+            System.arraycopy(bytes, off, _bytes, _pos, len);
+            _pos += len;
+        }
+    }
+
+    /** Write everything buffered so far to the channel. */
+    void flush() {
+        _buffer.limit(_pos).position(0);
+        drain(_buffer);
+        _pos = 0;
+    }
+
+    /** Write all the remaining bytes of BUFFER to the channel. */
+    private void drain(ByteBuffer buffer) {
+        try {
+            while (buffer.hasRemaining()) {
+                _out.write(buffer);
+            }
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Store the UTF-8 encoding of C into _bytes at POS, returning the
+     *  position after it.  A high surrogate is held until the character
+     *  after it; one that is not followed by a low surrogate in the same
+     *  group, like a low surrogate on its own, is written as '?'. */
+    private int encode(char c, int pos) {
+        byte[] bytes = _bytes;
+        if (_high != 0) {
+            char high = _high;
+            _high = 0;
+            if (Character.isLowSurrogate(c)) {
+                int cp = Character.toCodePoint(high, c);
+                bytes[pos] = (byte) (0xf0 | (cp >> 18));
+                bytes[pos + 1] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                bytes[pos + 2] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                bytes[pos + 3] = (byte) (0x80 | (cp & 0x3f));
+                return pos + 4;
+            }
+            bytes[pos] = '?';
+            pos += 1;
+        }
+        if (c < 0x80) {
+            bytes[pos] = (byte) c;
+            return pos + 1;
+        } else if (c < 0x800) {
+            bytes[pos] = (byte) (0xc0 | (c >> 6));
+            bytes[pos + 1] = (byte) (0x80 | (c & 0x3f));
+            return pos + 2;
+        } else if (Character.isHighSurrogate(c)) {
+            _high = c;
+            return pos;
+        } else if (Character.isLowSurrogate(c)) {
+            bytes[pos] = '?';
+            return pos + 1;
+        }
+        bytes[pos] = (byte) (0xe0 | (c >> 12));
+        bytes[pos + 1] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        bytes[pos + 2] = (byte) (0x80 | (c & 0x3f));
+        return pos + 3;
+    }
+
+    /** Line terminator, as printed by println. */
+    private static final byte[] LINE_SEPARATOR =
+        System.lineSeparator().getBytes();
+
+    /** Destination of output. */
+    private final WritableByteChannel _out;
+    /** Buffered output in _bytes[0 .. _pos-1]. */
+    private final byte[] _bytes;
+    /** _bytes as seen by _out. */
+    private final ByteBuffer _buffer;
+    /** Number of bytes buffered. */
+    private int _pos;
+    /** Number of characters in the last group of the current line. */
+    private int _grouped;
+    /** A high surrogate awaiting the rest of its pair, or 0. */
+    private char _high;
+}
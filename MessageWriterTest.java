@@ -0,0 +1,70 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the MessageWriter class.
+ *  @author
+ */
+public class MessageWriterTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Line terminator. */
+    private static final String NL = System.lineSeparator();
+
+    /** Return what a MessageWriter writes for the message lines LINES,
+     *  each given to write() in pieces of at most PIECE characters. */
+    private String written(int piece, String... lines) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MessageWriter out = new MessageWriter(Channels.newChannel(bytes));
+        for (String line : lines) {
+            char[] chars = line.toCharArray();
+            for (int i = 0; i < chars.length; i += piece) {
+                out.write(chars, i, Math.min(piece, chars.length - i));
+            }
+            out.endLine();
+        }
+        out.flush();
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testGroups() {
+        for (int piece : new int[] { 1, 3, 5, 100 }) {
+            assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW" + NL + NL
+                         + "ABCDE " + NL,
+                         written(piece, "QVPQSOKOILPUBKJZPISFXDW", "",
+                                 "ABCDE"));
+        }
+    }
+
+    @Test
+    public void testLongLine() {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 300_000; i += 1) {
+            char c = "\u00c4B\u20ac\ud835\udc00PQRSTUVWXYZ".charAt(i % 15);
+            msg.append(c);
+        }
+        String expected = TestUtils.grouped(msg.toString()) + NL;
+        assertEquals(expected, written(4096, msg.toString()));
+        assertEquals(expected, written(3, msg.toString()));
+    }
+
+    @Test
+    public void testBrokenPairs() {
+        assertEquals("ABCD? ?" + NL + "?" + NL,
+                     written(2, "ABCD\ud835\udc00", "\ud835"));
+    }
+}
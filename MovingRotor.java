@@ -14,41 +14,16 @@ class MovingRotor extends Rotor {
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
-        _permutation = perm;
-        _name = name;
-        _setting = 0;
         _notches = notches;
-        _alreadyMoved = false;
-
-    }
-
-    private int _setting = 0;
-
-    void set(int posn) {
-        _setting = posn;
-    }
-
-    int convertForward(int p) {
-        int result = _permutation.permute(p+_setting);
-        result = _permutation.wrap(result - _setting);
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
+        _notchAt = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); i += 1) {
+            _notchAt[alphabet().toInt(notches.charAt(i))] = true;
         }
-
-        return result;
-    }
-    int convertBackward(int e) {
-        int result = _permutation.invert(e+_setting);
-        result = _permutation.wrap(result - _setting);
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
-        }
-        return result;
     }
 
     @Override
     void advance() {
-        set(permutation().wrap(_setting + 1));
+        set(permutation().wrap(setting() + 1));
     }
 
     @Override
@@ -61,19 +36,12 @@ class MovingRotor extends Rotor {
 
 
     @Override
-    boolean atNotch() {
-        char[] notchLetters = _notches.toCharArray();
-        for (int i = 0; i < notchLetters.length; i += 1){
-            if (alphabet().toChar(_setting) == notchLetters[i]){
-                return true;
-            }
-        }
-        return false;
+    boolean atNotch(int posn) {
+        return _notchAt[posn];
     }
 
-    private Permutation _permutation;
-    private final String _name;
     private final String _notches;
-    public boolean _alreadyMoved;
+    /** True at each setting where I am at a notch. */
+    private final boolean[] _notchAt;
 
 }
@@ -95,4 +95,22 @@ public class MovingRotorTest {
                 rotor.convertBackward(alpha.indexOf('S')));
     }
 
+    @Test
+    public void checkUntabledRotor() {
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i <= Rotor.MAX_TABLED_SIZE; i += 1) {
+            chars.append((char) ('\u0100' + i));
+        }
+        Alphabet big = new Alphabet(chars.toString());
+        Permutation perm = new Permutation("(\u0100\u0103\u0101)", big);
+        rotor = new MovingRotor("big", perm, "");
+        rotor.set(big.size() - 1);
+        assertEquals(1, rotor.convertForward(2));
+        assertEquals(4, rotor.convertForward(1));
+        assertEquals(2, rotor.convertBackward(1));
+        assertEquals(1, rotor.convertBackward(4));
+        rotor.advance();
+        assertEquals(3, rotor.convertForward(0));
+        assertEquals(0, rotor.convertBackward(3));
+    }
 }
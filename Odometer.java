@@ -0,0 +1,322 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** The settings of the rotors in a machine's slots, together with the
+ *  pawl and notch mechanism that advances them.  Slot #0 holds the
+ *  reflector and the last slot the fast rotor.  Stepping works entirely
+ *  on primitive arrays, so it allocates nothing.  The arrays describing
+ *  each rotor's notches belong to the rotor (see NotchTables) and are
+ *  shared by every odometer holding it; an odometer's own state is only
+ *  the settings and which rotors are where.
+ *  @author
+ */
+class Odometer {
+
+    /** An odometer for NUMSLOTS empty slots over an alphabet of SIZE
+     *  characters. */
+    Odometer(int numSlots, int size) {
+        _size = size;
+        _positions = new int[numSlots];
+        _rotates = new boolean[numSlots];
+        _notches = new boolean[numSlots][];
+        _notchCounts = new int[numSlots][];
+        _freeIndex = new int[numSlots][];
+        _landings = new int[numSlots][];
+        _adjacent = new boolean[numSlots];
+    }
+
+    /** An odometer with the same slots and settings as OTHER, which
+     *  thereafter steps independently of it. */
+    Odometer(Odometer other) {
+        _size = other._size;
+        _positions = other._positions.clone();
+        _rotates = other._rotates.clone();
+        _notches = other._notches.clone();
+        _notchCounts = other._notchCounts.clone();
+        _freeIndex = other._freeIndex.clone();
+        _landings = other._landings.clone();
+        _adjacent = other._adjacent.clone();
+    }
+
+    /** Return the number of slots I have. */
+    int numSlots() {
+        return _positions.length;
+    }
+
+    /** Put ROTOR into slot K at its 0 setting.  This only records
+     *  references to ROTOR's notch tables, so it allocates nothing. */
+    void insert(int k, Rotor rotor) {
+        NotchTables tables = rotor.notchTables();
+        _positions[k] = 0;
+        _rotates[k] = rotor.rotates();
+        _notches[k] = tables._notches;
+        _notchCounts[k] = tables._counts;
+        _freeIndex[k] = tables._freeIndex;
+        _landings[k] = tables._landings;
+        _adjacent[k] = tables._adjacent;
+    }
+
+    /** Return the setting of the rotor in slot K. */
+    int position(int k) {
+        return _positions[k];
+    }
+
+    /** Set the rotor in slot K to setting POSN. */
+    void set(int k, int posn) {
+        _positions[k] = posn;
+    }
+
+    /** Advance the rotors by one keystroke.  The fast rotor always moves.
+     *  Any other rotating rotor moves if the rotor to its right is at a
+     *  notch, or if it is at a notch itself and the rotor to its left
+     *  rotates (the "double step").  Notches are read before anything
+     *  moves. */
+    void step() {
+        step(_positions);
+    }
+
+    /** Advance POSITIONS, settings for my slots, by one keystroke as for
+     *  step(). */
+    void step(int[] positions) {
+        int last = positions.length - 1;
+        boolean rightAtNotch = false;
+        for (int k = last; k > 0 && _rotates[k]; k -= 1) {
+            int posn = positions[k];
+            boolean atNotch = _notches[k][posn];
+            if (k == last || rightAtNotch || (atNotch && _rotates[k - 1])) {
+                positions[k] = posn + 1 == _size ? 0 : posn + 1;
+            }
+            rightAtNotch = atNotch;
+        }
+    }
+
+    /** Advance the rotors by N keystrokes, exactly as N calls of step()
+     *  would.  See positionsAfter. */
+    void seek(long n) {
+        positionsAfter(n, _positions);
+    }
+
+    /** Store in RESULT, which has one element per slot and may be my own
+     *  position array, the settings my rotors will have after N more
+     *  keystrokes.  My own settings are unchanged unless RESULT is that
+     *  array.
+     *
+     *  Apart from the fast rotor, which simply moves N times, each
+     *  rotating rotor moves once for each keystroke at which the rotor to
+     *  its right starts at a notch (a "push"), and once more for each
+     *  keystroke at which it starts at a notch itself.  When no rotor whose
+     *  left neighbour rotates has two adjacent notches, a rotor landing on
+     *  a notch always leaves it on the next keystroke, so each push
+     *  carries it to the next setting that is not a notch.  The number of
+     *  notches it passes in J pushes then comes straight from prefix counts
+     *  over those settings, and the keystrokes at which it sits on a notch
+     *  are the pushes that land there, delayed by one.  Counting this way
+     *  from the fast rotor leftwards takes time independent of N (at worst
+     *  quadratic in the number of rotors).
+     *
+     *  Otherwise, a rotor carried through a run of notches ignores the
+     *  pushes that arrive meanwhile, so that counts alone do not give its
+     *  moves.  The rotors are then stepped, but N is first reduced modulo
+     *  the period with which the settings repeat (see cycle), so that this
+     *  takes time bounded by the lead and period rather than by N. */
+    void positionsAfter(long n, int[] result) {
+        if (n < 0) {
+            throw error("cannot step backwards");
+        }
+        int last = _positions.length - 1;
+        boolean countable = true;
+        for (int k = last; k > 0 && _rotates[k]; k -= 1) {
+            if (_rotates[k - 1] && _adjacent[k]) {
+                countable = false;
+            }
+        }
+        if (!countable) {
+            int[] start = _positions.clone();
+            long[] cycle = cycle(start, n);
+            if (cycle != null && n > cycle[0]) {
+                n = cycle[0] + (n - cycle[0]) % cycle[1];
+            }
+            System.arraycopy(start, 0, result, 0, start.length);
+            for (long i = 0; i < n; i += 1) {
+                step(result);
+            }
+            return;
+        }
+        long[] moves = new long[_positions.length];
+        for (int k = last; k > 0 && _rotates[k]; k -= 1) {
+            if (k == last) {
+                moves[k] = n;
+            } else if (_rotates[k - 1]) {
+                moves[k] = effectivePushes(k, n) + notchStates(k, n);
+            } else {
+                moves[k] = notchStates(k + 1, n);
+            }
+        }
+        for (int k = 0; k <= last; k += 1) {
+            result[k] = (int) ((_positions[k] + moves[k] % _size) % _size);
+        }
+    }
+
+    /** Return { LEAD, PERIOD } for POSITIONS, settings for my slots: the
+     *  settings after P keystrokes from POSITIONS, for any P at least
+     *  LEAD, are those after P + PERIOD, and PERIOD is the least such.
+     *  Returns null if LEAD + PERIOD would be LIMIT or more.  Uses Brent's
+     *  algorithm, stepping copies of POSITIONS, which is unchanged. */
+    long[] cycle(int[] positions, long limit) {
+        int[] tortoise = positions.clone(), hare = positions.clone();
+        step(hare);
+        long power = 1, period = 1;
+        while (!Arrays.equals(tortoise, hare)) {
+            if (period >= limit) {
+                return null;
+            }
+            if (power == period) {
+                System.arraycopy(hare, 0, tortoise, 0, hare.length);
+                power *= 2;
+                period = 0;
+            }
+            step(hare);
+            period += 1;
+        }
+        System.arraycopy(positions, 0, tortoise, 0, positions.length);
+        System.arraycopy(positions, 0, hare, 0, positions.length);
+        for (long i = 0; i < period; i += 1) {
+            step(hare);
+        }
+        long lead = 0;
+        while (!Arrays.equals(tortoise, hare)) {
+            if (lead + period >= limit) {
+                return null;
+            }
+            step(tortoise);
+            step(hare);
+            lead += 1;
+        }
+        return new long[] { lead, period };
+    }
+
+    /** Return the number of keystrokes among the first M at which the
+     *  rotor in slot K starts at a notch.  K is the fast slot or a
+     *  rotating slot whose left neighbour rotates. */
+    private long notchStates(int k, long m) {
+        if (m <= 0) {
+            return 0;
+        }
+        int posn = _positions[k];
+        if (k == _positions.length - 1) {
+            return count(_notchCounts[k], posn, m);
+        }
+        boolean atNotch = _notches[k][posn];
+        int settled = atNotch ? (posn + 1) % _size : posn;
+        return (atNotch ? 1 : 0)
+            + count(_landings[k], _freeIndex[k][settled],
+                    effectivePushes(k, m - 1));
+    }
+
+    /** Return the number of keystrokes among the first M that push the
+     *  rotor in slot K on from a setting that is not a notch.  The only
+     *  push that finds it on a notch is one at the very first keystroke
+     *  when it starts on a notch. */
+    private long effectivePushes(int k, long m) {
+        if (m <= 0) {
+            return 0;
+        }
+        long pushes = notchStates(k + 1, m);
+        if (_notches[k][_positions[k]]
+            && _notches[k + 1][_positions[k + 1]]) {
+            pushes -= 1;
+        }
+        return pushes;
+    }
+
+    /** Return the number of increments of PREFIX, a table of running counts
+     *  over a cycle of PREFIX.length - 1 positions, in the M positions
+     *  starting at position START and wrapping around as needed. */
+    private static long count(int[] prefix, int start, long m) {
+        int cycle = prefix.length - 1;
+        int rem = (int) (m % cycle);
+        long total = m / cycle * prefix[cycle];
+        if (start + rem <= cycle) {
+            return total + prefix[start + rem] - prefix[start];
+        }
+        return total + prefix[cycle] - prefix[start]
+            + prefix[start + rem - cycle];
+    }
+
+    /** The notches of one rotor, in the forms that step() and
+     *  positionsAfter() use.  They never change once made. */
+    static final class NotchTables {
+
+        /** The tables for ROTOR. */
+        NotchTables(Rotor rotor) {
+            int size = rotor.size();
+            boolean[] notches = new boolean[size];
+            int[] counts = new int[size + 1];
+            int[] freeIndex = new int[size];
+            for (int p = 0; p < size; p += 1) {
+                notches[p] = rotor.atNotch(p);
+                counts[p + 1] = counts[p] + (notches[p] ? 1 : 0);
+            }
+            int numFree = size - counts[size];
+            int[] landings = new int[numFree + 1];
+            boolean adjacent = false;
+            numFree = 0;
+            for (int p = 0; p < size; p += 1) {
+                boolean nextIsNotch = notches[(p + 1) % size];
+                if (notches[p]) {
+                    freeIndex[p] = -1;
+                    adjacent |= nextIsNotch;
+                } else {
+                    freeIndex[p] = numFree;
+                    landings[numFree + 1] =
+                        landings[numFree] + (nextIsNotch ? 1 : 0);
+                    numFree += 1;
+                }
+            }
+            _notches = notches;
+            _counts = counts;
+            _freeIndex = freeIndex;
+            _landings = landings;
+            _adjacent = adjacent;
+        }
+
+        /** Entry P is true iff the rotor is at a notch at setting P. */
+        final boolean[] _notches;
+        /** Entry P is the number of notches below setting P. */
+        final int[] _counts;
+        /** Entry P is the index of setting P among the settings that are
+         *  not notches, in increasing order, or -1 if P is a notch. */
+        final int[] _freeIndex;
+        /** Entry I is the number of the first I settings that are not
+         *  notches which are followed by a notch. */
+        final int[] _landings;
+        /** True iff the rotor has notches at two consecutive settings
+         *  (counting the last and first as consecutive). */
+        final boolean _adjacent;
+    }
+
+    /** Number of characters in the alphabet. */
+    private final int _size;
+    /** Current setting of the rotor in each slot. */
+    private final int[] _positions;
+    /** True for each slot whose rotor has a ratchet. */
+    private final boolean[] _rotates;
+    /** Entry [K][P] is true iff the rotor in slot K is at a notch at
+     *  setting P. */
+    private final boolean[][] _notches;
+    /** Entry [K][P] is the number of notches of slot K below setting P. */
+    private final int[][] _notchCounts;
+    /** Entry [K][P] is the index of setting P among the settings of slot
+     *  K that are not notches, in increasing order, or -1 if P is a
+     *  notch. */
+    private final int[][] _freeIndex;
+    /** Entry [K][I] is the number of the first I settings of slot K that
+     *  are not notches which are followed by a notch. */
+    private final int[][] _landings;
+    /** True for each slot whose rotor has notches at two consecutive
+     *  settings (counting the last and first as consecutive). */
+    private final boolean[] _adjacent;
+}
@@ -3,11 +3,18 @@ package enigma;
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
- *  to the characters of an alphabet.
+ *  to the characters of an alphabet.  Each permutation finds its kind when
+ *  it is made: the identity, an involution (its own inverse, as are a
+ *  plugboard of swaps and a reflector), or general.  An involution keeps a
+ *  single table for both directions, and users such as Machine may check
+ *  the kind once and take the cheapest path from then on.
  *  @author
  */
 class Permutation {
 
+    /** Kinds of permutation. */
+    static final int IDENTITY = 0, INVOLUTION = 1, GENERAL = 2;
+
     /**
      * Set this Permutation to that specified by CYCLES, a string in the
      * form "(cccc) (cc) ..." where the c's are characters in ALPHABET, which
@@ -17,17 +24,83 @@ class Permutation {
      */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        _cycles = cycles;
-        _cycles = _cycles.replaceAll("\\s","");
-        _sepcycles = _cycles.split("\\)");
+        int[] forward = new int[alphabet.size()];
+        int[] inverse = new int[alphabet.size()];
+        for (int i = 0; i < forward.length; i += 1) {
+            forward[i] = -1;
+        }
+        String spec = cycles.replaceAll("\\s", "");
+        int start = 0;
+        while (start < spec.length()) {
+            int end = spec.indexOf(')', start);
+            if (spec.charAt(start) != '(' || end < 0) {
+                throw error("badly formed cycles: %s", cycles);
+            }
+            String cycle = spec.substring(start + 1, end);
+            if (cycle.isEmpty() || cycle.indexOf('(') >= 0) {
+                throw error("badly formed cycles: %s", cycles);
+            }
+            addCycle(cycle, forward, inverse);
+            start = end + 1;
+        }
+        for (int i = 0; i < forward.length; i += 1) {
+            if (forward[i] == -1) {
+                forward[i] = i;
+                inverse[i] = i;
+            }
+        }
+        _forward = forward;
+        _kind = kind(forward);
+        _inverse = _kind == GENERAL ? inverse : forward;
+    }
+
+    /**
+     * A permutation of the indices of ALPHABET taking each index I to
+     * FORWARD[I], whose inverse takes I to INVERSE[I].  The arrays are
+     * used as they are, and must be inverses of each other.
+     */
+    Permutation(int[] forward, int[] inverse, Alphabet alphabet) {
+        if (forward.length != alphabet.size()
+            || inverse.length != alphabet.size()) {
+            throw error("permutation does not match its alphabet");
+        }
+        _alphabet = alphabet;
+        _forward = forward;
+        _kind = kind(forward);
+        _inverse = _kind == GENERAL ? inverse : forward;
+    }
+
+    /** Return the kind of the permutation taking each index I to
+     *  FORWARD[I]. */
+    private static int kind(int[] forward) {
+        boolean identity = true;
+        for (int i = 0; i < forward.length; i += 1) {
+            if (forward[forward[i]] != i) {
+                return GENERAL;
+            }
+            identity &= forward[i] == i;
+        }
+        return identity ? IDENTITY : INVOLUTION;
     }
 
     /**
      * Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     * c0c1...cm.
+     * c0c1...cm, recording images in FORWARD and preimages in INVERSE.
+     * A character that already has an image keeps it, while its preimage
+     * is taken from the latest cycle in which it appears.
      */
-    private void addCycle(String cycle) {
-        _cycles = _cycles + "(" + cycle + ")";
+    private void addCycle(String cycle, int[] forward, int[] inverse) {
+        int first = _alphabet.toInt(cycle.charAt(0));
+        int from = first;
+        for (int k = 1; k <= cycle.length(); k += 1) {
+            int to = k == cycle.length() ? first
+                : _alphabet.toInt(cycle.charAt(k));
+            if (forward[from] == -1) {
+                forward[from] = to;
+            }
+            inverse[to] = from;
+            from = to;
+        }
     }
 
     /**
@@ -45,16 +118,13 @@ class Permutation {
      * Returns the size of the alphabet I permute.
      */
     int size() {
-        return _alphabet.size();
+        return _forward.length;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        int index = wrap(p);
-        char q = _alphabet.toChar(index);
-        char ans = permute(q);
-        return _alphabet.toInt(ans);
+        return _forward[wrap(p)];
     }
 
     /**
@@ -62,10 +132,7 @@ class Permutation {
      * to  C modulo the alphabet size.
      */
     int invert(int c) {
-        int index = wrap(c);
-        char q = _alphabet.toChar(index);
-        char ans = invert(q);
-        return _alphabet.toInt(ans);
+        return _inverse[wrap(c)];
     }
 
     /**
@@ -73,82 +140,51 @@ class Permutation {
      * in ALPHABET, and converting the result to a character of ALPHABET.
      */
     char permute(char p) {
-        if (!(_alphabet.contains(p))){
-            throw new EnigmaException("not in alphabet");
-        }
-        else{
-        char return_char = p;
-        int appears = _cycles.indexOf(p);
-        if (appears == -1) {
-            return p;
-        } else {
-        for (int cycle_index = 0; cycle_index < _sepcycles.length; cycle_index += 1) {
-            for (int index = 0; index < _sepcycles[cycle_index].length(); index += 1) {
-                if ((_sepcycles[cycle_index].charAt(index) == p) && ((index + 1) == _sepcycles[cycle_index].length())) {
-                    return_char = _sepcycles[cycle_index].charAt(1);
-                    return return_char;
-                } else {
-                    if (_sepcycles[cycle_index].charAt(index) == p) {
-                        return_char = _sepcycles[cycle_index].charAt(index+1);
-                        return return_char;
-                }
-            }
-        }
-    }
-        return return_char;
-        }
-    }
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
+
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        if (!(_alphabet.contains(c))) {
-            throw new EnigmaException("not in alphabet");
-        } else {
-            char return_char = c;
-            int appears = _cycles.indexOf(c);
-            if (appears == -1) {
-                return c;
-            } else {
-                for (int cycle_index = (_sepcycles.length - 1); cycle_index > -1; cycle_index -= 1) {
-                    for (int index = _sepcycles[cycle_index].length() - 1; index > -1; index -= 1) {
-                        if ((_sepcycles[cycle_index].charAt(index) == c) && ((index - 1) == 0)) {
-                            return_char = _sepcycles[cycle_index].charAt(_sepcycles[cycle_index].length() - 1);
-                            return return_char;
-                        } else {
-                            if (_sepcycles[cycle_index].charAt(index) == c) {
-                                return_char = _sepcycles[cycle_index].charAt(index - 1);
-                                return return_char;
-                            }
-                        }
-                    }
-                }
-            }
-            return return_char;
-        }
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
     }
 
-                        /** Return the alphabet used to initialize this Permutation. */
-                        Alphabet alphabet () {
-                            return _alphabet;
-                        }
+    /** Return my kind: IDENTITY, INVOLUTION, or GENERAL. */
+    int kind() {
+        return _kind;
+    }
 
-                        /** Return true iff this permutation is a derangement (i.e., a
-                         *  permutation for which no value maps to itself). */
-                        boolean derangement () {
-                            for (int i = 0; i < size(); i += 1){
-                                if (permute(i) == i) {
-                                    return false;
-                                }
-                            }
-                            return true;
-                        }
+    /** Return the image of each index under this permutation, as an
+     *  array which must not be modified. */
+    int[] table() {
+        return _forward;
+    }
+
+    /** Return the alphabet used to initialize this Permutation. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return true iff this permutation is a derangement (i.e., a
+     *  permutation for which no value maps to itself). */
+    boolean derangement() {
+        for (int i = 0; i < size(); i += 1) {
+            if (_forward[i] == i) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-                        /** Alphabet of this permutation. */
-                        public Alphabet _alphabet;
+    /** Alphabet of this permutation. */
+    public final Alphabet _alphabet;
 
-                        public String _cycles;
+    /** The image of each index under this permutation. */
+    private final int[] _forward;
 
-                        public String[] _sepcycles;
+    /** The image of each index under the inverse of this permutation:
+     *  the same array as _forward unless I am GENERAL. */
+    private final int[] _inverse;
 
-                        // FIXME: ADDITIONAL FIELDS HERE, AS NEEDED
-                    }
\ No newline at end of file
+    /** My kind. */
+    private final int _kind;
+}
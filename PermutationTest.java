@@ -129,4 +129,42 @@ public class PermutationTest {
         p.permute('Z');
 
     }
-}
\ No newline at end of file
+
+    @Test(expected = EnigmaException.class)
+    public void testBadlyFormedCycles() {
+        new Permutation("(BAC) DA", new Alphabet("ABCD"));
+    }
+
+    @Test
+    public void checkNavalTables() {
+        for (String name : NAVALA_MAP.keySet()) {
+            perm = new Permutation(NAVALA.get(name), UPPER);
+            checkPerm(name, UPPER_STRING, NAVALA_MAP.get(name), alpha);
+        }
+    }
+
+    @Test
+    public void testKinds() {
+        assertEquals(Permutation.IDENTITY,
+                     new Permutation("", UPPER).kind());
+        assertEquals(Permutation.IDENTITY,
+                     new Permutation("(A)", UPPER).kind());
+        assertEquals(Permutation.INVOLUTION,
+                     new Permutation("(AB) (CD)", UPPER).kind());
+        assertEquals(Permutation.INVOLUTION,
+                     new Permutation(NAVALA.get("B"), UPPER).kind());
+        assertEquals(Permutation.GENERAL,
+                     new Permutation("(ABC)", UPPER).kind());
+        assertEquals(Permutation.GENERAL,
+                     new Permutation(NAVALA.get("I"), UPPER).kind());
+    }
+
+    @Test
+    public void testInvolutionInverse() {
+        perm = new Permutation("(AZ) (BY) (MN)", UPPER);
+        for (int i = 0; i < UPPER.size(); i += 1) {
+            assertEquals(perm.permute(i), perm.invert(i));
+            assertEquals(i, perm.invert(perm.permute(i)));
+        }
+    }
+}
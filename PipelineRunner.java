@@ -0,0 +1,362 @@
+package enigma;
+
+import java.util.concurrent.locks.LockSupport;
+
+import static enigma.EnigmaException.*;
+
+/** Converts the messages read by a MessageReader as Main does, with
+ *  reading, converting, and writing each on its own thread.  The stages
+ *  pass blocks of characters along a ring of preallocated blocks: the
+ *  reader fills a block, the converter converts it in place, and the
+ *  writer formats it and hands it back to the reader.  Each stage
+ *  publishes the number of blocks it has finished, which is all another
+ *  stage needs to know, so each link is a single-producer,
+ *  single-consumer queue and blocks stay in input order.  A stage that
+ *  finds nothing to do spins briefly and then parks until the stage
+ *  ahead of it publishes.
+ *  @author
+ */
+class PipelineRunner {
+
+    /** Number of characters in a block. */
+    static final int BLOCK = 1 << 14;
+
+    /** Number of blocks in the ring. */
+    static final int SLOTS = 16;
+
+    /** Number of times a stage checks for work before parking. */
+    private static final int SPINS = 200;
+
+    /** A runner converting with MACHINE. */
+    PipelineRunner(Machine machine) {
+        _machine = machine;
+        _blocks = new Block[SLOTS];
+        for (int i = 0; i < SLOTS; i += 1) {
+            _blocks[i] = new Block();
+        }
+        _read = new Stage();
+        _converted = new Stage();
+        _written = new Stage();
+    }
+
+    /** Convert the messages in INPUT, writing the results to OUTPUT, as
+     *  Main does.  Reading happens on the calling thread. */
+    void run(MessageReader input, MessageWriter output) {
+        Thread converter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    convert();
+                } catch (Throwable excp) {
+                    fail(excp);
+                }
+            }
+        }, "enigma-convert");
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(output);
+                } catch (Throwable excp) {
+                    fail(excp);
+                }
+            }
+        }, "enigma-write");
+        _read.consumer = converter;
+        _converted.consumer = writer;
+        _written.consumer = Thread.currentThread();
+        converter.setDaemon(true);
+        writer.setDaemon(true);
+        converter.start();
+        writer.start();
+        try {
+            read(input);
+            converter.join();
+            writer.join();
+        } catch (InterruptedException excp) {
+            fail(excp);
+        }
+        Throwable failure = _failure;
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw error("%s", failure);
+        }
+    }
+
+    /** Fill blocks from INPUT, starting a new block at each settings line
+     *  and whenever one is full.  An error in reading ends the input, to
+     *  be reported once everything before it is written. */
+    private void read(MessageReader input) {
+        long next = 0;
+        Block block = claim(next);
+        if (block == null) {
+            return;
+        }
+        try {
+            while (true) {
+                int kind = input.nextLine();
+                if (kind == MessageReader.END) {
+                    break;
+                }
+                if (kind == MessageReader.SETTINGS && !block.isEmpty()
+                    || block.room() < 2 || block.lineEndsFull()) {
+                    _read.publish(next + 1);
+                    next += 1;
+                    block = claim(next);
+                    if (block == null) {
+                        return;
+                    }
+                }
+                if (kind == MessageReader.SETTINGS) {
+                    block._settings = input.tokens();
+                    continue;
+                }
+                while (block.read(input) > 0) {
+                    if (block.room() < 2) {
+                        _read.publish(next + 1);
+                        next += 1;
+                        block = claim(next);
+                        if (block == null) {
+                            return;
+                        }
+                    }
+                }
+                block.endLine();
+            }
+        } catch (EnigmaException excp) {
+            block._error = excp;
+        }
+        block._last = true;
+        _read.publish(next + 1);
+    }
+
+    /** Return block #N, emptied, once the writer has finished with it, or
+     *  null if the pipeline has stopped. */
+    private Block claim(long n) {
+        if (_written.await(n - SLOTS + 1) < n - SLOTS + 1) {
+            return null;
+        }
+        Block block = _blocks[(int) (n % SLOTS)];
+        block.clear();
+        return block;
+    }
+
+    /** Convert each block as it is read, up to the last. */
+    private void convert() {
+        boolean configured = false;
+        for (long n = 0; true; n += 1) {
+            if (_read.await(n + 1) < n + 1) {
+                return;
+            }
+            Block block = _blocks[(int) (n % SLOTS)];
+            int k = 0;
+            try {
+                if (block._settings != null) {
+                    Main.setUp(_machine, block._settings);
+                    configured = true;
+                }
+                for (k = 0; k <= block._numLineEnds; k += 1) {
+                    int start = block.start(k), len = block.end(k) - start;
+                    if (len > 0) {
+                        if (!configured) {
+                            throw error("no configuration");
+                        }
+                        _machine.convert(block._text, start, len,
+                                         block._text, start);
+                    }
+                }
+                if (block._last && !configured && block._error == null) {
+                    throw error("no configuration");
+                }
+            } catch (EnigmaException excp) {
+                block._error = excp;
+                block._good = k;
+                block._last = true;
+            }
+            boolean last = block._last;
+            _converted.publish(n + 1);
+            if (last) {
+                return;
+            }
+        }
+    }
+
+    /** Write each block to OUTPUT as it is converted, up to the last. */
+    private void write(MessageWriter output) {
+        for (long n = 0; true; n += 1) {
+            if (_converted.await(n + 1) < n + 1) {
+                return;
+            }
+            Block block = _blocks[(int) (n % SLOTS)];
+            int good = Math.min(block._good, block._numLineEnds + 1);
+            for (int k = 0; k < good; k += 1) {
+                int start = block.start(k);
+                output.write(block._text, start, block.end(k) - start);
+                if (k < block._numLineEnds) {
+                    output.endLine();
+                }
+            }
+            EnigmaException error = block._error;
+            boolean last = block._last;
+            _written.publish(n + 1);
+            if (error != null) {
+                fail(error);
+            }
+            if (last) {
+                return;
+            }
+        }
+    }
+
+    /** Record FAILURE, unless something failed earlier, and stop all
+     *  stages. */
+    private void fail(Throwable failure) {
+        synchronized (this) {
+            if (_failure == null) {
+                _failure = failure;
+            }
+        }
+        _stopped = true;
+        _read.wake();
+        _converted.wake();
+        _written.wake();
+    }
+
+    /** The count of blocks one stage has finished with, and the thread
+     *  waiting for it to grow. */
+    private final class Stage {
+
+        /** Set my count to COUNT and wake my consumer if it is parked. */
+        void publish(long count) {
+            _count = count;
+            if (_parked) {
+                wake();
+            }
+        }
+
+        /** Wake my consumer. */
+        void wake() {
+            Thread thread = consumer;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        /** Wait until my count is at least MIN or the pipeline stops, and
+         *  return my count.  Called only by my consumer. */
+        long await(long min) {
+            long count = _count;
+            for (int i = 0; count < min && i < SPINS; i += 1) {
+                Thread.onSpinWait();
+                count = _count;
+            }
+            while (count < min && !_stopped) {
+                _parked = true;
+                count = _count;
+                if (count < min && !_stopped) {
+                    LockSupport.park(this);
+                    count = _count;
+                }
+                _parked = false;
+            }
+            return count;
+        }
+
+        /** The thread that waits on me. */
+        volatile Thread consumer;
+        /** Number of blocks finished. */
+        private volatile long _count;
+        /** True while my consumer is parked or about to park. */
+        private volatile boolean _parked;
+    }
+
+    /** A block of text from one or more message lines, with whitespace
+     *  removed, possibly preceded by a settings line. */
+    private static final class Block {
+
+        /** An empty block. */
+        Block() {
+            _text = new char[BLOCK];
+            _lineEnds = new int[BLOCK];
+        }
+
+        /** Make me empty. */
+        void clear() {
+            _settings = null;
+            _length = 0;
+            _numLineEnds = 0;
+            _good = Integer.MAX_VALUE;
+            _error = null;
+            _last = false;
+        }
+
+        /** Return true iff I hold nothing. */
+        boolean isEmpty() {
+            return _settings == null && _length == 0 && _numLineEnds == 0;
+        }
+
+        /** Return the number of characters I have room for. */
+        int room() {
+            return _text.length - _length;
+        }
+
+        /** Return true iff I can hold no more line ends. */
+        boolean lineEndsFull() {
+            return _numLineEnds == _lineEnds.length;
+        }
+
+        /** Add characters of the current message line of INPUT, as many
+         *  as fit, returning how many. */
+        int read(MessageReader input) {
+            int n = input.read(_text, _length, room());
+            _length += n;
+            return n;
+        }
+
+        /** End the current message line. */
+        void endLine() {
+            _lineEnds[_numLineEnds] = _length;
+            _numLineEnds += 1;
+        }
+
+        /** Return the index in _text of the start of segment K, the
+         *  part of my text on my Kth line, 0 <= K <= _numLineEnds. */
+        int start(int k) {
+            return k == 0 ? 0 : _lineEnds[k - 1];
+        }
+
+        /** Return the index in _text of the end of segment K. */
+        int end(int k) {
+            return k < _numLineEnds ? _lineEnds[k] : _length;
+        }
+
+        /** Tokens of a settings line that precedes my text, or null. */
+        String[] _settings;
+        /** My characters, in _text[0 .. _length-1]. */
+        final char[] _text;
+        /** Number of characters I hold. */
+        int _length;
+        /** Indices in _text at which lines end, in order. */
+        final int[] _lineEnds;
+        /** Number of line ends I hold. */
+        int _numLineEnds;
+        /** Number of my segments that may be written. */
+        int _good;
+        /** What went wrong at the end of my good segments, or null. */
+        EnigmaException _error;
+        /** True iff no block follows me. */
+        boolean _last;
+    }
+
+    /** Machine doing the converting. */
+    private final Machine _machine;
+    /** The ring of blocks; block #N is _blocks[N % SLOTS]. */
+    private final Block[] _blocks;
+    /** Counts of blocks read, converted, and written. */
+    private final Stage _read, _converted, _written;
+    /** The first failure of any stage, or null. */
+    private volatile Throwable _failure;
+    /** True once any stage has failed. */
+    private volatile boolean _stopped;
+}
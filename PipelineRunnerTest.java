@@ -0,0 +1,124 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the PipelineRunner class.
+ *  @author
+ */
+public class PipelineRunnerTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    /** Line terminator. */
+    private static final String NL = System.lineSeparator();
+
+    /** Return an unset machine with naval rotors B, Beta, I, II, and III. */
+    private Machine naval() {
+        return new Machine(AZ, 5, 3, TestUtils.navalRotors(
+            AZ, "B", "Beta", "I", "II", "III"));
+    }
+
+    /** Return what a PipelineRunner writes for INPUT, adding it to
+     *  ERRORS rather than throwing when it fails. */
+    private String run(String input, StringBuilder errors) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MessageWriter out = new MessageWriter(Channels.newChannel(bytes));
+        try {
+            new PipelineRunner(naval()).run(
+                new MessageReader(Channels.newChannel(new ByteArrayInputStream(
+                    input.getBytes(StandardCharsets.UTF_8)))), out);
+        } catch (EnigmaException excp) {
+            errors.append(excp.getMessage());
+        } finally {
+            out.flush();
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Return MSG converted by a machine set up by SETTINGS, in groups. */
+    private String expected(String[] settings, String msg) {
+        Machine mach = naval();
+        Main.setUp(mach, settings);
+        return TestUtils.grouped(mach.convert(msg)) + NL;
+    }
+
+    @Test
+    public void testBlocksInOrder() {
+        Random random = new Random(13);
+        StringBuilder input = new StringBuilder(NL);
+        StringBuilder output = new StringBuilder(NL);
+        for (int k = 0; k < 3 * PipelineRunner.SLOTS; k += 1) {
+            int len = k == 5
+                ? 2 * PipelineRunner.SLOTS * PipelineRunner.BLOCK + 3
+                : random.nextInt(300);
+            char[] msg = new char[len];
+            for (int i = 0; i < len; i += 1) {
+                msg[i] = (char) ('A' + random.nextInt(26));
+            }
+            String[] settings = { "*", "B", "Beta", "I", "II", "III",
+                                  k % 2 == 0 ? "AXLE" : "QEVA", "(AZ)" };
+            input.append(String.join(" ", settings)).append("\n");
+            input.append(msg).append("\n\n");
+            output.append(expected(settings, new String(msg))).append(NL);
+        }
+        StringBuilder errors = new StringBuilder();
+        assertEquals(output.toString(), run(input.toString(), errors));
+        assertEquals("", errors.toString());
+    }
+
+    @Test
+    public void testManyLines() {
+        String[] settings = { "*", "B", "Beta", "I", "II", "III", "AXLE" };
+        StringBuilder input = new StringBuilder(String.join(" ", settings));
+        StringBuilder msg = new StringBuilder();
+        input.append("\n");
+        for (int k = 0; k < 3 * PipelineRunner.BLOCK; k += 1) {
+            input.append("AB\n");
+            msg.append("AB");
+        }
+        Machine mach = naval();
+        Main.setUp(mach, settings);
+        String converted = mach.convert(msg.toString());
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < converted.length(); i += 2) {
+            output.append(converted, i, i + 2).append(NL);
+        }
+        StringBuilder errors = new StringBuilder();
+        assertEquals(output.toString(), run(input.toString(), errors));
+        assertEquals("", errors.toString());
+    }
+
+    @Test
+    public void testErrors() {
+        String[] good = { "*", "B", "Beta", "I", "II", "III", "AAAA" };
+        StringBuilder errors = new StringBuilder();
+        assertEquals(expected(good, "HELLO"),
+                     run("* B Beta I II III AAAA\nHELLO\n"
+                         + "* B Beta I II III A\nX\n", errors));
+        assertEquals("short", errors.toString());
+        errors.setLength(0);
+        assertEquals(NL, run("\nHELLO\n", errors));
+        assertEquals("no configuration", errors.toString());
+        errors.setLength(0);
+        assertEquals(expected(good, "HELLO"),
+                     run("* B Beta I II III AAAA\nHELLO\nH3LLO\n",
+                         errors));
+        assertTrue(errors.length() > 0);
+    }
+}
@@ -0,0 +1,519 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A search for the plugboard of a message whose rotors and rotor
+ *  settings are known, by hill-climbing on the quadgram score of the
+ *  decryption.  Each climb starts from a random plugboard and tries, in
+ *  turn, every change that the pair of letters x and y can make to it:
+ *  plugging them together if both are free, unplugging them if they are
+ *  plugged together, and otherwise exchanging partners so that x and y are
+ *  plugged together.  A change that improves the score is kept, and the
+ *  climb ends when no change does.  Many climbs run at once on a
+ *  ForkJoinPool, and the best result of all of them is kept.
+ *
+ *  The substitution made by the rotors at each position of the message
+ *  is tabulated once.  A climb then keeps the decryption and the score of
+ *  each of its quadgrams up to date, so that trying a change costs time
+ *  proportional to the positions it affects rather than to the length of
+ *  the message: a change to the plugs of a set of letters affects only
+ *  the positions where one of them is the ciphertext letter or the letter
+ *  leaving the rotors.  Trying a change allocates nothing.
+ *  @author
+ */
+class PlugboardClimb {
+
+    /** The result of a climb. */
+    static class Result {
+
+        /** The result of climb number RESTART, which found PLUGBOARD, a
+         *  string of cycles, whose decryption PLAINTEXT has quadgram score
+         *  SCORE. */
+        Result(int restart, String plugboard, String plaintext,
+               double score) {
+            _restart = restart;
+            _plugboard = plugboard;
+            _plaintext = plaintext;
+            _score = score;
+        }
+
+        /** Return my plugboard, as cycles in the form used by Permutation
+         *  and in settings lines. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return the decryption of the message with my plugboard. */
+        String plaintext() {
+            return _plaintext;
+        }
+
+        /** Return the total quadgram log probability of plaintext(). */
+        double score() {
+            return _score;
+        }
+
+        /** Return true iff I am better than OTHER: I score higher, or
+         *  score the same and come from an earlier climb. */
+        boolean betterThan(Result other) {
+            return other == null || _score > other._score
+                || _score == other._score && _restart < other._restart;
+        }
+
+        /** Number of the climb that found me. */
+        private final int _restart;
+        /** Plugboard cycles. */
+        private final String _plugboard;
+        /** Decryption. */
+        private final String _plaintext;
+        /** Quadgram score of _plaintext. */
+        private final double _score;
+    }
+
+    /** A search for the plugboard with which MACHINE, whose rotors are
+     *  inserted and set to their settings at the start of the message,
+     *  would decrypt CIPHER, a text of at least four letters in its
+     *  alphabet, scoring decryptions with QUADGRAMS.  Plugboards have at
+     *  most MAXPAIRS pairs. */
+    PlugboardClimb(Machine machine, String cipher, Quadgrams quadgrams,
+                   int maxPairs) {
+        Alphabet alpha = machine.alphabet();
+        if (quadgrams.alphabet().size() != alpha.size()) {
+            throw error("quadgrams do not fit the alphabet");
+        }
+        if (cipher.length() < 4) {
+            throw error("ciphertext too short");
+        }
+        _alphabet = alpha;
+        _size = alpha.size();
+        _length = cipher.length();
+        _table = quadgrams.table();
+        _quadgrams = quadgrams;
+        _maxPairs = Math.min(maxPairs, _size / 2);
+        _cipher = new int[_length];
+        _rotors = new int[_length * _size];
+        int[] settings = machine.settingsAfter(0);
+        int[] row = new int[_size];
+        for (int i = 0; i < _length; i += 1) {
+            _cipher[i] = alpha.toInt(cipher.charAt(i));
+            machine.stepSettings(settings);
+            machine.rotorSubstitution(settings, row);
+            System.arraycopy(row, 0, _rotors, i * _size, _size);
+        }
+        _byCipherStart = new int[_size + 1];
+        for (int i = 0; i < _length; i += 1) {
+            _byCipherStart[_cipher[i] + 1] += 1;
+        }
+        for (int c = 0; c < _size; c += 1) {
+            _byCipherStart[c + 1] += _byCipherStart[c];
+        }
+        _byCipher = new int[_length];
+        int[] next = _byCipherStart.clone();
+        for (int i = 0; i < _length; i += 1) {
+            _byCipher[next[_cipher[i]]] = i;
+            next[_cipher[i]] += 1;
+        }
+    }
+
+    /** Run RESTARTS climbs on POOL, climb k drawing its random choices
+     *  from a generator seeded with SEED + k, and return the best
+     *  result. */
+    Result climb(int restarts, long seed, ForkJoinPool pool) {
+        if (restarts < 1) {
+            throw error("a search needs at least one climb");
+        }
+        _best = null;
+        pool.invoke(new ClimbChunk(seed, 0, restarts));
+        return _best;
+    }
+
+    /** Return the number of climbs finished so far. */
+    long restarts() {
+        return _restarts.get();
+    }
+
+    /** Return the number of changes to a plugboard tried so far. */
+    long evaluations() {
+        return _evaluations.get();
+    }
+
+    /** Largest number of climbs made by one task. */
+    static final int RESTARTS_PER_TASK = 4;
+
+    /** Record RESULT if it is the best so far. */
+    private synchronized void offer(Result result) {
+        if (result.betterThan(_best)) {
+            _best = result;
+        }
+    }
+
+    /** A task making a range of climbs. */
+    private class ClimbChunk extends RecursiveAction {
+
+        /** A task that makes climbs LO .. HI-1 with seeds from SEED. */
+        ClimbChunk(long seed, int lo, int hi) {
+            _seed = seed;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= RESTARTS_PER_TASK) {
+                Climber climber = new Climber();
+                for (int k = _lo; k < _hi; k += 1) {
+                    offer(climber.climb(k, new SplittableRandom(_seed + k)));
+                }
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new ClimbChunk(_seed, _lo, mid),
+                          new ClimbChunk(_seed, mid, _hi));
+            }
+        }
+
+        /** Seed of climb 0. */
+        private final long _seed;
+        /** Bounds of my climbs. */
+        private final int _lo, _hi;
+    }
+
+    /** The state of one climb: a plugboard, the decryption it gives, the
+     *  score of each quadgram of the decryption, and the buffers used in
+     *  trying a change. */
+    private class Climber {
+
+        /** A climber for my search's message. */
+        Climber() {
+            _plugs = new int[_size];
+            _middle = new int[_length];
+            _plain = new int[_length];
+            _quad = new float[_length - 3];
+            _byMiddle = new int[_size * _length];
+            _byMiddleSize = new int[_size];
+            _slot = new int[_length];
+            _posMark = new int[_length];
+            _quadMark = new int[_length];
+            _changed = new int[_length];
+            _oldPlain = new int[_length];
+            _newQuadStart = new int[_length];
+            _newQuad = new float[_length];
+        }
+
+        /** Make climb number RESTART, with random choices from RANDOM,
+         *  and return its result. */
+        Result climb(int restart, SplittableRandom random) {
+            for (int c = 0; c < _size; c += 1) {
+                _plugs[c] = c;
+            }
+            _pairs = 0;
+            for (int k = random.nextInt(_maxPairs + 1); k > 0; k -= 1) {
+                int x = random.nextInt(_size), y = random.nextInt(_size);
+                if (x != y && _plugs[x] == x && _plugs[y] == y) {
+                    _plugs[x] = y;
+                    _plugs[y] = x;
+                    _pairs += 1;
+                }
+            }
+            decryptAll();
+            long tries = 0;
+            for (boolean improved = true; improved;) {
+                improved = false;
+                for (int x = 0; x < _size; x += 1) {
+                    for (int y = x + 1; y < _size; y += 1) {
+                        if (!propose(x, y)) {
+                            continue;
+                        }
+                        tries += 1;
+                        if (tryChange() > 0) {
+                            accept();
+                            improved = true;
+                        } else {
+                            reject();
+                        }
+                    }
+                }
+            }
+            _evaluations.addAndGet(tries);
+            _restarts.incrementAndGet();
+            return result(restart);
+        }
+
+        /** Set _middle, _plain, _quad, and the _byMiddle buckets from
+         *  _plugs. */
+        private void decryptAll() {
+            for (int c = 0; c < _size; c += 1) {
+                _byMiddleSize[c] = 0;
+            }
+            for (int i = 0; i < _length; i += 1) {
+                int m = _rotors[i * _size + _plugs[_cipher[i]]];
+                _middle[i] = m;
+                _plain[i] = _plugs[m];
+                addToBucket(i, m);
+            }
+            for (int j = 0; j + 3 < _length; j += 1) {
+                _quad[j] = quadAt(j);
+            }
+        }
+
+        /** Change _plugs as the letters X and Y would, as described for
+         *  PlugboardClimb, recording the letters changed and their old
+         *  plugs in _moved and _movedFrom.  Returns false, changing
+         *  nothing, if the change would exceed the number of pairs
+         *  allowed. */
+        private boolean propose(int x, int y) {
+            int px = _plugs[x], py = _plugs[y];
+            _numMoved = 0;
+            if (px == y) {
+                move(x, x);
+                move(y, y);
+                _pairsChange = -1;
+            } else if (px == x && py == y) {
+                if (_pairs == _maxPairs) {
+                    return false;
+                }
+                move(x, y);
+                move(y, x);
+                _pairsChange = 1;
+            } else {
+                move(x, y);
+                move(y, x);
+                if (px != x && py != y) {
+                    move(px, py);
+                    move(py, px);
+                } else if (px != x) {
+                    move(px, px);
+                } else {
+                    move(py, py);
+                }
+                _pairsChange = 0;
+            }
+            return true;
+        }
+
+        /** Plug letter A to letter B, recording A's old plug. */
+        private void move(int a, int b) {
+            _moved[_numMoved] = a;
+            _movedFrom[_numMoved] = _plugs[a];
+            _numMoved += 1;
+            _plugs[a] = b;
+        }
+
+        /** Update _plain for the change just proposed, recording what it
+         *  replaced, compute the new scores of the quadgrams it affects,
+         *  and return the change in the total score.  The positions to
+         *  redecrypt are those whose ciphertext letter or whose letter
+         *  leaving the rotors has a changed plug. */
+        private float tryChange() {
+            int epoch = _epoch + 1;
+            if (epoch == Integer.MAX_VALUE) {
+                Arrays.fill(_posMark, 0);
+                Arrays.fill(_quadMark, 0);
+                epoch = 1;
+            }
+            _epoch = epoch;
+            int size = _size, length = _length;
+            int[] plugs = _plugs, rotors = _rotors, cipher = _cipher;
+            int[] plain = _plain, posMark = _posMark;
+            int[] changed = _changed, oldPlain = _oldPlain;
+            int numChanged = 0;
+            for (int k = 0; k < _numMoved; k += 1) {
+                int a = _moved[k];
+                for (int pass = 0; pass < 2; pass += 1) {
+                    int[] list = pass == 0 ? _byCipher : _byMiddle;
+                    int from = pass == 0 ? _byCipherStart[a] : a * length;
+                    int to = pass == 0 ? _byCipherStart[a + 1]
+                        : from + _byMiddleSize[a];
+                    for (int e = from; e < to; e += 1) {
+                        int i = list[e];
+                        if (posMark[i] == epoch) {
+                            continue;
+                        }
+                        posMark[i] = epoch;
+                        int p = plugs[rotors[i * size + plugs[cipher[i]]]];
+                        if (p != plain[i]) {
+                            changed[numChanged] = i;
+                            oldPlain[numChanged] = plain[i];
+                            numChanged += 1;
+                            plain[i] = p;
+                        }
+                    }
+                }
+            }
+            _numChanged = numChanged;
+            float[] table = _table, quad = _quad, newQuad = _newQuad;
+            int[] quadMark = _quadMark, newQuadStart = _newQuadStart;
+            int numNewQuads = 0;
+            float delta = 0;
+            for (int k = 0; k < numChanged; k += 1) {
+                int i = changed[k];
+                int hi = Math.min(i, length - 4);
+                for (int j = Math.max(0, i - 3); j <= hi; j += 1) {
+                    if (quadMark[j] != epoch) {
+                        quadMark[j] = epoch;
+                        float s = table[((plain[j] * size + plain[j + 1])
+                                         * size + plain[j + 2]) * size
+                                        + plain[j + 3]];
+                        newQuadStart[numNewQuads] = j;
+                        newQuad[numNewQuads] = s;
+                        numNewQuads += 1;
+                        delta += s - quad[j];
+                    }
+                }
+            }
+            _numNewQuads = numNewQuads;
+            return delta;
+        }
+
+        /** Keep the change just tried. */
+        private void accept() {
+            for (int k = 0; k < _numNewQuads; k += 1) {
+                _quad[_newQuadStart[k]] = _newQuad[k];
+            }
+            _pairs += _pairsChange;
+            for (int k = 0; k < _numMoved; k += 1) {
+                int a = _moved[k];
+                for (int e = _byCipherStart[a]; e < _byCipherStart[a + 1];
+                     e += 1) {
+                    int i = _byCipher[e];
+                    int m = _rotors[i * _size + _plugs[a]];
+                    if (m != _middle[i]) {
+                        removeFromBucket(i, _middle[i]);
+                        _middle[i] = m;
+                        addToBucket(i, m);
+                    }
+                }
+            }
+        }
+
+        /** Undo the change just tried. */
+        private void reject() {
+            for (int k = 0; k < _numChanged; k += 1) {
+                _plain[_changed[k]] = _oldPlain[k];
+            }
+            for (int k = _numMoved - 1; k >= 0; k -= 1) {
+                _plugs[_moved[k]] = _movedFrom[k];
+            }
+        }
+
+        /** Add position I to the bucket of positions whose letter leaving
+         *  the rotors is M. */
+        private void addToBucket(int i, int m) {
+            _slot[i] = _byMiddleSize[m];
+            _byMiddle[m * _length + _byMiddleSize[m]] = i;
+            _byMiddleSize[m] += 1;
+        }
+
+        /** Remove position I from the bucket for M, to which it
+         *  belongs. */
+        private void removeFromBucket(int i, int m) {
+            _byMiddleSize[m] -= 1;
+            int last = _byMiddle[m * _length + _byMiddleSize[m]];
+            _byMiddle[m * _length + _slot[i]] = last;
+            _slot[last] = _slot[i];
+        }
+
+        /** Return the score of the quadgram of _plain starting at J. */
+        private float quadAt(int j) {
+            int size = _size;
+            int[] plain = _plain;
+            return _table[((plain[j] * size + plain[j + 1]) * size
+                           + plain[j + 2]) * size + plain[j + 3]];
+        }
+
+        /** Return the result of this climb, number RESTART. */
+        private Result result(int restart) {
+            StringBuilder plugboard = new StringBuilder();
+            for (int c = 0; c < _size; c += 1) {
+                if (_plugs[c] > c) {
+                    if (plugboard.length() > 0) {
+                        plugboard.append(' ');
+                    }
+                    plugboard.append('(').append(_alphabet.toChar(c))
+                        .append(_alphabet.toChar(_plugs[c])).append(')');
+                }
+            }
+            char[] plaintext = new char[_length];
+            for (int i = 0; i < _length; i += 1) {
+                plaintext[i] = _alphabet.toChar(_plain[i]);
+            }
+            return new Result(restart, plugboard.toString(),
+                              new String(plaintext),
+                              _quadgrams.score(_plain));
+        }
+
+        /** _plugs[c] is the letter plugged to c, or c. */
+        private final int[] _plugs;
+        /** Number of pairs in _plugs. */
+        private int _pairs;
+        /** Letter leaving the rotors at each position. */
+        private final int[] _middle;
+        /** Decryption at each position. */
+        private final int[] _plain;
+        /** Score of the quadgram of _plain starting at each position. */
+        private final float[] _quad;
+        /** The positions whose letter leaving the rotors is m are
+         *  _byMiddle[m * _length] through _byMiddle[m * _length +
+         *  _byMiddleSize[m] - 1]. */
+        private final int[] _byMiddle, _byMiddleSize;
+        /** The index of each position in its bucket of _byMiddle. */
+        private final int[] _slot;
+        /** _posMark[i] and _quadMark[j] are _epoch iff position i has been
+         *  redecrypted, and the quadgram at j rescored, for the change
+         *  being tried. */
+        private final int[] _posMark, _quadMark;
+        /** Number of the change being tried. */
+        private int _epoch;
+        /** Letters whose plugs the change being tried alters, and their
+         *  old plugs. */
+        private final int[] _moved = new int[4], _movedFrom = new int[4];
+        /** Number of letters in _moved. */
+        private int _numMoved;
+        /** Change in the number of pairs made by the change. */
+        private int _pairsChange;
+        /** Positions whose decryption the change alters, and their old
+         *  decryptions. */
+        private final int[] _changed, _oldPlain;
+        /** Number of positions in _changed. */
+        private int _numChanged;
+        /** Starts of the quadgrams the change affects, and their new
+         *  scores. */
+        private final int[] _newQuadStart;
+        /** New scores of the quadgrams in _newQuadStart. */
+        private final float[] _newQuad;
+        /** Number of quadgrams in _newQuadStart. */
+        private int _numNewQuads;
+    }
+
+    /** Alphabet of the message. */
+    private final Alphabet _alphabet;
+    /** Size of _alphabet. */
+    private final int _size;
+    /** Length of the message. */
+    private final int _length;
+    /** Largest number of pairs on a plugboard. */
+    private final int _maxPairs;
+    /** The quadgram scores. */
+    private final Quadgrams _quadgrams;
+    /** The table of _quadgrams. */
+    private final float[] _table;
+    /** The ciphertext, as indices in _alphabet. */
+    private final int[] _cipher;
+    /** _rotors[i * _size + c] is the letter leaving the rotors when c
+     *  enters them at position i of the message. */
+    private final int[] _rotors;
+    /** The positions whose ciphertext letter is c are _byCipher[
+     *  _byCipherStart[c]] through _byCipher[_byCipherStart[c + 1] - 1]. */
+    private final int[] _byCipherStart, _byCipher;
+    /** Number of climbs finished. */
+    private final AtomicLong _restarts = new AtomicLong();
+    /** Number of changes tried. */
+    private final AtomicLong _evaluations = new AtomicLong();
+    /** Best result so far of the current call of climb. */
+    private Result _best;
+}
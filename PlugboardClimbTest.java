@@ -0,0 +1,168 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Quadgrams and PlugboardClimb
+ *  classes.
+ *  @author
+ */
+public class PlugboardClimbTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(120);
+
+    /* ***** TESTS ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    private static final String MESSAGE =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOODMADEOFSLIDING"
+        + "FOLDINGROSEWOODNEATLYPUTITALLTOGETHERINITSCASEITLAYCOMPACTLY"
+        + "FOLDEDINTONEARLYNOTHINGBUTHEOPENEDOUTTHEHINGESPUSHEDANDPULLED"
+        + "THEJOINTSANDHINGESTILLITLOOKEDALLSQUARESANDOBLONGSLIKEA"
+        + "COMPLICATEDFIGUREINTHESECONDBOOKOFEUCLID";
+
+    /** English text for quadgram statistics, which does not include
+     *  MESSAGE. */
+    private static final String CORPUS =
+        "THE QUICK BROWN FOX JUMPS OVER THE LAZY DOG AND THEN RUNS "
+        + "BACK INTO THE WOODS WHERE THE OTHER ANIMALS ARE WAITING FOR "
+        + "THE EVENING MEAL THERE IS NOTHING LIKE A WARM FIRE ON A COLD "
+        + "NIGHT WHEN THE WIND IS HOWLING OUTSIDE AND THE RAIN IS "
+        + "BEATING AGAINST THE WINDOWS OF THE OLD HOUSE ON THE HILL "
+        + "THIS WAS THE SORT OF THING THAT HE HAD ALWAYS WANTED TO DO "
+        + "BUT NEVER HAD THE TIME OR THE MONEY OR THE COURAGE TO TRY "
+        + "WHEN THE SHIP CAME INTO THE HARBOUR THE SAILORS THREW THE "
+        + "ROPES TO THE MEN WAITING ON THE DOCK AND THE PASSENGERS "
+        + "GATHERED THEIR BAGS AND WALKED SLOWLY DOWN THE NARROW PLANK "
+        + "ONE OF THEM WAS AN OLD WOMAN WHO CARRIED A SMALL WOODEN BOX "
+        + "THAT SHE HELD CLOSE TO HER CHEST AS IF IT CONTAINED "
+        + "SOMETHING OF GREAT VALUE NOBODY KNEW WHAT WAS INSIDE AND "
+        + "SHE NEVER TOLD ANYONE ALTHOUGH MANY PEOPLE ASKED HER ABOUT "
+        + "IT DURING THE LONG WINTER THAT FOLLOWED IN THE SPRING THE "
+        + "CHILDREN OF THE VILLAGE PLAYED IN THE FIELDS BEHIND THE "
+        + "CHURCH AND THEIR PARENTS WORKED IN THE GARDENS PLANTING "
+        + "BEANS AND POTATOES AND ONIONS THE TEACHER TOLD THEM STORIES "
+        + "ABOUT DISTANT COUNTRIES WHERE THE MOUNTAINS WERE COVERED "
+        + "WITH SNOW ALL YEAR AND THE RIVERS RAN DOWN INTO GREAT LAKES "
+        + "FULL OF FISH SHE SHOWED THEM PICTURES IN A HEAVY BOOK WITH "
+        + "A LEATHER COVER AND EXPLAINED HOW THE EARTH MOVES AROUND THE "
+        + "SUN AND WHY THE DAYS ARE SHORTER IN THE WINTER THAN IN THE "
+        + "SUMMER THE DOCTOR WHO LIVED NEXT TO THE SCHOOL WAS A QUIET "
+        + "MAN WITH A GREY BEARD WHO SPENT HIS EVENINGS READING OLD "
+        + "LETTERS AND WRITING NOTES IN THE MARGINS OF HIS BOOKS HE "
+        + "HAD STUDIED IN THE CITY WHEN HE WAS YOUNG AND HAD COME BACK "
+        + "TO THE VILLAGE BECAUSE HIS FATHER WAS ILL AND NEEDED "
+        + "SOMEONE TO LOOK AFTER THE FARM AFTER HIS FATHER DIED HE "
+        + "STAYED BECAUSE THE PEOPLE HAD COME TO DEPEND ON HIM AND HE "
+        + "FOUND THAT HE DID NOT MISS THE NOISE AND THE CROWDS OF THE "
+        + "STREETS WHERE HE HAD ONCE BEEN HAPPY EVERY MORNING HE WALKED "
+        + "ALONG THE SHORE BEFORE BREAKFAST AND WATCHED THE BOATS GO "
+        + "OUT TO SEA AND IN THE AFTERNOON HE VISITED THE SICK AND "
+        + "TALKED WITH THEIR FAMILIES ABOUT THE WEATHER AND THE PRICE "
+        + "OF BREAD AND THE NEWS FROM THE CAPITAL WHICH ALWAYS ARRIVED "
+        + "A WEEK LATE ON THE MAIL COACH THE MERCHANTS IN THE MARKET "
+        + "SOLD CLOTH AND SALT AND IRON TOOLS AND THE FARMERS BROUGHT "
+        + "CHEESE AND EGGS AND HONEY TO TRADE FOR THINGS THEY COULD "
+        + "NOT MAKE THEMSELVES IT WAS A SIMPLE LIFE BUT A GOOD ONE AND "
+        + "MOST OF THOSE WHO LIVED THERE WOULD NOT HAVE CHANGED IT FOR "
+        + "ALL THE GOLD IN THE KINGDOM";
+
+    private static Machine machine(String setting) {
+        Machine mach = new Machine(AZ, 5, 3, TestUtils.navalRotors(
+            AZ, "B", "Beta", "III", "IV", "I"));
+        mach.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        mach.setRotors(setting);
+        mach.setPlugboard(new Permutation("", AZ));
+        return mach;
+    }
+
+    /** Return TEXT as indices in AZ. */
+    private static int[] indices(String text) {
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = AZ.toInt(text.charAt(i));
+        }
+        return result;
+    }
+
+    @Test
+    public void testQuadgrams() throws IOException {
+        Quadgrams fromText = Quadgrams.fromText(AZ, "TIONS ATION");
+        assertEquals(26 * 26 * 26 * 26, fromText.table().length);
+        float tion = fromText.logProb(AZ.toInt('T'), AZ.toInt('I'),
+                                      AZ.toInt('O'), AZ.toInt('N'));
+        float ions = fromText.logProb(AZ.toInt('I'), AZ.toInt('O'),
+                                      AZ.toInt('N'), AZ.toInt('S'));
+        assertEquals(Math.log10(2.0 / 7), tion, 1e-6);
+        assertEquals(Math.log10(1.0 / 7), ions, 1e-6);
+        assertEquals(Math.log10(0.01 / 7), fromText.logProb(0, 0, 0, 0),
+                     1e-6);
+        assertEquals(tion + ions, fromText.score(indices("TIONS")), 1e-5);
+        assertEquals(0, fromText.score(indices("TIO")), 0);
+
+        Path file = Files.createTempFile("enigma", ".quad");
+        try {
+            Files.write(file, Arrays.asList("TION 2", "", "IONS 1",
+                                            "ONSA 1", "NSAT 1", "SATI 1",
+                                            "ATIO 1"));
+            assertArrayEquals(fromText.table(),
+                              Quadgrams.read(AZ, file).table(), 1e-6f);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testRecoversPlugboard() {
+        Machine mach = machine("AXLE");
+        String plugs = "(AQ) (EP) (HZ) (LT) (OW)";
+        Machine encrypting = mach.copy();
+        encrypting.setPlugboard(new Permutation(plugs, AZ));
+        String cipher = encrypting.convert(MESSAGE);
+
+        Quadgrams quadgrams = Quadgrams.fromText(AZ, CORPUS);
+        PlugboardClimb climb =
+            new PlugboardClimb(mach, cipher, quadgrams, 10);
+        PlugboardClimb.Result result =
+            climb.climb(16, 1, ForkJoinPool.commonPool());
+        assertEquals(MESSAGE, result.plaintext());
+        Permutation expected = new Permutation(plugs, AZ);
+        Permutation found = new Permutation(result.plugboard(), AZ);
+        for (int c = 0; c < AZ.size(); c += 1) {
+            assertEquals(expected.permute(c), found.permute(c));
+        }
+        assertEquals(quadgrams.score(indices(result.plaintext())),
+                     result.score(), 1e-6);
+        assertEquals(16, climb.restarts());
+        assertTrue(climb.evaluations() > 16 * 325);
+        assertEquals(AZ.toInt('X'), mach.setting(2));
+    }
+
+    @Test
+    public void testRepeatable() {
+        Machine mach = machine("QRST");
+        Machine encrypting = mach.copy();
+        encrypting.setPlugboard(new Permutation("(AB) (CD) (EF)", AZ));
+        String cipher = encrypting.convert(MESSAGE.substring(0, 80));
+        Quadgrams quadgrams = Quadgrams.fromText(AZ, CORPUS);
+        PlugboardClimb.Result first =
+            new PlugboardClimb(mach, cipher, quadgrams, 3)
+            .climb(9, 42, new ForkJoinPool(3));
+        PlugboardClimb.Result second =
+            new PlugboardClimb(mach, cipher, quadgrams, 3)
+            .climb(9, 42, new ForkJoinPool(1));
+        assertEquals(first.plugboard(), second.plugboard());
+        assertEquals(first.score(), second.score(), 0);
+        assertTrue(first.plugboard().split(" ").length <= 3);
+    }
+}
@@ -0,0 +1,153 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static enigma.EnigmaException.*;
+
+/** A table of the log probabilities of the four-letter sequences of a
+ *  language, used to score how much a text looks like the language.  The
+ *  table is a flat array indexed by the four letters' indices taken as
+ *  the digits of a number in base N, the size of the alphabet, so that
+ *  the score of each quadgram of a text is one array access.  Quadgrams
+ *  never seen are given the log probability of a hundredth of one
+ *  occurrence.
+ *  @author
+ */
+class Quadgrams {
+
+    /** A table over ALPHABET of the log probabilities LOGPROBS, of size
+     *  ALPHABET.size() ** 4, indexed as described above. */
+    Quadgrams(Alphabet alphabet, float[] logProbs) {
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        if (logProbs.length != tableSize(_size)) {
+            throw error("quadgram table does not fit the alphabet");
+        }
+        _logProbs = logProbs;
+    }
+
+    /** Return the table over ALPHABET for the file FILE, each line of
+     *  which holds a quadgram, white space, and the number of times it
+     *  occurs, as in "TION 13168375".  Blank lines are ignored. */
+    static Quadgrams read(Alphabet alphabet, Path file) {
+        long[] counts = new long[tableSize(alphabet.size())];
+        try (BufferedReader in =
+             Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length == 1 && fields[0].isEmpty()) {
+                    continue;
+                }
+                if (fields.length != 2 || fields[0].length() != 4) {
+                    throw error("bad quadgram line: %s", line);
+                }
+                int index = 0;
+                for (int i = 0; i < 4; i += 1) {
+                    index = index * alphabet.size()
+                        + alphabet.toInt(fields[0].charAt(i));
+                }
+                counts[index] += Long.parseLong(fields[1]);
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s: %s", file, excp.getMessage());
+        } catch (NumberFormatException excp) {
+            throw error("bad quadgram count in %s", file);
+        }
+        return fromCounts(alphabet, counts);
+    }
+
+    /** Return the table over ALPHABET for the quadgrams of TEXT, skipping
+     *  any character of TEXT not in ALPHABET. */
+    static Quadgrams fromText(Alphabet alphabet, CharSequence text) {
+        int size = alphabet.size();
+        long[] counts = new long[tableSize(size)];
+        int index = 0, run = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char ch = text.charAt(i);
+            if (!alphabet.contains(ch)) {
+                continue;
+            }
+            index = index % (counts.length / size) * size
+                + alphabet.toInt(ch);
+            run += 1;
+            if (run >= 4) {
+                counts[index] += 1;
+            }
+        }
+        return fromCounts(alphabet, counts);
+    }
+
+    /** Return the table over ALPHABET for the quadgrams occurring
+     *  COUNTS[q] times, for each quadgram index q. */
+    static Quadgrams fromCounts(Alphabet alphabet, long[] counts) {
+        double total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            throw error("no quadgrams");
+        }
+        float[] logProbs = new float[counts.length];
+        float floor = (float) Math.log10(UNSEEN / total);
+        for (int q = 0; q < counts.length; q += 1) {
+            logProbs[q] = counts[q] == 0 ? floor
+                : (float) Math.log10(counts[q] / total);
+        }
+        return new Quadgrams(alphabet, logProbs);
+    }
+
+    /** Return the alphabet of my quadgrams. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my table of log probabilities, indexed as described above,
+     *  which must not be modified. */
+    float[] table() {
+        return _logProbs;
+    }
+
+    /** Return the log probability of the quadgram of indices A, B, C,
+     *  and D. */
+    float logProb(int a, int b, int c, int d) {
+        return _logProbs[((a * _size + b) * _size + c) * _size + d];
+    }
+
+    /** Return the sum of the log probabilities of the quadgrams of TEXT,
+     *  whose letters are indices in my alphabet. */
+    double score(int[] text) {
+        double result = 0;
+        for (int j = 0; j + 3 < text.length; j += 1) {
+            result += logProb(text[j], text[j + 1], text[j + 2], text[j + 3]);
+        }
+        return result;
+    }
+
+    /** Return the number of quadgrams over an alphabet of SIZE letters,
+     *  after checking that a table of them is not too large. */
+    private static int tableSize(int size) {
+        long result = (long) size * size * size * size;
+        if (result > MAX_TABLE) {
+            throw error("alphabet too large for a quadgram table");
+        }
+        return (int) result;
+    }
+
+    /** Number of occurrences assumed for a quadgram never seen. */
+    private static final double UNSEEN = 0.01;
+
+    /** Largest table allowed. */
+    private static final long MAX_TABLE = 1 << 28;
+
+    /** Alphabet of my quadgrams. */
+    private final Alphabet _alphabet;
+    /** Size of _alphabet. */
+    private final int _size;
+    /** Log probability of each quadgram. */
+    private final float[] _logProbs;
+}
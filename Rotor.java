@@ -12,7 +12,28 @@ class Rotor {
         _name = name;
         _permutation = perm;
         _setting = 0;
-        _alreadyMoved = false;
+        int n = perm.size();
+        if (n <= MAX_TABLED_SIZE) {
+            _forwardTable = new int[n][n];
+            for (int s = 0; s < n; s += 1) {
+                for (int p = 0; p < n; p += 1) {
+                    _forwardTable[s][p] = perm.wrap(perm.permute(p + s) - s);
+                }
+            }
+            if (perm.kind() == Permutation.GENERAL) {
+                _backwardTable = new int[n][n];
+                for (int s = 0; s < n; s += 1) {
+                    for (int p = 0; p < n; p += 1) {
+                        _backwardTable[s][p] =
+                            perm.wrap(perm.invert(p + s) - s);
+                    }
+                }
+            } else {
+                _backwardTable = _forwardTable;
+            }
+        } else {
+            _forwardTable = _backwardTable = null;
+        }
     }
 
     /** Return my name. */
@@ -45,10 +66,6 @@ class Rotor {
         return false;
     }
 
-    boolean is_alreadyMoved() {
-        return _alreadyMoved;
-    }
-
     /** Return my current setting. */
     int setting() {
         return _setting;
@@ -61,18 +78,24 @@ class Rotor {
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
-        int num = alphabet().toInt(cposn);
-        _setting = num;
+        set(alphabet().toInt(cposn));
     }
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-       // advance();
-        int result = _permutation.permute(p+_setting);
-        result = result - _setting;
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
+        return convertForward(p, _setting);
+    }
+
+    /** Return the conversion of P (an integer in the range 0..size()-1)
+     *  according to my permutation when I am at setting SETTING. */
+    int convertForward(int p, int setting) {
+        int result;
+        if (_forwardTable != null) {
+            result = _forwardTable[setting][p];
+        } else {
+            result = _permutation.wrap(_permutation.permute(p + setting)
+                                       - setting);
         }
         return result;
     }
@@ -80,11 +103,19 @@ class Rotor {
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-       // advance();
-        int result = _permutation.invert(e+_setting);
-        result = result - _setting;
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
+        return convertBackward(e, _setting);
+    }
+
+    /** Return the conversion of E (an integer in the range 0..size()-1)
+     *  according to the inverse of my permutation when I am at setting
+     *  SETTING. */
+    int convertBackward(int e, int setting) {
+        int result;
+        if (_backwardTable != null) {
+            result = _backwardTable[setting][e];
+        } else {
+            result = _permutation.wrap(_permutation.invert(e + setting)
+                                       - setting);
         }
         return result;
     }
@@ -98,13 +129,31 @@ class Rotor {
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
-        return false; // FIXME
+        return atNotch(_setting);
+    }
+
+    /** Returns true iff I allow the rotor to my left to advance when I am
+     *  at setting POSN. */
+    boolean atNotch(int posn) {
+        return false;
     }
 
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
 
+    /** Return the tables an Odometer uses to step me.  They are made the
+     *  first time they are needed; two threads racing to make them do no
+     *  harm, since they are never modified and either copy will do. */
+    Odometer.NotchTables notchTables() {
+        Odometer.NotchTables tables = _notchTables;
+        if (tables == null) {
+            tables = new Odometer.NotchTables(this);
+            _notchTables = tables;
+        }
+        return tables;
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -114,9 +163,27 @@ class Rotor {
     private final String _name;
 
     /** The permutation implemented by this rotor in its 0 position. */
-    private Permutation _permutation;
+    private final Permutation _permutation;
 
+    /** My setting when used on my own.  A Machine keeps the settings of
+     *  the rotors in its slots itself, and never reads or changes this,
+     *  so that machines may share rotors. */
     private int _setting;
-    public boolean _alreadyMoved;
+
+    /** My notch tables, or null until first needed. */
+    private Odometer.NotchTables _notchTables;
+
+    /** Largest alphabet for which I precompute a row of conversions for
+     *  every setting; larger alphabets convert through _permutation. */
+    static final int MAX_TABLED_SIZE = 256;
+
+    /** Entry [S][P] is the forward conversion of P at setting S, or null
+     *  if my alphabet is larger than MAX_TABLED_SIZE. */
+    private final int[][] _forwardTable;
+
+    /** Entry [S][E] is the backward conversion of E at setting S, or null
+     *  if my alphabet is larger than MAX_TABLED_SIZE.  When my permutation
+     *  is an involution, so is each row, and this is _forwardTable. */
+    private final int[][] _backwardTable;
 
 }
@@ -0,0 +1,132 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** The rotors available to a family of machines, over one alphabet.  A
+ *  catalog never changes once made, and neither does anything a machine
+ *  reads from its rotors: wiring tables, notches, and the notch tables
+ *  used in stepping are all fixed when a rotor is built.  A catalog may
+ *  therefore be shared by any number of machines on any number of
+ *  threads, each machine keeping only its own slots and rotor settings.
+ *  @author
+ */
+class RotorCatalog {
+
+    /** A catalog of ROTORS, all over ALPHABET.  Where two rotors have the
+     *  same name, the first is the one found by get. */
+    RotorCatalog(Alphabet alphabet, Collection<Rotor> rotors) {
+        _alphabet = alphabet;
+        Rotor[] all = rotors.toArray(new Rotor[rotors.size()]);
+        _rotors = Collections.unmodifiableList(Arrays.asList(all));
+        _byName = new HashMap<>();
+        for (Rotor rotor : all) {
+            if (rotor.size() != alphabet.size()) {
+                throw error("rotor %s does not fit the alphabet",
+                            rotor.name());
+            }
+            _byName.putIfAbsent(rotor.name(), rotor);
+        }
+    }
+
+    /** Return the alphabet of my rotors. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my rotors, in the order given when I was made. */
+    List<Rotor> rotors() {
+        return _rotors;
+    }
+
+    /** Return all the rotor orders for machines with NUMROTORS slots and
+     *  PAWLS pawls that can be made from my rotors: a reflector, then
+     *  distinct non-moving rotors for all but the last PAWLS slots, then
+     *  distinct moving rotors.  Orders are listed in the order of my
+     *  rotors, and the orders of a given reflector together. */
+    List<String[]> orders(int numRotors, int pawls) {
+        ArrayList<String> reflectors = new ArrayList<>();
+        ArrayList<String> fixed = new ArrayList<>();
+        ArrayList<String> moving = new ArrayList<>();
+        for (Rotor rotor : _rotors) {
+            if (_byName.get(rotor.name()) != rotor) {
+                continue;
+            }
+            if (rotor.reflecting()) {
+                reflectors.add(rotor.name());
+            } else if (rotor.rotates()) {
+                moving.add(rotor.name());
+            } else {
+                fixed.add(rotor.name());
+            }
+        }
+        ArrayList<String[]> result = new ArrayList<>();
+        String[] order = new String[numRotors];
+        for (String reflector : reflectors) {
+            order[0] = reflector;
+            addOrders(order, 1, numRotors - pawls, fixed, moving, result);
+        }
+        return result;
+    }
+
+    /** Add to RESULT each completion of ORDER[0 .. K-1] using distinct
+     *  rotors from FIXED for slots before FIRSTMOVING and from MOVING for
+     *  the others. */
+    private static void addOrders(String[] order, int k, int firstMoving,
+                                  List<String> fixed, List<String> moving,
+                                  List<String[]> result) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        List<String> choices = k < firstMoving ? fixed : moving;
+        for (String name : choices) {
+            int j;
+            for (j = 1; j < k && !order[j].equals(name); j += 1) {
+                continue;
+            }
+            if (j == k) {
+                order[k] = name;
+                addOrders(order, k + 1, firstMoving, fixed, moving, result);
+            }
+        }
+    }
+
+    /** Check that ORDER names, from my rotors, a reflector, then
+     *  non-moving rotors for all but the last PAWLS slots, then moving
+     *  rotors, and that it fills NUMROTORS slots. */
+    void checkOrder(String[] order, int numRotors, int pawls) {
+        if (order.length != numRotors) {
+            throw error("wrong number of rotors in order");
+        }
+        for (int k = 0; k < numRotors; k += 1) {
+            Rotor rotor = _byName.get(order[k]);
+            if (rotor == null) {
+                throw error("unknown rotor %s", order[k]);
+            }
+            boolean moving = k >= numRotors - pawls;
+            if ((k == 0) != rotor.reflecting()
+                || (k > 0 && moving != rotor.rotates())) {
+                throw error("rotor %s misplaced", order[k]);
+            }
+        }
+    }
+
+    /** Return the rotor named NAME, or null if I have none. */
+    Rotor get(String name) {
+        return _byName.get(name);
+    }
+
+    /** Common alphabet of my rotors. */
+    private final Alphabet _alphabet;
+    /** My rotors, in order. */
+    private final List<Rotor> _rotors;
+    /** My rotors by name. */
+    private final HashMap<String, Rotor> _byName;
+}
@@ -0,0 +1,286 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import static enigma.EnigmaException.*;
+
+/** Converts the messages read by a MessageReader as Main does, but with
+ *  the sections that start at each settings line converted concurrently,
+ *  each by its own copy of a machine.  Sections are cut into pieces of
+ *  bounded size; a piece after the first in a section starts its machine
+ *  with seek().  Pieces are converted and formatted on a fixed pool of
+ *  threads while the input is read, and their output is written in input
+ *  order.  At most a fixed number of pieces are in hand at once, so that
+ *  memory use does not grow with the input: once that many are waiting,
+ *  reading stops until the oldest is written.
+ *  @author
+ */
+class SectionRunner {
+
+    /** Largest number of characters in a piece. */
+    static final int PIECE = 1 << 20;
+
+    /** A runner using THREADS threads to convert the messages it reads
+     *  with copies of TEMPLATE. */
+    SectionRunner(Machine template, int threads) {
+        _template = template;
+        _threads = threads;
+        _pending = new ArrayDeque<>();
+        _names = new String[template.numRotors()];
+        for (int i = 0; i < _names.length; i += 1) {
+            if (template.getRotor(i) != null) {
+                _names[i] = template.getRotor(i).name();
+            }
+        }
+    }
+
+    /** Convert the messages in INPUT, writing the results to OUTPUT, as
+     *  Main does. */
+    void run(MessageReader input, MessageWriter output) {
+        ExecutorService pool =
+            Executors.newFixedThreadPool(_threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "enigma-section");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        _pool = pool;
+        _output = output;
+        try {
+            boolean configured = read(input);
+            while (!_pending.isEmpty()) {
+                finishOldest();
+            }
+            if (!configured) {
+                throw error("no configuration");
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Read INPUT, handing it out to _pool in pieces.  Return false if
+     *  there is no settings line before the first message, in which case
+     *  reading stops at that message. */
+    private boolean read(MessageReader input) {
+        boolean configured = false;
+        Piece piece = new Piece(null, 0, 0);
+        while (true) {
+            int kind = input.nextLine();
+            if (kind == MessageReader.END) {
+                break;
+            } else if (kind == MessageReader.SETTINGS) {
+                submit(piece);
+                piece = new Piece(resolve(input.tokens()), 0, 0);
+                configured = true;
+            } else {
+                while (true) {
+                    if (piece.room() < 2 && !piece.grow()) {
+                        Piece next = piece.next();
+                        submit(piece);
+                        piece = next;
+                    }
+                    int n = piece.read(input);
+                    if (n == 0) {
+                        break;
+                    } else if (!configured) {
+                        submit(piece);
+                        return false;
+                    }
+                }
+                piece.endLine();
+            }
+        }
+        submit(piece);
+        return configured;
+    }
+
+    /** Return SETTINGS, the tokens of a settings line, with each rotor
+     *  name that my machine does not know replaced by the name of the
+     *  rotor that earlier settings lines left in its slot, if any.  A
+     *  sequential run leaves such a rotor in place, and each piece must do
+     *  the same without seeing the sections before it. */
+    private String[] resolve(String[] settings) {
+        String[] result = settings.clone();
+        RotorCatalog catalog = _template.catalog();
+        for (int i = 0; i < _names.length && i + 1 < result.length; i += 1) {
+            if (catalog.get(result[i + 1]) != null) {
+                _names[i] = result[i + 1];
+            } else if (_names[i] != null) {
+                result[i + 1] = _names[i];
+            }
+        }
+        return result;
+    }
+
+    /** Start converting PIECE, first writing the output of older pieces
+     *  if too many are in hand. */
+    private void submit(Piece piece) {
+        while (_pending.size() >= 4 * _threads) {
+            finishOldest();
+        }
+        _pending.add(_pool.submit(piece));
+    }
+
+    /** Wait for the oldest piece in hand to be converted and write its
+     *  output.  If its conversion failed, throw the exception after
+     *  writing what output it produced. */
+    private void finishOldest() {
+        Piece done;
+        try {
+            done = _pending.remove().get();
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("%s", excp.getCause());
+        }
+        _output.writeFormatted(done._formatted, 0, done._formatted.length);
+        if (done._error != null) {
+            throw done._error;
+        }
+    }
+
+    /** Part of a section: the characters of a run of message lines, or of
+     *  a part of one, with whitespace removed. */
+    private class Piece implements Callable<Piece> {
+
+        /** A piece of the section set up by the settings line whose tokens
+         *  are SETTINGS, or of the lines before any settings line if that
+         *  is null.  OFFSET characters of the section and GROUPED
+         *  characters of its first line precede this piece. */
+        Piece(String[] settings, long offset, long grouped) {
+            _settings = settings;
+            _offset = offset;
+            _grouped = grouped;
+            _text = new char[256];
+            _lineEnds = new int[16];
+        }
+
+        /** Return the piece that follows me in my section. */
+        Piece next() {
+            long grouped = _numLineEnds == 0 ? _grouped + _length
+                : _length - _lineEnds[_numLineEnds - 1];
+            return new Piece(_settings, _offset + _length, grouped);
+        }
+
+        /** Return the number of characters I have room for. */
+        int room() {
+            return _text.length - _length;
+        }
+
+        /** Make more room, returning false if I am already as large as a
+         *  piece may be. */
+        boolean grow() {
+            if (_text.length >= PIECE) {
+                return false;
+            }
+            _text = Arrays.copyOf(_text, 2 * _text.length);
+            return true;
+        }
+
+        /** Add characters of the current message line of INPUT, as many
+         *  as fit, returning how many. */
+        int read(MessageReader input) {
+            int n = input.read(_text, _length, room());
+            _length += n;
+            return n;
+        }
+
+        /** End the current message line. */
+        void endLine() {
+            if (_numLineEnds == _lineEnds.length) {
+                _lineEnds = Arrays.copyOf(_lineEnds, 2 * _numLineEnds);
+            }
+            _lineEnds[_numLineEnds] = _length;
+            _numLineEnds += 1;
+        }
+
+        /** Convert and format my text, returning myself. */
+        @Override
+        public Piece call() {
+            ByteArrayOutputStream bytes =
+                new ByteArrayOutputStream(2 * _length + 16 * _numLineEnds);
+            MessageWriter out =
+                new MessageWriter(Channels.newChannel(bytes),
+                                  Math.min(PIECE, 2 * _length + 64));
+            out.continueLine((int) (_grouped % 5));
+            try {
+                Machine machine = null;
+                if (_settings != null) {
+                    machine = _template.copy();
+                    Main.setUp(machine, _settings);
+                    machine.seek(_offset);
+                }
+                int start = 0;
+                for (int k = 0; k <= _numLineEnds; k += 1) {
+                    int end = k < _numLineEnds ? _lineEnds[k] : _length;
+                    if (end > start) {
+                        if (machine == null) {
+                            throw error("no configuration");
+                        }
+                        machine.convert(_text, start, end - start,
+                                        _text, start);
+                        out.write(_text, start, end - start);
+                    }
+                    if (k < _numLineEnds) {
+                        out.endLine();
+                    }
+                    start = end;
+                }
+            } catch (EnigmaException excp) {
+                _error = excp;
+            }
+            out.flush();
+            _formatted = bytes.toByteArray();
+            _text = null;
+            return this;
+        }
+
+        /** Tokens of the settings line of my section, or null. */
+        private final String[] _settings;
+        /** Number of characters of my section before me. */
+        private final long _offset;
+        /** Number of characters of my first line before me. */
+        private final long _grouped;
+        /** My characters, in _text[0 .. _length-1]. */
+        private char[] _text;
+        /** Number of characters I hold. */
+        private int _length;
+        /** Indices in _text at which lines end, in order. */
+        private int[] _lineEnds;
+        /** Number of line ends I hold. */
+        private int _numLineEnds;
+        /** My output, once converted. */
+        private byte[] _formatted;
+        /** What went wrong in converting me, if anything. */
+        private EnigmaException _error;
+    }
+
+    /** Machine copied for each piece. */
+    private final Machine _template;
+    /** Number of threads converting pieces. */
+    private final int _threads;
+    /** Name of the rotor in each slot as of the last settings line
+     *  read, or null for a slot not yet filled. */
+    private final String[] _names;
+    /** Pieces being converted, oldest first. */
+    private final ArrayDeque<Future<Piece>> _pending;
+    /** Threads converting pieces. */
+    private ExecutorService _pool;
+    /** Destination of output. */
+    private MessageWriter _output;
+}
@@ -0,0 +1,112 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the SectionRunner class.
+ *  @author
+ */
+public class SectionRunnerTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    /** Line terminator. */
+    private static final String NL = System.lineSeparator();
+
+    /** Return an unset machine with naval rotors B, Beta, I, II, and III. */
+    private Machine naval() {
+        return new Machine(AZ, 5, 3, TestUtils.navalRotors(
+            AZ, "B", "Beta", "I", "II", "III"));
+    }
+
+    /** Return what a SectionRunner with THREADS threads writes for INPUT. */
+    private String run(String input, int threads) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MessageWriter out = new MessageWriter(Channels.newChannel(bytes));
+        try {
+            new SectionRunner(naval(), threads).run(
+                new MessageReader(Channels.newChannel(new ByteArrayInputStream(
+                    input.getBytes(StandardCharsets.UTF_8)))), out);
+        } finally {
+            out.flush();
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Return MSG converted by a machine set up by SETTINGS, in groups. */
+    private String expected(String[] settings, String msg) {
+        Machine mach = naval();
+        Main.setUp(mach, settings);
+        return TestUtils.grouped(mach.convert(msg)) + NL;
+    }
+
+    @Test
+    public void testSectionsInOrder() {
+        Random random = new Random(12);
+        StringBuilder input = new StringBuilder(NL);
+        StringBuilder output = new StringBuilder(NL);
+        for (int k = 0; k < 40; k += 1) {
+            int len = k == 7 ? 2 * SectionRunner.PIECE + 3
+                : random.nextInt(300);
+            char[] msg = new char[len];
+            for (int i = 0; i < len; i += 1) {
+                msg[i] = (char) ('A' + random.nextInt(26));
+            }
+            String[] settings = { "*", "B", "Beta", "I", "II", "III",
+                                  k % 2 == 0 ? "AXLE" : "QEVA", "(AZ)" };
+            input.append(String.join(" ", settings)).append("\n");
+            input.append(msg).append("\n\n");
+            output.append(expected(settings, new String(msg))).append(NL);
+        }
+        assertEquals(output.toString(), run(input.toString(), 3));
+    }
+
+    @Test
+    public void testUnknownRotor() {
+        String[] settings = { "*", "B", "Beta", "I", "II", "III", "AXLE" };
+        String input = String.join(" ", settings) + "\nHELLO\n"
+            + "* B Beta I XX III AXLE\nWORLD\n";
+        assertEquals(expected(settings, "HELLO")
+                     + expected(settings, "WORLD"),
+                     run(input, 2));
+        try {
+            run("* B Beta I XX III AXLE\nHELLO\n", 2);
+            fail("unknown rotor accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("unknown rotor: XX", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void testErrors() {
+        String input =
+            "* B Beta I II III AAAA\nHELLO\n* B Beta I II III A\nX\n";
+        try {
+            run(input, 2);
+            fail("short setting accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("short", excp.getMessage());
+        }
+        try {
+            run("\nHELLO\n", 2);
+            fail("missing configuration accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("no configuration", excp.getMessage());
+        }
+    }
+}
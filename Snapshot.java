@@ -0,0 +1,211 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** The binary snapshot format of a compiled machine: its alphabet, its
+ *  numbers of slots and pawls, and its catalog of rotors, each with its
+ *  kind, name, forward and inverse tables, and notches.  A snapshot is
+ *  written once from a machine read from a configuration file, and later
+ *  turned back into an equivalent machine without any parsing: the
+ *  tables are used as stored.  They are checked for consistency as they
+ *  are loaded, which costs time linear in their size, so that a damaged
+ *  file is reported rather than producing wrong output.
+ *
+ *  All numbers are big-endian.  The file holds the int MAGIC and the int
+ *  VERSION; the alphabet size N as an int and its characters as chars;
+ *  the number of slots and of pawls as ints; the number of rotors as an
+ *  int; and then each rotor: its kind (FIXED, MOVING, or REFLECTOR) as a
+ *  byte, the length of its name as a short and the name as chars, its
+ *  forward and then its inverse table as N chars each, and the bitmask of
+ *  settings at which it is at a notch as (N + 7) / 8 bytes, lowest
+ *  setting first and lowest bit first.
+ *  @author
+ */
+class Snapshot {
+
+    /** First four bytes of every snapshot: "ENGS". */
+    static final int MAGIC = 0x454e4753;
+
+    /** Version of the format described above. */
+    static final int VERSION = 1;
+
+    /** Kinds of rotor. */
+    static final byte FIXED = 0, MOVING = 1, REFLECTOR = 2;
+
+    /** Return true iff CONFIG, a file positioned at its start, holds a
+     *  snapshot.  Leaves CONFIG positioned at its start. */
+    static boolean isSnapshot(FileChannel config) {
+        ByteBuffer head = ByteBuffer.allocate(4);
+        try {
+            while (head.hasRemaining() && config.read(head) >= 0) {
+                continue;
+            }
+            config.position(0);
+        } catch (IOException excp) {
+            throw error("could not read configuration: %s",
+                        excp.getMessage());
+        }
+        return !head.hasRemaining() && head.getInt(0) == MAGIC;
+    }
+
+    /** Return the machine in the snapshot held by FILE, which is mapped
+     *  into memory rather than read. */
+    static Machine read(FileChannel file) {
+        try {
+            return decode(file.map(FileChannel.MapMode.READ_ONLY, 0,
+                                   file.size()));
+        } catch (IOException excp) {
+            throw error("could not read snapshot: %s", excp.getMessage());
+        }
+    }
+
+    /** Write a snapshot of MACHINE's alphabet, slots, pawls, and rotor
+     *  catalog to OUT. */
+    static void write(Machine machine, WritableByteChannel out) {
+        ByteBuffer snapshot = encode(machine);
+        try {
+            while (snapshot.hasRemaining()) {
+                out.write(snapshot);
+            }
+        } catch (IOException excp) {
+            throw error("could not write snapshot: %s", excp.getMessage());
+        }
+    }
+
+    /** Return a snapshot of MACHINE, ready to be written. */
+    static ByteBuffer encode(Machine machine) {
+        Alphabet alpha = machine.alphabet();
+        int n = alpha.size();
+        int size = 4 * 6 + 2 * n;
+        for (Rotor rotor : machine.allRotors()) {
+            size += 1 + 2 + 2 * rotor.name().length() + 4 * n + (n + 7) / 8;
+        }
+        ByteBuffer result = ByteBuffer.allocate(size);
+        result.putInt(MAGIC).putInt(VERSION).putInt(n);
+        for (int i = 0; i < n; i += 1) {
+            result.putChar(alpha.toChar(i));
+        }
+        result.putInt(machine.numRotors()).putInt(machine.numPawls());
+        result.putInt(machine.allRotors().size());
+        for (Rotor rotor : machine.allRotors()) {
+            Permutation perm = rotor.permutation();
+            if (rotor.name().length() > Short.MAX_VALUE) {
+                throw error("rotor name too long for a snapshot");
+            }
+            result.put(rotor.reflecting() ? REFLECTOR
+                       : rotor.rotates() ? MOVING : FIXED);
+            result.putShort((short) rotor.name().length());
+            for (int i = 0; i < rotor.name().length(); i += 1) {
+                result.putChar(rotor.name().charAt(i));
+            }
+            for (int i = 0; i < n; i += 1) {
+                result.putChar((char) perm.permute(i));
+            }
+            for (int i = 0; i < n; i += 1) {
+                result.putChar((char) perm.invert(i));
+            }
+            byte[] mask = new byte[(n + 7) / 8];
+            for (int p = 0; p < n; p += 1) {
+                if (rotor.atNotch(p)) {
+                    mask[p / 8] |= 1 << (p % 8);
+                }
+            }
+            result.put(mask);
+        }
+        return result.flip();
+    }
+
+    /** Return the machine whose snapshot is the remaining bytes of
+     *  SNAPSHOT. */
+    static Machine decode(ByteBuffer snapshot) {
+        try {
+            if (snapshot.getInt() != MAGIC) {
+                throw error("not a snapshot");
+            }
+            if (snapshot.getInt() != VERSION) {
+                throw error("unsupported snapshot version");
+            }
+            int n = count(snapshot.getInt(), snapshot, 2);
+            char[] chars = new char[n];
+            for (int i = 0; i < n; i += 1) {
+                chars[i] = snapshot.getChar();
+            }
+            Alphabet alpha = new Alphabet(new String(chars));
+            int numRotors = snapshot.getInt();
+            int pawls = snapshot.getInt();
+            int numAll = count(snapshot.getInt(), snapshot, 1);
+            ArrayList<Rotor> allRotors = new ArrayList<>(numAll);
+            for (int k = 0; k < numAll; k += 1) {
+                allRotors.add(decodeRotor(snapshot, alpha));
+            }
+            if (snapshot.hasRemaining()) {
+                throw error("bad snapshot: trailing bytes");
+            }
+            return new Machine(alpha, numRotors, pawls, allRotors);
+        } catch (BufferUnderflowException excp) {
+            throw error("bad snapshot: truncated");
+        }
+    }
+
+    /** Return the next rotor in SNAPSHOT, over ALPHA. */
+    private static Rotor decodeRotor(ByteBuffer snapshot, Alphabet alpha) {
+        int n = alpha.size();
+        byte kind = snapshot.get();
+        char[] name = new char[count(snapshot.getShort(), snapshot, 2)];
+        for (int i = 0; i < name.length; i += 1) {
+            name[i] = snapshot.getChar();
+        }
+        int[] forward = new int[n];
+        int[] inverse = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            forward[i] = snapshot.getChar();
+        }
+        for (int i = 0; i < n; i += 1) {
+            inverse[i] = snapshot.getChar();
+        }
+        for (int i = 0; i < n; i += 1) {
+            if (forward[i] >= n || inverse[forward[i]] != i) {
+                throw error("bad snapshot: tables of %s do not match",
+                            new String(name));
+            }
+        }
+        count((n + 7) / 8, snapshot, 1);
+        StringBuilder notches = new StringBuilder();
+        for (int p = 0; p < n; p += 1) {
+            if ((snapshot.get(snapshot.position() + p / 8)
+                 & (1 << (p % 8))) != 0) {
+                notches.append(alpha.toChar(p));
+            }
+        }
+        snapshot.position(snapshot.position() + (n + 7) / 8);
+        Permutation perm = new Permutation(forward, inverse, alpha);
+        switch (kind) {
+        case MOVING:
+            return new MovingRotor(new String(name), perm,
+                                   notches.toString());
+        case FIXED:
+            return new FixedRotor(new String(name), perm);
+        case REFLECTOR:
+            return new Reflector(new String(name), perm);
+        default:
+            throw error("bad snapshot: unknown rotor kind %d", kind);
+        }
+    }
+
+    /** Return COUNT, a number of items of SIZE bytes each that are to be
+     *  read from SNAPSHOT, after checking that it is not negative and
+     *  that SNAPSHOT has room for them. */
+    private static int count(int count, ByteBuffer snapshot, int size) {
+        if (count < 0 || (long) count * size > snapshot.remaining()) {
+            throw error("bad snapshot: truncated");
+        }
+        return count;
+    }
+}
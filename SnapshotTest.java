@@ -0,0 +1,99 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Snapshot class.
+ *  @author
+ */
+public class SnapshotTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    /** Return an unset machine with naval rotors B, Beta, I, II, and III. */
+    private Machine naval() {
+        ArrayList<Rotor> rotors =
+            TestUtils.navalRotors(AZ, "B", "Beta", "I", "II");
+        rotors.add(new MovingRotor("III",
+                                   new Permutation(TestUtils.NAVALA.get("III"),
+                                                   AZ),
+                                   "VZ"));
+        return new Machine(AZ, 5, 3, rotors);
+    }
+
+    /** Set up M with an ordinary setting. */
+    private void setUp(Machine m) {
+        m.insertRotors(new String[] { "B", "Beta", "I", "II", "III" });
+        m.setRotors("AXLE");
+        m.setPlugboard(new Permutation("(HQ) (EX) (IP)", AZ));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Machine original = naval();
+        Machine copy = Snapshot.decode(Snapshot.encode(original));
+        assertEquals(5, copy.numRotors());
+        assertEquals(3, copy.numPawls());
+        assertEquals(original.allRotors().size(), copy.allRotors().size());
+        for (Rotor rotor : copy.allRotors()) {
+            Rotor same = null;
+            for (Rotor r : original.allRotors()) {
+                if (r.name().equals(rotor.name())) {
+                    same = r;
+                }
+            }
+            assertNotNull(rotor.name(), same);
+            assertEquals(same.getClass(), rotor.getClass());
+            assertEquals(same.notches(), rotor.notches());
+            for (int i = 0; i < 26; i += 1) {
+                assertEquals(same.permutation().permute(i),
+                             rotor.permutation().permute(i));
+                assertEquals(same.permutation().invert(i),
+                             rotor.permutation().invert(i));
+            }
+        }
+        setUp(original);
+        setUp(copy);
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        assertEquals(original.convert(msg), copy.convert(msg));
+    }
+
+    @Test
+    public void testDamaged() {
+        ByteBuffer good = Snapshot.encode(naval());
+        byte[] bytes = new byte[good.remaining()];
+        good.get(bytes);
+        String[] expected = { "not a snapshot", "bad snapshot: truncated",
+                              "bad snapshot: trailing bytes",
+                              "bad snapshot: tables of B do not match" };
+        byte[][] damaged = new byte[4][];
+        damaged[0] = bytes.clone();
+        damaged[0][0] = 'X';
+        damaged[1] = Arrays.copyOf(bytes, bytes.length - 3);
+        damaged[2] = Arrays.copyOf(bytes, bytes.length + 1);
+        damaged[3] = bytes.clone();
+        int firstRotor = 4 * 3 + 2 * 26 + 4 * 3;
+        damaged[3][firstRotor + 1 + 2 + 2 + 1] ^= 1;
+        for (int k = 0; k < damaged.length; k += 1) {
+            try {
+                Snapshot.decode(ByteBuffer.wrap(damaged[k]));
+                fail("damaged snapshot accepted");
+            } catch (EnigmaException excp) {
+                assertEquals(expected[k], excp.getMessage());
+            }
+        }
+    }
+}
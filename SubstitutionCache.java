@@ -0,0 +1,184 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded cache of whole-machine substitutions.  Each entry maps the
+ *  settings of a machine's rotors, packed into a long, to the table that
+ *  takes an input index straight through the plugboard, the rotors, and
+ *  back out through the plugboard at those settings.
+ *
+ *  Lookup is on every keystroke, so it does no more than it must: nothing
+ *  is boxed or allocated once the cache is full, keys are found in an
+ *  open-addressed table of entry numbers, and a hit only marks its entry
+ *  as used.  When full, the cache evicts by the CLOCK approximation of
+ *  least recently used: a hand sweeps the entries in turn, clearing the
+ *  marks of those used since it last passed and evicting the first that
+ *  is unmarked.  The table of an evicted entry is reused for its
+ *  replacement.
+ *  @author
+ */
+class SubstitutionCache {
+
+    /** An empty cache holding at most CAPACITY substitutions. */
+    SubstitutionCache(int capacity) {
+        if (capacity <= 0) {
+            throw error("cache capacity must be positive");
+        }
+        if (capacity > MAX_CAPACITY) {
+            throw error("cache capacity must be at most %d", MAX_CAPACITY);
+        }
+        _capacity = capacity;
+        _keys = new long[capacity];
+        _tables = new int[capacity][];
+        _used = new boolean[capacity];
+        int slots = Integer.highestOneBit(capacity) * 4;
+        _index = new int[slots];
+        _mask = slots - 1;
+        _shift = Long.numberOfLeadingZeros(_mask);
+    }
+
+    /** Return the substitution stored under KEY, or null if there is none.
+     *  Counts as a hit or a miss accordingly. */
+    int[] get(long key) {
+        int slot = slot(key);
+        int entry;
+        while ((entry = _index[slot] - 1) >= 0) {
+            if (_keys[entry] == key) {
+                _hits += 1;
+                _used[entry] = true;
+                return _tables[entry];
+            }
+            slot = (slot + 1) & _mask;
+        }
+        _misses += 1;
+        return null;
+    }
+
+    /** Return the table to fill with the substitution for KEY, which must
+     *  not be stored, making it the entry for KEY.  Its length is SIZE,
+     *  the size of the alphabet, and its contents are undefined.  Evicts
+     *  an entry if I am full. */
+    int[] put(long key, int size) {
+        int entry;
+        if (_size < _capacity) {
+            entry = _size;
+            _size += 1;
+        } else {
+            while (_used[_hand]) {
+                _used[_hand] = false;
+                _hand = _hand + 1 == _capacity ? 0 : _hand + 1;
+            }
+            entry = _hand;
+            _hand = _hand + 1 == _capacity ? 0 : _hand + 1;
+            remove(entry);
+            _evictions += 1;
+        }
+        _used[entry] = false;
+        if (_tables[entry] == null || _tables[entry].length != size) {
+            _tables[entry] = new int[size];
+        }
+        _keys[entry] = key;
+        int slot = slot(key);
+        while (_index[slot] != 0) {
+            slot = (slot + 1) & _mask;
+        }
+        _index[slot] = entry + 1;
+        return _tables[entry];
+    }
+
+    /** Discard all stored substitutions, as when the rotors or plugboard
+     *  they were composed from change.  The counters are not reset. */
+    void clear() {
+        Arrays.fill(_index, 0);
+        _size = 0;
+        _hand = 0;
+    }
+
+    /** Return the maximum number of substitutions I hold. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Return the number of substitutions I currently hold. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of lookups that found a substitution. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that found nothing. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Return the number of substitutions discarded to make room. */
+    long evictions() {
+        return _evictions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses, %d evictions",
+                             _hits, _misses, _evictions);
+    }
+
+    /** Return the slot of _index at which to start looking for KEY. */
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> _shift);
+    }
+
+    /** Remove ENTRY, which is stored, from _index.  Later slots of its run
+     *  are shifted back over the gap, so that every key stays reachable
+     *  from its own slot. */
+    private void remove(int entry) {
+        int gap = slot(_keys[entry]);
+        while (_index[gap] - 1 != entry) {
+            gap = (gap + 1) & _mask;
+        }
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & _mask;
+            int other = _index[slot] - 1;
+            if (other < 0) {
+                break;
+            }
+            int home = slot(_keys[other]);
+            if (((slot - home) & _mask) >= ((slot - gap) & _mask)) {
+                _index[gap] = _index[slot];
+                gap = slot;
+            }
+        }
+        _index[gap] = 0;
+    }
+
+    /** Largest capacity allowed. */
+    static final int MAX_CAPACITY = 1 << 24;
+
+    /** Maximum number of entries. */
+    private final int _capacity;
+    /** The key and table of each entry.  Entries 0 .. _size-1 are in use,
+     *  and the tables of the others are kept for reuse. */
+    private final long[] _keys;
+    private final int[][] _tables;
+    /** True for each entry used since the hand last passed it. */
+    private final boolean[] _used;
+    /** The entry at which the next search for one to evict starts. */
+    private int _hand;
+    /** Open-addressed table of the entries in use, by key, each stored
+     *  as its number plus 1, with 0 for an empty slot.  It is at least
+     *  twice as long as _capacity, and a power of two. */
+    private final int[] _index;
+    /** _index.length - 1. */
+    private final int _mask;
+    /** Shift taking a 64-bit hash to a slot of _index. */
+    private final int _shift;
+    /** Number of entries in use. */
+    private int _size;
+    /** Lookup and eviction counters. */
+    private long _hits, _misses, _evictions;
+}
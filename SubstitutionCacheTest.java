@@ -0,0 +1,76 @@
+package enigma;
+
+import java.util.HashMap;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the SubstitutionCache class.
+ *  @author
+ */
+public class SubstitutionCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testLeastRecentlyUsed() {
+        SubstitutionCache cache = new SubstitutionCache(2);
+        cache.put(1, 3)[0] = 10;
+        cache.put(2, 3)[0] = 20;
+        assertEquals(10, cache.get(1)[0]);
+        cache.put(3, 3)[0] = 30;
+        assertNull(cache.get(2));
+        assertEquals(10, cache.get(1)[0]);
+        assertEquals(30, cache.get(3)[0]);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        assertEquals(3, cache.hits());
+        assertEquals(1, cache.misses());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    public void testSecondChance() {
+        SubstitutionCache cache = new SubstitutionCache(3);
+        for (long key = 1; key <= 3; key += 1) {
+            cache.put(key, 1)[0] = (int) key;
+        }
+        cache.get(1);
+        cache.get(3);
+        cache.put(4, 1)[0] = 4;
+        assertNull(cache.get(2));
+        cache.put(5, 1)[0] = 5;
+        assertNull(cache.get(1));
+        assertEquals(3, cache.get(3)[0]);
+        assertEquals(4, cache.get(4)[0]);
+        assertEquals(5, cache.get(5)[0]);
+    }
+
+    @Test
+    public void testMatchesMap() {
+        int capacity = 37;
+        HashMap<Long, Integer> stored = new HashMap<>();
+        SubstitutionCache cache = new SubstitutionCache(capacity);
+        Random random = new Random(5);
+        for (int i = 0; i < 200000; i += 1) {
+            long key = random.nextInt(100) * 456976L + random.nextInt(3);
+            int[] table = cache.get(key);
+            if (table == null) {
+                cache.put(key, 26)[0] = i;
+                stored.put(key, i);
+            } else {
+                assertEquals((int) stored.get(key), table[0]);
+            }
+            assertEquals(Math.min(stored.size(), capacity), cache.size());
+        }
+        assertEquals(cache.misses() - capacity, cache.evictions());
+    }
+}
@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -40,6 +41,51 @@ class TestUtils {
                   + "(PW) (QZ) (SX) (UY)");
     }
 
+    /** The notches of the naval rotors that move. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return the naval rotors named NAMES over ALPHA, an upper-case
+     *  alphabet, in the A setting: B and C are reflectors, Beta and
+     *  Gamma are fixed, and the others move with NAVAL_NOTCHES. */
+    static ArrayList<Rotor> navalRotors(Alphabet alpha, String... names) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : names) {
+            Permutation perm = new Permutation(NAVALA.get(name), alpha);
+            if (name.equals("B") || name.equals("C")) {
+                rotors.add(new Reflector(name, perm));
+            } else if (NAVAL_NOTCHES.containsKey(name)) {
+                rotors.add(new MovingRotor(name, perm,
+                                           NAVAL_NOTCHES.get(name)));
+            } else {
+                rotors.add(new FixedRotor(name, perm));
+            }
+        }
+        return rotors;
+    }
+
+    /** Return TEXT as Main writes it: in groups of five characters, each
+     *  followed by a space. */
+    static String grouped(String text) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < text.length(); i += 1) {
+            result.append(text.charAt(i));
+            if (i % 5 == 4) {
+                result.append(' ');
+            }
+        }
+        return result.toString();
+    }
+
     /** The mapping of the upper-case alphabet by NAVALA. */
     static final HashMap<String, String> NAVALA_MAP = new HashMap<>();
     static {
@@ -0,0 +1,36 @@
+package enigma;
+
+/** Receives each step of a machine's conversion of a character, for
+ *  debugging output.  A machine reports to its tracer only what it
+ *  computes anyway, so a tracer that does nothing costs nothing once
+ *  its calls are inlined.
+ *  @author
+ */
+interface Tracer {
+
+    /** A tracer that ignores everything. */
+    Tracer NONE = new Tracer() {
+        @Override
+        public void begin(Machine machine, int c) {
+        }
+
+        @Override
+        public void pass(int c) {
+        }
+
+        @Override
+        public void end(int c) {
+        }
+    };
+
+    /** Note that MACHINE, having advanced its rotors, is about to convert
+     *  C (an index into its alphabet). */
+    void begin(Machine machine, int c);
+
+    /** Note that the character being converted has become C, on leaving
+     *  the plugboard or a rotor. */
+    void pass(int c);
+
+    /** Note that the conversion has finished with result C. */
+    void end(int c);
+}
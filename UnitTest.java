@@ -16,7 +16,20 @@ public class UnitTest {
         }
         System.exit(textui.runClasses(PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                AlphabetTest.class,
+                MachineTest.class,
+                SnapshotTest.class,
+                ByteMachineTest.class,
+                KeystreamCacheTest.class,
+                SubstitutionCacheTest.class,
+                BombeTest.class,
+                CoincidenceSearchTest.class,
+                PlugboardClimbTest.class,
+                MessageReaderTest.class,
+                MessageWriterTest.class,
+                SectionRunnerTest.class,
+                PipelineRunnerTest.class,
+                WorkloadTest.class));
     }
 
 }
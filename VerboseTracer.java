@@ -0,0 +1,64 @@
+package enigma;
+
+import java.io.PrintStream;
+
+/** A Tracer that describes each conversion on one line of the form
+ *  "[AXLE] A -> B -> ... -> Z", giving the settings of the rotors in
+ *  slots 1 and up, the input, and the character after the plugboard,
+ *  each rotor, and the plugboard again.  Lines are collected and
+ *  written in large blocks, so they appear only as the buffer fills and
+ *  when flush() is called.
+ *  @author
+ */
+class VerboseTracer implements Tracer {
+
+    /** Number of buffered characters at which I write them out. */
+    private static final int LIMIT = 1 << 13;
+
+    /** A tracer writing to OUT. */
+    VerboseTracer(PrintStream out) {
+        _out = out;
+        _buffer = new StringBuilder(2 * LIMIT);
+    }
+
+    @Override
+    public void begin(Machine machine, int c) {
+        _alphabet = machine.alphabet();
+        _buffer.append('[');
+        for (int r = 1; r < machine.numRotors(); r += 1) {
+            _buffer.append(_alphabet.toChar(machine.setting(r)));
+        }
+        _buffer.append("] ");
+        pass(c);
+    }
+
+    @Override
+    public void pass(int c) {
+        _buffer.append(_alphabet.toChar(c)).append(" -> ");
+    }
+
+    @Override
+    public void end(int c) {
+        _buffer.append(_alphabet.toChar(c)).append(LINE_SEPARATOR);
+        if (_buffer.length() >= LIMIT) {
+            flush();
+        }
+    }
+
+    /** Write out everything buffered so far. */
+    void flush() {
+        _out.append(_buffer);
+        _out.flush();
+        _buffer.setLength(0);
+    }
+
+    /** Line terminator, as printed by %n. */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /** Destination of my output. */
+    private final PrintStream _out;
+    /** Text not yet written to _out. */
+    private final StringBuilder _buffer;
+    /** Alphabet of the machine being traced. */
+    private Alphabet _alphabet;
+}
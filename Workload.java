@@ -0,0 +1,247 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** A generator of synthetic input for Main: a configuration file with a
+ *  catalog of randomly wired rotors, and an input file of a given number
+ *  of message characters, broken into sections that each start with a
+ *  settings line.  Everything is drawn from a generator seeded with a
+ *  fixed seed, so the same parameters always produce the same bytes.  The
+ *  input is written as it is generated, so it may be of any size.
+ *  @author
+ */
+class Workload {
+
+    /** The alphabet of every workload. */
+    static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    /** Number of slots in the machine, and how many of them have pawls. */
+    static final int SLOTS = 5, PAWLS = 3;
+
+    /** Number of fixed rotors and of reflectors in the catalog. */
+    private static final int FIXED = 4, REFLECTORS = 3;
+
+    /** Generate a workload.  Usage:
+     *
+     *     java enigma.Workload [--seed=N] [--chars=SIZE] [--rotors=N]
+     *                          [--section=SIZE] [--line=SIZE] CONFIG INPUT
+     *
+     *  writes the configuration to the file CONFIG and the input to INPUT.
+     *  A SIZE may end in K, M, or G for multiples of 1024. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--seed=(\\d+) --chars=(\\d+[KMG]?) "
+                                + "--rotors=(\\d+) --section=(\\d+[KMG]?) "
+                                + "--line=(\\d+[KMG]?) --=(.*){2}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.Workload [--seed=N] "
+                            + "[--chars=SIZE] [--rotors=N] [--section=SIZE] "
+                            + "[--line=SIZE] CONFIG INPUT");
+            }
+            Workload workload =
+                new Workload(size(options.getFirst("--seed"), 61),
+                             size(options.getFirst("--chars"), 1 << 20),
+                             (int) size(options.getFirst("--rotors"), 8),
+                             (int) size(options.getFirst("--section"), 1000),
+                             (int) size(options.getFirst("--line"), 60));
+            workload.write(options.get("--").get(0),
+                           options.get("--").get(1));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the value of SIZE, a number optionally followed by K, M, or
+     *  G, or DEFAULT if SIZE is null. */
+    static long size(String size, long dflt) {
+        if (size == null) {
+            return dflt;
+        }
+        int shift = "KMG".indexOf(size.charAt(size.length() - 1));
+        if (shift < 0) {
+            return Long.parseLong(size);
+        }
+        return Long.parseLong(size.substring(0, size.length() - 1))
+            << (10 * (shift + 1));
+    }
+
+    /** A workload drawn with SEED of CHARS message characters, using a
+     *  catalog of ROTORS moving rotors.  Sections hold about SECTION
+     *  characters on average, and message lines between 1 and LINE
+     *  characters, laid out in groups of five. */
+    Workload(long seed, long chars, int rotors, int section, int line) {
+        if (chars < 0 || rotors < SLOTS - 2 || section < 1 || line < 1) {
+            throw error("bad workload parameters");
+        }
+        _seed = seed;
+        _chars = chars;
+        _rotors = rotors;
+        _section = section;
+        _line = line;
+    }
+
+    /** Return the number of message characters in my input. */
+    long chars() {
+        return _chars;
+    }
+
+    /** Write my configuration to the file named CONFIG and my input to
+     *  the file named INPUT. */
+    void write(String config, String input) {
+        try (OutputStream out = Files.newOutputStream(Paths.get(config))) {
+            writeConfig(out);
+        } catch (IOException excp) {
+            throw error("could not write %s", config);
+        }
+        try (OutputStream out = new BufferedOutputStream(
+                 Files.newOutputStream(Paths.get(input)), 1 << 16)) {
+            writeInput(out);
+        } catch (IOException excp) {
+            throw error("could not write %s", input);
+        }
+    }
+
+    /** Write my configuration to OUT: moving rotors R0, R1, ..., each
+     *  with one to three notches, fixed rotors F0, F1, ..., and reflectors
+     *  U0, U1, .... */
+    void writeConfig(OutputStream out) throws IOException {
+        SplittableRandom random = new SplittableRandom(_seed);
+        StringBuilder config = new StringBuilder();
+        config.append(ALPHABET).append('\n');
+        config.append(SLOTS).append(' ').append(PAWLS).append('\n');
+        for (int k = 0; k < _rotors; k += 1) {
+            char[] notches = shuffled(random);
+            config.append('R').append(k).append(" M")
+                .append(notches, 0, 1 + random.nextInt(3));
+            appendCycles(config, shuffled(random));
+        }
+        for (int k = 0; k < FIXED; k += 1) {
+            config.append('F').append(k).append(" N");
+            appendCycles(config, shuffled(random));
+        }
+        for (int k = 0; k < REFLECTORS; k += 1) {
+            config.append('U').append(k).append(" R");
+            char[] pairs = shuffled(random);
+            for (int i = 0; i < pairs.length; i += 2) {
+                config.append(" (").append(pairs[i]).append(pairs[i + 1])
+                    .append(')');
+            }
+            config.append('\n');
+        }
+        out.write(config.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /** Write my input to OUT. */
+    void writeInput(OutputStream out) throws IOException {
+        SplittableRandom random = new SplittableRandom(~_seed);
+        byte[] line = new byte[64];
+        long left = _chars;
+        while (left > 0) {
+            out.write(settings(random).getBytes(StandardCharsets.US_ASCII));
+            long section = Math.min(left, 1 + random.nextLong(2L * _section));
+            left -= section;
+            while (section > 0) {
+                int len = (int) Math.min(section, 1 + random.nextInt(_line));
+                section -= len;
+                int size = len + len / 5 + 1;
+                if (size > line.length) {
+                    line = new byte[Math.max(size, 2 * line.length)];
+                }
+                int pos = 0;
+                for (int i = 0; i < len; i += 1) {
+                    if (i > 0 && i % 5 == 0) {
+                        line[pos] = ' ';
+                        pos += 1;
+                    }
+                    line[pos] = (byte) ALPHABET.charAt(random.nextInt(26));
+                    pos += 1;
+                }
+                line[pos] = '\n';
+                out.write(line, 0, pos + 1);
+            }
+        }
+    }
+
+    /** Return a settings line, terminated, choosing a reflector, a fixed
+     *  rotor, and distinct moving rotors, initial settings, and a
+     *  plugboard of up to ten pairs with RANDOM. */
+    private String settings(SplittableRandom random) {
+        StringBuilder line = new StringBuilder("*");
+        line.append(" U").append(random.nextInt(REFLECTORS));
+        line.append(" F").append(random.nextInt(FIXED));
+        int[] moving = new int[_rotors];
+        for (int k = 0; k < _rotors; k += 1) {
+            moving[k] = k;
+        }
+        for (int k = 0; k < SLOTS - 2; k += 1) {
+            int j = k + random.nextInt(_rotors - k);
+            int t = moving[j];
+            moving[j] = moving[k];
+            moving[k] = t;
+            line.append(" R").append(moving[k]);
+        }
+        line.append(' ');
+        for (int k = 0; k < SLOTS - 1; k += 1) {
+            line.append(ALPHABET.charAt(random.nextInt(26)));
+        }
+        char[] plugs = shuffled(random);
+        for (int i = 2 * random.nextInt(11) - 2; i >= 0; i -= 2) {
+            line.append(" (").append(plugs[i]).append(plugs[i + 1])
+                .append(')');
+        }
+        return line.append('\n').toString();
+    }
+
+    /** Return the letters of ALPHABET in an order drawn with RANDOM. */
+    private static char[] shuffled(SplittableRandom random) {
+        char[] result = ALPHABET.toCharArray();
+        for (int i = result.length - 1; i > 0; i -= 1) {
+            int j = random.nextInt(i + 1);
+            char t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Append to CONFIG, followed by a newline, the cycles of the
+     *  permutation taking ALPHABET.charAt(i) to PERM[i]. */
+    private static void appendCycles(StringBuilder config, char[] perm) {
+        boolean[] done = new boolean[perm.length];
+        for (int i = 0; i < perm.length; i += 1) {
+            if (!done[i]) {
+                config.append(" (");
+                for (int j = i; !done[j]; j = ALPHABET.indexOf(perm[j])) {
+                    config.append(ALPHABET.charAt(j));
+                    done[j] = true;
+                }
+                config.append(')');
+            }
+        }
+        config.append('\n');
+    }
+
+    /** Seed of all random choices. */
+    private final long _seed;
+    /** Number of message characters in the input. */
+    private final long _chars;
+    /** Number of moving rotors in the catalog. */
+    private final int _rotors;
+    /** Mean number of message characters in a section. */
+    private final int _section;
+    /** Largest number of message characters on a line. */
+    private final int _line;
+}
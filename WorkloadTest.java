@@ -0,0 +1,87 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Workload class.
+ *  @author
+ */
+public class WorkloadTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /** Return the configuration and input of W, concatenated. */
+    private byte[] generate(Workload w) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        w.writeConfig(bytes);
+        w.writeInput(bytes);
+        return bytes.toByteArray();
+    }
+
+    /** Return the input of W. */
+    private byte[] input(Workload w) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        w.writeInput(bytes);
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testDeterministic() throws IOException {
+        assertArrayEquals(generate(new Workload(3, 10000, 10, 300, 70)),
+                          generate(new Workload(3, 10000, 10, 300, 70)));
+        assertFalse(Arrays.equals(generate(new Workload(3, 10000, 10, 300,
+                                                        70)),
+                                  generate(new Workload(4, 10000, 10, 300,
+                                                        70))));
+    }
+
+    @Test
+    public void testInput() throws IOException {
+        Workload w = new Workload(5, 50000, 6, 500, 90);
+        MessageReader reader = new MessageReader(Channels.newChannel(
+            new ByteArrayInputStream(input(w))));
+        char[] buf = new char[128];
+        long chars = 0;
+        int sections = 0;
+        int kind = reader.nextLine();
+        assertEquals(MessageReader.SETTINGS, kind);
+        for (; kind != MessageReader.END; kind = reader.nextLine()) {
+            if (kind == MessageReader.SETTINGS) {
+                sections += 1;
+                assertTrue(reader.numTokens() >= Workload.SLOTS + 2);
+                assertEquals(Workload.SLOTS - 1,
+                             reader.tokenLength(Workload.SLOTS + 1));
+            } else {
+                int n, len = 0;
+                while ((n = reader.read(buf, 0, buf.length)) > 0) {
+                    len += n;
+                }
+                assertTrue(len >= 1 && len <= 90);
+                chars += len;
+            }
+        }
+        assertEquals(50000, chars);
+        assertTrue(sections > 50);
+    }
+
+    @Test
+    public void testSize() {
+        assertEquals(7, Workload.size(null, 7));
+        assertEquals(12, Workload.size("12", 7));
+        assertEquals(3 << 10, Workload.size("3K", 7));
+        assertEquals(5L << 30, Workload.size("5G", 7));
+    }
+}
@@ -0,0 +1,97 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmarks of Alphabet.codePointToInt, which Alphabet.toInt
+ *  calls, over alphabets of various sizes.  A dense alphabet is a run of
+ *  consecutive code points (the upper-case letters, or the start of
+ *  plane 1, which avoids splitting surrogate pairs), looked up in an
+ *  array; a sparse one spreads its code points over the supplementary
+ *  planes, and is looked up in a hash table.  Each benchmark looks up
+ *  LOOKUPS members of the alphabet in random order.
+ *  @author
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlphabetBench {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "256", "4096", "65536" })
+    public int size;
+
+    /** Build the alphabets and the characters to look up. */
+    @Setup
+    public void setUp() {
+        int[] dense = new int[size], sparse = new int[size];
+        int stride = (Character.MAX_CODE_POINT
+                      - Character.MIN_SUPPLEMENTARY_CODE_POINT) / size;
+        for (int i = 0; i < size; i += 1) {
+            dense[i] = size <= 26 ? 'A' + i
+                : Character.MIN_SUPPLEMENTARY_CODE_POINT + i;
+            sparse[i] = Character.MIN_SUPPLEMENTARY_CODE_POINT
+                + i * stride;
+        }
+        _dense = new Alphabet(new String(dense, 0, size));
+        _sparse = new Alphabet(new String(sparse, 0, size));
+        Random random = new Random(size);
+        _denseLookups = new int[LOOKUPS];
+        _sparseLookups = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i += 1) {
+            int k = random.nextInt(size);
+            _denseLookups[i] = dense[k];
+            _sparseLookups[i] = sparse[k];
+        }
+    }
+
+    /** Look up code points of the dense alphabet. */
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int dense() {
+        int sum = 0;
+        for (int cp : _denseLookups) {
+            sum += _dense.codePointToInt(cp);
+        }
+        return sum;
+    }
+
+    /** Look up code points of the sparse alphabet. */
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int sparse() {
+        int sum = 0;
+        for (int cp : _sparseLookups) {
+            sum += _sparse.codePointToInt(cp);
+        }
+        return sum;
+    }
+
+    /** Number of lookups per invocation. */
+    private static final int LOOKUPS = 4096;
+
+    /** Alphabet of consecutive code points. */
+    private Alphabet _dense;
+    /** Alphabet of widely spaced code points. */
+    private Alphabet _sparse;
+    /** Code points of _dense to look up. */
+    private int[] _denseLookups;
+    /** Code points of _sparse to look up. */
+    private int[] _sparseLookups;
+}
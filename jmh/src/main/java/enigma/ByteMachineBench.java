@@ -0,0 +1,96 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmark of ByteMachine.convert on a block of random bytes, with
+ *  a machine of the naval shape (a reflector, a fixed rotor, and three
+ *  moving rotors with one notch each) wired at random over 256
+ *  characters.  The machine is never reset, so its rotors run through
+ *  their settings as a long file's would.  Scores are bytes per second.
+ *  @author
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteMachineBench {
+
+    /** Build the machine and the bytes. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(61);
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < ByteMachine.SIZE; i += 1) {
+            chars.append((char) (0x100 + i));
+        }
+        Alphabet alpha = new Alphabet(chars.toString());
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", permutation(alpha, random, true)));
+        rotors.add(new FixedRotor("F", permutation(alpha, random, false)));
+        for (int k = 1; k <= 3; k += 1) {
+            rotors.add(new MovingRotor("M" + k,
+                                       permutation(alpha, random, false),
+                                       String.valueOf(alpha.toChar(k))));
+        }
+        Machine machine = new Machine(alpha, 5, 3, rotors);
+        machine.insertRotors(new String[] { "R", "F", "M1", "M2", "M3" });
+        machine.setRotors(chars.substring(0, 4));
+        machine.setPlugboard(permutation(alpha, random, true));
+        _machine = new ByteMachine(machine);
+        _bytes = new byte[BLOCK];
+        random.nextBytes(_bytes);
+    }
+
+    /** Return a random permutation of ALPHA from RANDOM, an involution
+     *  with no fixed points if REFLECTING. */
+    private static Permutation permutation(Alphabet alpha, Random random,
+                                           boolean reflecting) {
+        int n = alpha.size();
+        int[] shuffled = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            int j = random.nextInt(i + 1);
+            shuffled[i] = shuffled[j];
+            shuffled[j] = i;
+        }
+        int[] forward = new int[n], inverse = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            forward[shuffled[i]] = shuffled[reflecting ? i ^ 1 : (i + 1) % n];
+        }
+        for (int i = 0; i < n; i += 1) {
+            inverse[forward[i]] = i;
+        }
+        return new Permutation(forward, inverse, alpha);
+    }
+
+    /** Convert the block in place. */
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public byte[] convert() {
+        _machine.convert(_bytes, 0, BLOCK, _bytes, 0);
+        return _bytes;
+    }
+
+    /** Number of bytes converted per invocation. */
+    private static final int BLOCK = 1 << 16;
+
+    /** The machine measured. */
+    private ByteMachine _machine;
+    /** The bytes converted. */
+    private byte[] _bytes;
+}
@@ -0,0 +1,88 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmarks of Machine.convert on single characters and on
+ *  messages of Message.length characters, using the naval machine of
+ *  enigma.Benchmark, converting through the rotors or, if CACHE is not
+ *  0, through a SubstitutionCache of CACHE entries.  The machine is never
+ *  reset, so its rotors run through all their settings as a long
+ *  message's would; with a cache of 16900 entries, one for each setting
+ *  the naval machine reaches, every lookup after the first 16900 hits.
+ *  @author
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineBench {
+
+    /** A random message, short or long. */
+    @State(Scope.Thread)
+    public static class Message {
+
+        /** Number of characters in the message. */
+        @Param({ "25", "1000000" })
+        public int length;
+
+        /** Build the message. */
+        @Setup
+        public void setUp() {
+            Random random = new Random(61);
+            char[] msg = new char[length];
+            for (int i = 0; i < length; i += 1) {
+                msg[i] = (char) ('A' + random.nextInt(26));
+            }
+            _text = new String(msg);
+        }
+
+        /** The message. */
+        private String _text;
+    }
+
+    /** Number of substitutions cached, or 0 for none. */
+    @Param({ "0", "16900" })
+    public int cache;
+
+    /** Build the machine. */
+    @Setup
+    public void setUp() {
+        _machine = enigma.Benchmark.navalMachine(new Alphabet());
+        if (cache > 0) {
+            _machine.setSubstitutionCache(new SubstitutionCache(cache));
+        }
+    }
+
+    /** Convert the previous result. */
+    @Benchmark
+    public int convertChar() {
+        _c = _machine.convert(_c);
+        return _c;
+    }
+
+    /** Convert MSG. */
+    @Benchmark
+    public String convertString(Message msg) {
+        return _machine.convert(msg._text);
+    }
+
+    /** The machine measured. */
+    private Machine _machine;
+    /** The last result of convertChar. */
+    private int _c;
+}
@@ -0,0 +1,117 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** A JMH benchmark of Main end to end: reading a configuration file and
+ *  a synthetic input file of SIZE message characters, and writing the
+ *  converted output to a file, with the command-line options in FLAGS
+ *  (separated by commas).  The input has a settings line every SECTION
+ *  characters and message lines of 60 characters, in groups of five.
+ *  @author
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MainBench {
+
+    /** Number of message characters in the input. */
+    @Param({ "10000000" })
+    public int size;
+
+    /** Command-line options for Main, separated by commas. */
+    @Param({ "", "--pipeline", "--sections" })
+    public String flags;
+
+    /** Number of message characters between settings lines. */
+    private static final int SECTION = 100_000;
+
+    /** Write the configuration and input files. */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        _dir = Files.createTempDirectory("enigma-bench");
+        _config = _dir.resolve("default.conf");
+        _input = _dir.resolve("input.txt");
+        _output = _dir.resolve("output.txt");
+        Files.write(_config, CONFIG.getBytes(StandardCharsets.US_ASCII));
+        Random random = new Random(61);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < size; i += 1) {
+            if (i % SECTION == 0) {
+                text.append(i == 0 ? "" : "\n")
+                    .append("* B Beta III IV I ")
+                    .append((char) ('A' + random.nextInt(26))).append("XLE ")
+                    .append("(YF) (ZH)\n");
+            } else if (i % 60 == 0) {
+                text.append('\n');
+            } else if (i % 5 == 0) {
+                text.append(' ');
+            }
+            text.append((char) ('A' + random.nextInt(26)));
+        }
+        text.append('\n');
+        Files.write(_input,
+                    text.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /** Remove the files written by setUp and by the benchmark. */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(_config);
+        Files.deleteIfExists(_input);
+        Files.deleteIfExists(_output);
+        Files.deleteIfExists(_dir);
+    }
+
+    /** Run Main on the input. */
+    @Benchmark
+    public void process() {
+        String[] options = flags.isEmpty() ? new String[0] : flags.split(",");
+        String[] args = new String[options.length + 3];
+        System.arraycopy(options, 0, args, 0, options.length);
+        args[options.length] = _config.toString();
+        args[options.length + 1] = _input.toString();
+        args[options.length + 2] = _output.toString();
+        Main.main(args);
+    }
+
+    /** The standard naval configuration. */
+    private static final String CONFIG = String.join("\n",
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+        "5 3",
+        "I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+        "II ME     (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)",
+        "III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)",
+        "IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)",
+        "V MZ      (AVOLDRWFIUQ) (BZKSMNHYC) (EGTJPX)",
+        "Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)",
+        "B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)",
+        "          (RX) (SZ) (TV)",
+        "");
+
+    /** Directory holding the files. */
+    private Path _dir;
+    /** Configuration, input, and output files. */
+    private Path _config, _input, _output;
+}
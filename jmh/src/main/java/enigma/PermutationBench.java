@@ -0,0 +1,54 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmarks of Permutation.permute and Permutation.invert on a
+ *  naval rotor wiring.  Each operation maps the result of the one
+ *  before, so no two are independent and none can be hoisted.
+ *  @author
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermutationBench {
+
+    /** Build the permutation. */
+    @Setup
+    public void setUp() {
+        _perm = new Permutation("(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) "
+                                + "(S)", new Alphabet());
+    }
+
+    /** Permute the previous result. */
+    @Benchmark
+    public int permute() {
+        _p = _perm.permute(_p + 1);
+        return _p;
+    }
+
+    /** Invert the previous result. */
+    @Benchmark
+    public int invert() {
+        _p = _perm.invert(_p + 1);
+        return _p;
+    }
+
+    /** The permutation measured. */
+    private Permutation _perm;
+    /** The last result. */
+    private int _p;
+}
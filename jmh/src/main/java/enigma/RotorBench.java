@@ -0,0 +1,61 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmarks of Rotor.convertForward and Rotor.convertBackward on a
+ *  moving rotor, at a setting that changes with every operation as it
+ *  would in a machine.
+ *  @author
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotorBench {
+
+    /** Build the rotor. */
+    @Setup
+    public void setUp() {
+        _rotor = new MovingRotor("I", new Permutation(
+            "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+            new Alphabet()), "Q");
+    }
+
+    /** Convert the previous result forward at the next setting. */
+    @Benchmark
+    public int convertForward() {
+        _setting = _setting == 25 ? 0 : _setting + 1;
+        _rotor.set(_setting);
+        _p = _rotor.convertForward(_p);
+        return _p;
+    }
+
+    /** Convert the previous result backward at the next setting. */
+    @Benchmark
+    public int convertBackward() {
+        _setting = _setting == 25 ? 0 : _setting + 1;
+        _rotor.set(_setting);
+        _p = _rotor.convertBackward(_p);
+        return _p;
+    }
+
+    /** The rotor measured. */
+    private Rotor _rotor;
+    /** Its current setting. */
+    private int _setting;
+    /** The last result. */
+    private int _p;
+}
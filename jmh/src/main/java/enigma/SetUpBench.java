@@ -0,0 +1,109 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmark of Main.setUp, which applies a settings line to a
+ *  machine, on the naval machine.  Each invocation applies LINES settings
+ *  lines drawn at random from KEYS distinct keys, each with its own rotor
+ *  order, settings, and plugboard of ten pairs, as input that changes keys
+ *  every few lines would.  Scores are reconfigurations per second.
+ *  @author
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SetUpBench {
+
+    /** Number of distinct keys among the settings lines. */
+    @Param({ "4", "1024" })
+    public int keys;
+
+    /** Build the machine and the settings lines. */
+    @Setup
+    public void setUp() {
+        Alphabet az = new Alphabet();
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(
+            "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) (SZ) "
+            + "(TV)", az)));
+        rotors.add(new FixedRotor("Beta", new Permutation(
+            "(ALBEVFCYODJWUGNMQTZSKPR) (HIX)", az)));
+        rotors.add(new MovingRotor("I", new Permutation(
+            "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)", az), "Q"));
+        rotors.add(new MovingRotor("II", new Permutation(
+            "(FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)", az), "E"));
+        rotors.add(new MovingRotor("III", new Permutation(
+            "(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)", az), "V"));
+        _machine = new Machine(az, 5, 3, rotors);
+        String[] moving = { "I", "II", "III" };
+        Random random = new Random(61);
+        String[][] distinct = new String[keys][];
+        for (int k = 0; k < keys; k += 1) {
+            int first = random.nextInt(3);
+            int second = (first + 1 + random.nextInt(2)) % 3;
+            ArrayList<String> line = new ArrayList<>();
+            line.add("*");
+            line.add("B");
+            line.add("Beta");
+            line.add(moving[first]);
+            line.add(moving[second]);
+            line.add(moving[3 - first - second]);
+            StringBuilder setting = new StringBuilder();
+            for (int i = 0; i < 4; i += 1) {
+                setting.append((char) ('A' + random.nextInt(26)));
+            }
+            line.add(setting.toString());
+            char[] letters = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+            for (int i = letters.length - 1; i > 0; i -= 1) {
+                int j = random.nextInt(i + 1);
+                char t = letters[i];
+                letters[i] = letters[j];
+                letters[j] = t;
+            }
+            for (int i = 0; i < 20; i += 2) {
+                line.add("(" + letters[i] + letters[i + 1] + ")");
+            }
+            distinct[k] = line.toArray(new String[line.size()]);
+        }
+        _lines = new String[LINES][];
+        for (int i = 0; i < LINES; i += 1) {
+            _lines[i] = distinct[random.nextInt(keys)];
+        }
+    }
+
+    /** Apply each settings line in turn. */
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public Machine setUpLines() {
+        for (String[] line : _lines) {
+            Main.setUp(_machine, line);
+        }
+        return _machine;
+    }
+
+    /** Number of settings lines applied per invocation. */
+    private static final int LINES = 1024;
+
+    /** The machine reconfigured. */
+    private Machine _machine;
+    /** The tokens of each settings line. */
+    private String[][] _lines;
+}